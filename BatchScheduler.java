@@ -0,0 +1,530 @@
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class gathers decision requests from many callers into batches and
+ *  has one CleverBrain decide each batch with bestMoves(), so that under
+ *  load the setup of each decision is shared and the brain's scratch arrays
+ *  and cache stay warm on the thread that uses them.
+ *
+ *  A fixed set of worker threads takes requests from one bounded queue.  A
+ *  worker waits for a first request, then keeps taking requests until it
+ *  has the most a batch may hold or the window has passed since the first
+ *  arrived, packs them into its BoardBatch as they come, and decides them
+ *  all at once before completing each caller's future.  Since every worker
+ *  uses the same brain, the brain's scratch arrays are kept for the workers
+ *  only, however many callers there are.
+ *
+ *  The window adapts to how fast requests arrive.  The time between
+ *  requests is followed as a moving average, which a long pause resets.
+ *  When another request is not expected within the longest window, there
+ *  is no point waiting for one and the window is 0, so a lightly loaded
+ *  scheduler adds no latency.  As requests come faster the window grows to
+ *  the time a full batch takes to arrive, up to the longest window, so
+ *  batches grow with the load.  With adapting turned off the window is
+ *  always the longest window.
+ *
+ *  When the queue is full, submit() fails the request at once with a
+ *  RejectedExecutionException.  The time from each request being handed
+ *  over to its move being found is counted in a latency histogram, and the
+ *  number and sizes of the batches are counted as well.
+ *
+ *  @author stevr76
+ *  @version 2016.08.29
+ */
+public class BatchScheduler
+    implements Closeable
+{
+    //Fields
+    /**
+     * The most requests one batch holds unless another number is given.
+     */
+    public static final int DEFAULT_MAX_BATCH = 32;
+    /**
+     * The longest a worker waits to fill a batch unless another time is
+     * given, in nanoseconds.
+     */
+    public static final long DEFAULT_MAX_WINDOW = 200000L;
+    /**
+     * The number of requests that can wait unless another number is given.
+     */
+    public static final int DEFAULT_QUEUE = 4096;
+    //put in the queue by close() to tell a worker to finish
+    private static final Request END = new Request(null, null, 0);
+    private final CleverBrain brain;
+    private final BlockingQueue<Request> queue;
+    private final Thread[] workers;
+    //the number of workers that have not stopped yet
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile int maxBatch = DEFAULT_MAX_BATCH;
+    private volatile long maxWindow = DEFAULT_MAX_WINDOW;
+    private volatile boolean adaptive = true;
+    //the moving average of the time between requests, in nanoseconds; it
+    //starts out long, as though the scheduler had been idle
+    private volatile double arrivalGap = Double.MAX_VALUE;
+    private final AtomicLong lastArrival = new AtomicLong(System.nanoTime());
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private volatile boolean closed = false;
+    /**
+     * This constructor starts a scheduler with one worker per processor and
+     * room for DEFAULT_QUEUE waiting requests.
+     *
+     * @param brain is the brain that decides every batch
+     */
+    public BatchScheduler(CleverBrain brain) {
+        this(brain, Runtime.getRuntime().availableProcessors(),
+            DEFAULT_QUEUE);
+    }
+    /**
+     * This constructor starts a scheduler and its worker threads.
+     *
+     * @param brain is the brain that decides every batch
+     * @param workerCount is the number of worker threads
+     * @param queueCapacity is the number of requests that can wait
+     */
+    public BatchScheduler(CleverBrain brain, int workerCount,
+        int queueCapacity) {
+        if (workerCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("A scheduler needs at least"
+                + " one worker and room for one request, not " + workerCount
+                + " workers and " + queueCapacity + " requests");
+        }
+        this.brain = brain;
+        queue = new ArrayBlockingQueue<Request>(queueCapacity);
+        workers = new Thread[workerCount];
+        running.set(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    BatchScheduler.this.work();
+                }
+            }, "batch-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+    /**
+     * This method sets the most requests one batch may hold.
+     *
+     * @param maxBatch is the largest batch, at least 1
+     */
+    public void setMaxBatch(int maxBatch) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("A batch must hold at least"
+                + " one request, not " + maxBatch);
+        }
+        this.maxBatch = maxBatch;
+    }
+    /**
+     * This method returns the most requests one batch may hold.
+     *
+     * @return the largest batch
+     */
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+    /**
+     * This method sets the longest a worker waits to fill a batch after its
+     * first request arrives.
+     *
+     * @param nanos is the longest window in nanoseconds, 0 to never wait
+     */
+    public void setMaxWindow(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("A window cannot be "
+                + nanos + " ns long");
+        }
+        maxWindow = nanos;
+    }
+    /**
+     * This method returns the longest a worker waits to fill a batch.
+     *
+     * @return the longest window in nanoseconds
+     */
+    public long getMaxWindow() {
+        return maxWindow;
+    }
+    /**
+     * This method turns the adapting of the window to the arrival rate on
+     * or off.  It is on to begin with.
+     *
+     * @param adaptive is true to adapt the window, false to always wait for
+     * the longest window
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+    /**
+     * This method returns whether the window adapts to the arrival rate.
+     *
+     * @return true if the window adapts
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+    /**
+     * This method returns the window a worker would wait for now, worked
+     * out from the longest window, the largest batch and the average time
+     * between requests as described above.
+     *
+     * @return the window in nanoseconds
+     */
+    public long getWindow() {
+        long longest = maxWindow;
+        if (!adaptive) {
+            return longest;
+        }
+        double gap = arrivalGap;
+        if (gap >= longest) {
+            return 0;
+        }
+        return (long)Math.min(longest, gap * (maxBatch - 1));
+    }
+    /**
+     * This method returns the average time between requests.
+     *
+     * @return the moving average in nanoseconds, or Double.MAX_VALUE if no
+     * request has arrived yet
+     */
+    public double getArrivalGap() {
+        return arrivalGap;
+    }
+    /**
+     * This method hands a request to the workers without waiting.  If the
+     * queue is full, or the scheduler is closed, the request is counted as
+     * rejected and the future returned has already failed with a
+     * RejectedExecutionException.  The board must not be changed until the
+     * future is done.
+     *
+     * @param board is the current board
+     * @param piece is the current piece
+     * @param heightLimit is the height limit of the board
+     * @return a future that gets the move
+     */
+    public CompletableFuture<Move> submit(Board board, Piece piece,
+        int heightLimit) {
+        Request request = new Request(board, piece, heightLimit);
+        long previous = lastArrival.getAndSet(request.submitted);
+        double gap = arrivalGap;
+        long sample = request.submitted - previous;
+        //each gap counts for an eighth of the average, but a gap longer
+        //than the longest window replaces it, so that a burst after an
+        //idle spell starts out unbatched.  Two callers may update the
+        //average at once and one update be lost, which only makes it a
+        //little less smooth
+        arrivalGap = (gap == Double.MAX_VALUE || sample >= maxWindow)
+            ? sample : gap + (sample - gap) / 8;
+        if (closed || !queue.offer(request)) {
+            rejected.increment();
+            request.result.completeExceptionally(
+                new RejectedExecutionException("The scheduler is "
+                + (closed ? "closed" : "full")));
+        }
+        else if (running.get() == 0) {
+            //every worker has stopped, and close() has already failed what
+            //was waiting, so nothing else will take this request
+            this.rejectWaiting();
+        }
+        return request.result;
+    }
+    /**
+     * This method is run by each worker thread.  It gathers and decides
+     * batches until it takes END from the queue.
+     */
+    private void work() {
+        try {
+            this.gather();
+        }
+        finally {
+            running.decrementAndGet();
+        }
+    }
+    /**
+     * This method gathers and decides batches until END is taken from the
+     * queue.
+     */
+    private void gather() {
+        BoardBatch batch = new BoardBatch(maxBatch);
+        Request[] requests = new Request[0];
+        Move[] moves = new Move[0];
+        boolean ending = false;
+        while (!ending) {
+            Request first;
+            try {
+                first = queue.take();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            if (first == END) {
+                return;
+            }
+            int most = maxBatch;
+            if (requests.length < most) {
+                requests = new Request[most];
+                moves = new Move[most];
+            }
+            batch.clear();
+            int count = this.add(batch, requests, 0, first);
+            long deadline = first.submitted + this.getWindow();
+            while (count < most) {
+                Request next = queue.poll();
+                if (next == null) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        break;
+                    }
+                    try {
+                        next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    }
+                    catch (InterruptedException e) {
+                        ending = true;
+                        break;
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                }
+                if (next == END) {
+                    ending = true;
+                    break;
+                }
+                count = this.add(batch, requests, count, next);
+            }
+            this.decide(batch, requests, moves, count);
+        }
+    }
+    /**
+     * This method packs a request into a batch.  A request whose board
+     * cannot be packed is failed at once rather than added.
+     *
+     * @param batch is the batch being gathered
+     * @param requests holds the requests of the batch, in order
+     * @param count is the number of requests in the batch so far
+     * @param request is the request to add
+     * @return the number of requests in the batch now
+     */
+    private int add(BoardBatch batch, Request[] requests, int count,
+        Request request) {
+        try {
+            batch.add(request.board, request.piece, request.heightLimit);
+        }
+        catch (RuntimeException e) {
+            failed.increment();
+            request.result.completeExceptionally(e);
+            return count;
+        }
+        requests[count] = request;
+        return count + 1;
+    }
+    /**
+     * This method decides a batch and completes the future of each of its
+     * requests.
+     *
+     * @param batch holds the positions
+     * @param requests holds the requests of the batch, in order
+     * @param moves receives the moves
+     * @param count is the number of requests in the batch
+     */
+    private void decide(BoardBatch batch, Request[] requests, Move[] moves,
+        int count) {
+        if (count == 0) {
+            return;
+        }
+        //each caller keeps its move, so the moves are new every batch
+        for (int i = 0; i < count; i++) {
+            moves[i] = new Move();
+        }
+        try {
+            brain.bestMoves(batch, moves);
+        }
+        catch (Throwable e) {
+            for (int i = 0; i < count; i++) {
+                failed.increment();
+                requests[i].result.completeExceptionally(e);
+                requests[i] = null;
+            }
+            return;
+        }
+        batches.increment();
+        long now = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            latency.record(now - requests[i].submitted);
+            completed.increment();
+            requests[i].result.complete(moves[i]);
+            requests[i] = null;
+            moves[i] = null;
+        }
+    }
+    /**
+     * This method returns the number of moves found.
+     *
+     * @return the number of moves
+     */
+    public long getCompleted() {
+        return completed.sum();
+    }
+    /**
+     * This method returns the number of requests submit() turned away
+     * because the queue was full or the scheduler was closed.
+     *
+     * @return the number of rejected requests
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+    /**
+     * This method returns the number of requests that could not be
+     * decided because their board could not be packed or the brain threw
+     * an exception.
+     *
+     * @return the number of failed requests
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+    /**
+     * This method returns the number of batches decided.
+     *
+     * @return the number of batches
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+    /**
+     * This method returns the average number of requests in a batch.
+     *
+     * @return the mean batch size, or 0 if no batch has been decided
+     */
+    public double getMeanBatchSize() {
+        long count = this.getBatches();
+        return (count == 0) ? 0.0 : (double)this.getCompleted() / count;
+    }
+    /**
+     * This method returns the time each request took, from being handed
+     * over to its move being found.
+     *
+     * @return the histogram of request times
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+    /**
+     * This method forgets the counts and times so far.
+     */
+    public void resetStats() {
+        latency.reset();
+        completed.reset();
+        rejected.reset();
+        failed.reset();
+        batches.reset();
+    }
+    /**
+     * This method returns the counts, batch sizes and request times as
+     * text.
+     *
+     * @return the report
+     */
+    public String report() {
+        return String.format("%d moves in %d batches (%.1f per batch),"
+            + " %d rejected, %d failed%n  window %.1fus, arrival gap"
+            + " %.1fus%n  request latency: %s", this.getCompleted(),
+            this.getBatches(), this.getMeanBatchSize(), this.getRejected(),
+            this.getFailed(), this.getWindow() / 1000.0,
+            (arrivalGap == Double.MAX_VALUE) ? 0.0 : arrivalGap / 1000.0,
+            latency);
+    }
+    /**
+     * This method stops the workers once the requests already waiting are
+     * decided.  Requests submitted after this are rejected.  A request
+     * handed over while the scheduler was closing may land behind the END
+     * a worker stops at; it is failed with a RejectedExecutionException
+     * rather than left waiting, by this method once every worker has
+     * stopped, or by submit() if it comes later still.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        boolean interrupted = false;
+        int ended = 0;
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                try {
+                    //one END per worker; a worker that takes one in the
+                    //middle of a batch finishes the batch and stops
+                    while (ended < workers.length) {
+                        queue.put(END);
+                        ended++;
+                    }
+                    worker.join();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        this.rejectWaiting();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * This method fails every request waiting in the queue with a
+     * RejectedExecutionException, for when the workers have stopped.
+     */
+    private void rejectWaiting() {
+        Request request = queue.poll();
+        while (request != null) {
+            if (request != END) {
+                rejected.increment();
+                request.result.completeExceptionally(
+                    new RejectedExecutionException("The scheduler is"
+                    + " closed"));
+            }
+            request = queue.poll();
+        }
+    }
+    // ----------------------------------------------------------
+    /**
+     * This class holds one request and the future its move goes to.
+     */
+    private static class Request
+    {
+        //Fields
+        private final Board board;
+        private final Piece piece;
+        private final int heightLimit;
+        private final long submitted = System.nanoTime();
+        private final CompletableFuture<Move> result =
+            new CompletableFuture<Move>();
+        /**
+         * This constructor makes a request.
+         *
+         * @param board is the current board
+         * @param piece is the current piece
+         * @param heightLimit is the height limit of the board
+         */
+        Request(Board board, Piece piece, int heightLimit) {
+            this.board = board;
+            this.piece = piece;
+            this.heightLimit = heightLimit;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.concurrent.CompletableFuture;
+import cs5044.tetris.*;
+// -------------------------------------------------------------------------
+/**
+ *  This is the test class for BatchScheduler
+ *
+ *  @author stevr76
+ *  @version 2016.08.29
+ */
+public class BatchSchedulerTest
+    extends student.TestCase
+{
+    private Board board;
+    private Piece piece;
+    private Move expected;
+    /**
+     * This sets up a board and the move a CleverBrain makes on it.
+     */
+    public void setUp()
+        throws Exception
+    {
+        board = new Board(10, 24,
+            "#         ",
+            "##   #  # ",
+            "### ##### ",
+            "#### #### "
+        );
+        piece = Piece.getPiece(Piece.T, 0);
+        expected = new Move();
+        new CleverBrain().bestMove(board, piece, 20, expected);
+    }
+    /**
+     * This test ensures that requests that arrive within the window are
+     * decided as one batch, each getting the move bestMove() gives.
+     */
+    public void testOneBatch()
+        throws Exception
+    {
+        BatchScheduler scheduler = new BatchScheduler(new CleverBrain(), 1,
+            16);
+        try {
+            scheduler.setAdaptive(false);
+            scheduler.setMaxBatch(4);
+            scheduler.setMaxWindow(5000000000L);
+            assertEquals(scheduler.getWindow(), 5000000000L);
+            CompletableFuture<?>[] results = new CompletableFuture<?>[4];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = scheduler.submit(board, piece, 20);
+            }
+            for (CompletableFuture<?> result : results) {
+                Move move = (Move)result.get();
+                assertEquals(move.piece(), expected.piece());
+                assertEquals(move.x(), expected.x());
+                assertEquals(move.y(), expected.y());
+            }
+            assertEquals(scheduler.getBatches(), 1);
+            assertEquals(scheduler.getMeanBatchSize(), 4.0, 1e-9);
+            assertEquals(scheduler.getLatency().getCount(), 4);
+            assertTrue(scheduler.report().startsWith("4 moves in 1 batches"));
+        }
+        finally {
+            scheduler.close();
+        }
+        assertTrue(scheduler.submit(board, piece, 20)
+            .isCompletedExceptionally());
+        assertEquals(scheduler.getRejected(), 1);
+    }
+    /**
+     * This test ensures that the window is 0 until requests come faster
+     * than the longest window, and grows when they do.
+     */
+    public void testAdaptiveWindow()
+        throws Exception
+    {
+        BatchScheduler scheduler = new BatchScheduler(new CleverBrain(), 1,
+            4096);
+        try {
+            scheduler.setMaxWindow(1000000000L);
+            assertEquals(scheduler.getWindow(), 0);
+            CompletableFuture<?> last = null;
+            for (int i = 0; i < 100; i++) {
+                last = scheduler.submit(board, piece, 20);
+            }
+            assertTrue(scheduler.getArrivalGap() < 1000000000L);
+            assertTrue(scheduler.getWindow() > 0);
+            last.get();
+            assertEquals(scheduler.getCompleted(), 100);
+            assertTrue(scheduler.getBatches() < 100);
+            assertEquals(scheduler.getFailed(), 0);
+        }
+        finally {
+            scheduler.close();
+        }
+    }
+}
@@ -0,0 +1,568 @@
+import java.util.Arrays;
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class is a packed copy of a Tetris board that the brain can examine
+ *  without calling Board.hasBlockAt for every cell.  Every row is kept as a
+ *  bit mask with bit x set when column x is filled, and every column is kept
+ *  as a bit mask with bit y set when row y is filled.  With both views, a
+ *  full row is a single comparison against the full-row mask, and the holes
+ *  in a column are the column height minus the population count of the
+ *  column mask.
+ *
+ *  The board is read from the Board once, after which a piece can be placed
+ *  on it and then taken back off with undo(), the same way as with Board.
+ *  Boards up to 64 columns wide and 64 rows tall are supported; fits()
+ *  tells whether a board is one of them.
+ *
+ *  Unlike Board, several pieces can be placed one after another and taken
+ *  back off in the opposite order, so a search can go several moves deep on
+ *  one board.  Each place() saves only the rows and columns the piece
+ *  covers, and a few counts, in a journal; undo() copies them back, so both
+ *  take time in proportion to the size of the piece.  commit() empties the
+ *  journal, keeping every placement.  copy() and copyFrom() copy the arrays
+ *  of a board outright, and toBoard() and the Board constructor turn it to
+ *  and from a Board for code, such as the game, that needs one.
+ *
+ *  The number of full rows is kept up to date as well.  Placing a piece can
+ *  only fill the rows the piece covers, so place() and undo() look at those
+ *  rows alone, and getFullRowCount() never scans the board.
+ *
+ *  The board also keeps a Zobrist hash of its blocks: every cell has a fixed
+ *  random number, and the hash is the exclusive or of the numbers of the
+ *  filled cells.  It is updated as blocks are added and taken away, so two
+ *  boards with the same blocks always have the same hash.
+ *
+ *  @author stevr76
+ *  @version 2016.08.30
+ */
+public class BitBoard
+{
+    //Fields
+    /**
+     * The largest number of rows or columns a BitBoard can hold.
+     */
+    public static final int MAX_SIZE = 64;
+    //the random number for each cell, indexed by row * MAX_SIZE + column.
+    //The seed is fixed so hashes are the same from one run to the next
+    private static final long[] ZOBRIST = new long[MAX_SIZE * MAX_SIZE];
+    static {
+        java.util.Random random = new java.util.Random(5044L);
+        for (int i = 0; i < ZOBRIST.length; i++) {
+            ZOBRIST[i] = random.nextLong();
+        }
+    }
+    private final int width;
+    private final int height;
+    private final long fullRow;
+    private final long[] rows;
+    private final long[] columns;
+    private final int[] heights;
+    private int largestHeight;
+    private int fullRows;
+    private long hash;
+    //the journal of placements undo() can take back.  Entry k keeps the
+    //rows it changed from k * height in journalRows, the columns it changed
+    //from k * width in journalColumns, its hash in journalHashes, and from
+    //k * ENTRY_INTS in journalInts its column, row, width, height and the
+    //largest height and full row count before it
+    private static final int ENTRY_INTS = 6;
+    private long[] journalRows = new long[0];
+    private long[] journalColumns = new long[0];
+    private long[] journalHashes = new long[0];
+    private int[] journalInts = new int[0];
+    private int depth;
+    /**
+     * This constructor makes an empty board of the given size.
+     *
+     * @param width is the number of columns in the board
+     * @param height is the number of rows in the board
+     */
+    public BitBoard(int width, int height) {
+        if (!fits(width, height)) {
+            throw new IllegalArgumentException("A BitBoard must be between 1"
+                + " and " + MAX_SIZE + " cells on each side, not " + width
+                + " by " + height);
+        }
+        this.width = width;
+        this.height = height;
+        fullRow = (width == MAX_SIZE) ? -1L : (1L << width) - 1;
+        rows = new long[height];
+        columns = new long[width];
+        heights = new int[width];
+    }
+    /**
+     * This method returns whether a board of the given size can be packed
+     * into a BitBoard.
+     *
+     * @param width is the number of columns in the board
+     * @param height is the number of rows in the board
+     * @return true if the board is between 1 and MAX_SIZE cells on each side
+     */
+    public static boolean fits(int width, int height) {
+        return width >= 1 && width <= MAX_SIZE && height >= 1
+            && height <= MAX_SIZE;
+    }
+    /**
+     * This constructor clones the arrays of another BitBoard, for copy().
+     *
+     * @param other is the board to copy
+     */
+    private BitBoard(BitBoard other) {
+        width = other.width;
+        height = other.height;
+        fullRow = other.fullRow;
+        rows = other.rows.clone();
+        columns = other.columns.clone();
+        heights = other.heights.clone();
+        largestHeight = other.largestHeight;
+        fullRows = other.fullRows;
+        hash = other.hash;
+    }
+    /**
+     * This constructor copies the blocks of the given board.  The board is
+     * scanned cell by cell once, by load().
+     *
+     * @param board is the board to copy
+     */
+    public BitBoard(Board board) {
+        this(board.getWidth(), board.getHeight());
+        this.load(board);
+    }
+    /**
+     * This method replaces the blocks of this board with the blocks of the
+     * given board, which must be the same size.  This lets one BitBoard be
+     * reused for a whole game instead of making a new one for every move.
+     *
+     * @param board is the board to copy
+     */
+    public void load(Board board) {
+        if (board.getWidth() != width || board.getHeight() != height) {
+            throw new IllegalArgumentException("Cannot load a "
+                + board.getWidth() + " by " + board.getHeight()
+                + " board into a " + width + " by " + height + " BitBoard");
+        }
+        depth = 0;
+        largestHeight = 0;
+        hash = 0;
+        for (int j = 0; j < height; j++) {
+            rows[j] = 0;
+        }
+        for (int i = 0; i < width; i++) {
+            columns[i] = 0;
+            for (int j = 0; j < board.getColumnHeight(i); j++) {
+                if (board.hasBlockAt(i, j)) {
+                    rows[j] |= 1L << i;
+                    columns[i] |= 1L << j;
+                    hash ^= ZOBRIST[j * MAX_SIZE + i];
+                }
+            }
+            heights[i] = board.getColumnHeight(i);
+            if (heights[i] > largestHeight) {
+                largestHeight = heights[i];
+            }
+        }
+        this.countFullRows();
+    }
+    /**
+     * This method replaces the blocks of this board with blocks already
+     * packed into masks, as BoardBatch keeps them.  The row masks are read
+     * from rowMasks starting at rowStart, and the column masks and heights
+     * from columnMasks and columnHeights starting at columnStart.
+     *
+     * @param rowMasks holds the row masks of the board
+     * @param rowStart is where the board's first row is in rowMasks
+     * @param columnMasks holds the column masks of the board
+     * @param columnStart is where the board's first column is in
+     * columnMasks and columnHeights
+     * @param columnHeights holds the height of each column
+     */
+    public void load(long[] rowMasks, int rowStart, long[] columnMasks,
+        int columnStart, int[] columnHeights) {
+        depth = 0;
+        System.arraycopy(rowMasks, rowStart, rows, 0, height);
+        System.arraycopy(columnMasks, columnStart, columns, 0, width);
+        System.arraycopy(columnHeights, columnStart, heights, 0, width);
+        largestHeight = 0;
+        for (int i = 0; i < width; i++) {
+            largestHeight = Math.max(largestHeight, heights[i]);
+        }
+        hash = 0;
+        for (int j = 0; j < largestHeight; j++) {
+            long row = rows[j];
+            while (row != 0) {
+                hash ^= ZOBRIST[j * MAX_SIZE + Long.numberOfTrailingZeros(row)];
+                row &= row - 1;
+            }
+        }
+        this.countFullRows();
+    }
+    /**
+     * This method replaces the blocks of this board with the given row
+     * masks, working out the column masks and heights from them.  Bits
+     * beyond the width of the board are ignored.
+     *
+     * @param rowMasks holds the row masks of the board
+     * @param rowStart is where the board's first row is in rowMasks
+     */
+    public void load(long[] rowMasks, int rowStart) {
+        depth = 0;
+        for (int i = 0; i < width; i++) {
+            columns[i] = 0;
+        }
+        hash = 0;
+        for (int j = 0; j < height; j++) {
+            rows[j] = rowMasks[rowStart + j] & fullRow;
+            long row = rows[j];
+            while (row != 0) {
+                int i = Long.numberOfTrailingZeros(row);
+                columns[i] |= 1L << j;
+                hash ^= ZOBRIST[j * MAX_SIZE + i];
+                row &= row - 1;
+            }
+        }
+        largestHeight = 0;
+        for (int i = 0; i < width; i++) {
+            heights[i] = 64 - Long.numberOfLeadingZeros(columns[i]);
+            largestHeight = Math.max(largestHeight, heights[i]);
+        }
+        this.countFullRows();
+    }
+    /**
+     * This method returns the number of columns in the board.
+     *
+     * @return the width of the board
+     */
+    public int getWidth() {
+        return width;
+    }
+    /**
+     * This method returns the number of rows in the board.
+     *
+     * @return the height of the board
+     */
+    public int getHeight() {
+        return height;
+    }
+    /**
+     * This method returns the height of the given column, which is one more
+     * than the row of its highest block.
+     *
+     * @param column is the column in question
+     * @return the height of that column
+     */
+    public int getColumnHeight(int column) {
+        return heights[column];
+    }
+    /**
+     * This method returns the height of the tallest column.
+     *
+     * @return the largest column height
+     */
+    public int getLargestHeight() {
+        return largestHeight;
+    }
+    /**
+     * This method returns the number of empty cells under the top of the
+     * given column.
+     *
+     * @param column is the column in question
+     * @return the number of holes in that column
+     */
+    public int getColumnHoles(int column) {
+        return heights[column] - Long.bitCount(columns[column]);
+    }
+    /**
+     * This method returns whether the given cell is filled.  Cells outside
+     * the board count as filled, the same as with Board.
+     *
+     * @param x is the column of the cell
+     * @param y is the row of the cell
+     * @return true if the cell has a block in it
+     */
+    public boolean hasBlockAt(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return true;
+        }
+        return (rows[y] & (1L << x)) != 0;
+    }
+    /**
+     * This method returns the Zobrist hash of the blocks on the board.
+     *
+     * @return the hash of the board
+     */
+    public long getHash() {
+        return hash;
+    }
+    /**
+     * This method returns the blocks of the given row as a bit mask, with
+     * bit x set when column x is filled.
+     *
+     * @param row is the row in question
+     * @return the mask for that row
+     */
+    public long getRow(int row) {
+        return rows[row];
+    }
+    /**
+     * This method returns the mask of a row with every column filled.
+     *
+     * @return the full-row mask
+     */
+    public long getFullRow() {
+        return fullRow;
+    }
+    /**
+     * This method returns whether every cell of the given row is filled.
+     *
+     * @param row is the row in question
+     * @return true if the row is full
+     */
+    public boolean isRowFull(int row) {
+        return rows[row] == fullRow;
+    }
+    /**
+     * This method returns the number of full rows on the board.
+     *
+     * @return the number of rows that would be cleared
+     */
+    public int getFullRowCount() {
+        return fullRows;
+    }
+    /**
+     * This method counts the full rows of the whole board, after blocks have
+     * been loaded into it from somewhere else.
+     */
+    private void countFullRows() {
+        int count = 0;
+        for (int i = 0; i < largestHeight; i++) {
+            if (rows[i] == fullRow) {
+                count++;
+            }
+        }
+        fullRows = count;
+    }
+    /**
+     * This method returns the row the bottom of the given shape stops at
+     * when it is dropped straight down with its left side in the given
+     * column, the same as Board.rowAfterDrop().
+     *
+     * @param shape is the piece shape to drop
+     * @param x is the column of the left side of the piece
+     * @return the landing row
+     */
+    public int getLandingRow(PieceShape shape, int x) {
+        return shape.getLandingRow(heights, x);
+    }
+    /**
+     * This method makes a Board with the same blocks as this board, for
+     * handing to a Brain.  The Board is built from one string per row, the
+     * same way the tests draw their boards.
+     *
+     * @return a new Board with the blocks of this board
+     */
+    public Board toBoard() {
+        String[] lines = new String[height];
+        char[] line = new char[width];
+        for (int j = 0; j < height; j++) {
+            for (int i = 0; i < width; i++) {
+                line[i] = ((rows[j] & (1L << i)) != 0) ? '#' : ' ';
+            }
+            //the last string is the bottom row
+            lines[height - 1 - j] = new String(line);
+        }
+        return new Board(width, height, lines);
+    }
+    /**
+     * This method drops the blocks of the given shape onto the board with
+     * its lower left corner at (x, y), adding the placement to the journal
+     * so that undo() can take it back off.  Blocks that would land above the
+     * top of the board are left off.
+     *
+     * @param shape is the piece shape to place
+     * @param x is the column of the left side of the piece
+     * @param y is the row of the bottom of the piece
+     */
+    public void place(PieceShape shape, int x, int y) {
+        if (depth == journalHashes.length) {
+            int size = Math.max(2, depth * 2);
+            journalRows = Arrays.copyOf(journalRows, size * height);
+            journalColumns = Arrays.copyOf(journalColumns, size * width);
+            journalHashes = Arrays.copyOf(journalHashes, size);
+            journalInts = Arrays.copyOf(journalInts, size * ENTRY_INTS);
+        }
+        int pieceWidth = shape.getWidth();
+        int pieceHeight = Math.min(shape.getHeight(), height - y);
+        int rowBase = depth * height;
+        int columnBase = depth * width;
+        int intBase = depth * ENTRY_INTS;
+        journalInts[intBase] = x;
+        journalInts[intBase + 1] = y;
+        journalInts[intBase + 2] = pieceWidth;
+        journalInts[intBase + 3] = pieceHeight;
+        journalInts[intBase + 4] = largestHeight;
+        journalInts[intBase + 5] = fullRows;
+        journalHashes[depth] = hash;
+        depth++;
+        for (int i = 0; i < pieceWidth; i++) {
+            journalColumns[columnBase + i] = columns[x + i];
+        }
+        for (int j = 0; j < pieceHeight; j++) {
+            long before = rows[y + j];
+            journalRows[rowBase + j] = before;
+            long mask = shape.getRowMask(j) << x;
+            rows[y + j] |= mask;
+            if (rows[y + j] == fullRow && before != fullRow) {
+                fullRows++;
+            }
+            for (int i = 0; i < pieceWidth; i++) {
+                if ((mask & (1L << (x + i))) != 0) {
+                    columns[x + i] |= 1L << (y + j);
+                    hash ^= ZOBRIST[(y + j) * MAX_SIZE + x + i];
+                }
+            }
+        }
+        for (int i = x; i < x + pieceWidth; i++) {
+            heights[i] = MAX_SIZE - Long.numberOfLeadingZeros(columns[i]);
+            if (heights[i] > largestHeight) {
+                largestHeight = heights[i];
+            }
+        }
+    }
+    /**
+     * This method takes back the last placement still in the journal,
+     * leaving the board the way it was before that place() was called.  It
+     * does nothing when the journal is empty.
+     */
+    public void undo() {
+        if (depth == 0) {
+            return;
+        }
+        depth--;
+        int rowBase = depth * height;
+        int columnBase = depth * width;
+        int intBase = depth * ENTRY_INTS;
+        int x = journalInts[intBase];
+        int y = journalInts[intBase + 1];
+        int pieceWidth = journalInts[intBase + 2];
+        int pieceHeight = journalInts[intBase + 3];
+        for (int j = 0; j < pieceHeight; j++) {
+            rows[y + j] = journalRows[rowBase + j];
+        }
+        for (int i = 0; i < pieceWidth; i++) {
+            long column = journalColumns[columnBase + i];
+            columns[x + i] = column;
+            heights[x + i] = MAX_SIZE - Long.numberOfLeadingZeros(column);
+        }
+        largestHeight = journalInts[intBase + 4];
+        fullRows = journalInts[intBase + 5];
+        hash = journalHashes[depth];
+    }
+    /**
+     * This method keeps every placement in the journal, so that a later
+     * undo() does nothing until another piece is placed.
+     */
+    public void commit() {
+        depth = 0;
+    }
+    /**
+     * This method returns the number of placements undo() can take back.
+     *
+     * @return the depth of the journal
+     */
+    public int getJournalDepth() {
+        return depth;
+    }
+    /**
+     * This method makes this board a copy of another board of the same
+     * size.  The journal of this board is emptied, so its placements can
+     * no longer be undone.
+     *
+     * @param other is the board to copy
+     */
+    public void copyFrom(BitBoard other) {
+        if (other.width != width || other.height != height) {
+            throw new IllegalArgumentException("Cannot copy a " + other.width
+                + " by " + other.height + " BitBoard into a " + width + " by "
+                + height + " BitBoard");
+        }
+        System.arraycopy(other.rows, 0, rows, 0, height);
+        System.arraycopy(other.columns, 0, columns, 0, width);
+        System.arraycopy(other.heights, 0, heights, 0, width);
+        largestHeight = other.largestHeight;
+        fullRows = other.fullRows;
+        hash = other.hash;
+        depth = 0;
+    }
+    /**
+     * This method returns a new board with the same blocks as this one, made
+     * by cloning its arrays.  The new board's journal is empty.
+     *
+     * @return the copy
+     */
+    public BitBoard copy() {
+        return new BitBoard(this);
+    }
+    /**
+     * This method removes every full row, moving the rows above it down, the
+     * same way the game does after a piece lands.  The last placement is
+     * committed first, since it can no longer be undone.
+     *
+     * @return the number of rows removed
+     */
+    public int clearRows() {
+        depth = 0;
+        //bit j of clearedRows is set when row j is full
+        long clearedRows = 0;
+        int cleared = 0;
+        for (int j = 0; j < largestHeight; j++) {
+            if (rows[j] == fullRow) {
+                clearedRows |= 1L << j;
+                cleared++;
+            }
+            else if (cleared > 0) {
+                rows[j - cleared] = rows[j];
+            }
+        }
+        if (cleared == 0) {
+            return 0;
+        }
+        fullRows = 0;
+        for (int j = largestHeight - cleared; j < largestHeight; j++) {
+            rows[j] = 0;
+        }
+        //every block that moved down changes the hash, so it is worked out
+        //again from the rows that are left
+        hash = 0;
+        for (int j = 0; j < largestHeight - cleared; j++) {
+            long row = rows[j];
+            while (row != 0) {
+                hash ^= ZOBRIST[j * MAX_SIZE + Long.numberOfTrailingZeros(row)];
+                row &= row - 1;
+            }
+        }
+        //take the bit of each cleared row out of every column mask, from
+        //the top down so that the lower row numbers stay correct
+        largestHeight = 0;
+        for (int i = 0; i < width; i++) {
+            long column = columns[i];
+            long remaining = clearedRows;
+            while (remaining != 0) {
+                int j = (MAX_SIZE - 1) - Long.numberOfLeadingZeros(remaining);
+                //a shift by 64 is a shift by 0 in Java, so the top row has
+                //nothing above it to move down
+                column = (j == MAX_SIZE - 1) ? column & ((1L << j) - 1)
+                    : (column & ((1L << j) - 1))
+                    | ((column >>> (j + 1)) << j);
+                remaining &= ~(1L << j);
+            }
+            columns[i] = column;
+            heights[i] = MAX_SIZE - Long.numberOfLeadingZeros(column);
+            if (heights[i] > largestHeight) {
+                largestHeight = heights[i];
+            }
+        }
+        return cleared;
+    }
+}
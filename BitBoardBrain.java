@@ -0,0 +1,28 @@
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This is a brain that can choose a move straight from a BitBoard, so that
+ *  code which keeps its boards packed, such as HeadlessGame, does not have
+ *  to turn each one into a Board first.  A brain that implements this
+ *  should also implement Brain and choose the same move either way, so that
+ *  it can still be played by the Swing game.
+ *
+ *  The brain must only read the board, and must not keep it after the call
+ *  returns.
+ *
+ *  @author stevr76
+ *  @version 2016.08.30
+ */
+public interface BitBoardBrain
+{
+    /**
+     * This method chooses the move to make with a piece.
+     *
+     * @param board is the current board, which must not be changed
+     * @param piece is the current piece
+     * @param heightLimit is the height limit of the board
+     * @param move receives the move
+     */
+    void bestMove(BitBoard board, Piece piece, int heightLimit, Move move);
+}
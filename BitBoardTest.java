@@ -0,0 +1,249 @@
+import cs5044.tetris.*;
+// -------------------------------------------------------------------------
+/**
+ *  This is the test class for BitBoard
+ *
+ *  @author stevr76
+ *  @version 2016.08.02
+ */
+public class BitBoardTest
+    extends student.TestCase
+{
+    private BitBoard bits;
+    /**
+     * This copies a board with a hole in column 4 and a full row.
+     */
+    public void setUp()
+        throws Exception
+    {
+        bits = new BitBoard(new Board(10, 24,
+            "    #     ",
+            "##########",
+            "#### #####"
+        ));
+    }
+    /**
+     * This test ensures that the blocks, heights and holes of the board are
+     * copied accurately.
+     */
+    public void testCopy() {
+        assertEquals(bits.getWidth(), 10);
+        assertEquals(bits.getHeight(), 24);
+        assertEquals(bits.getLargestHeight(), 3);
+        assertEquals(bits.getColumnHeight(4), 3);
+        assertEquals(bits.getColumnHeight(5), 2);
+        assertEquals(bits.getColumnHoles(4), 1);
+        assertEquals(bits.getColumnHoles(5), 0);
+        assertTrue(bits.hasBlockAt(0, 0));
+        assertFalse(bits.hasBlockAt(4, 0));
+        assertTrue(bits.hasBlockAt(-1, 0));
+    }
+    /**
+     * This test ensures that full rows are found by their masks.
+     */
+    public void testFullRows() {
+        assertFalse(bits.isRowFull(0));
+        assertTrue(bits.isRowFull(1));
+        assertEquals(bits.getFullRowCount(), 1);
+    }
+    /**
+     * This test ensures that placing a piece updates the heights and holes,
+     * and that undo puts the board back the way it was.
+     */
+    public void testPlaceAndUndo() {
+        PieceShape stick = PieceShape.of(Piece.getPiece(Piece.STICK, 1));
+        bits.place(stick, 5, 3);
+        assertEquals(bits.getLargestHeight(), 4);
+        assertEquals(bits.getColumnHeight(5), 4);
+        assertEquals(bits.getColumnHoles(5), 1);
+        assertEquals(bits.getColumnHoles(8), 1);
+        bits.undo();
+        assertEquals(bits.getLargestHeight(), 3);
+        assertEquals(bits.getColumnHeight(5), 2);
+        assertEquals(bits.getColumnHoles(5), 0);
+        assertFalse(bits.hasBlockAt(5, 3));
+    }
+    /**
+     * This test ensures that clearing rows moves the rows above them down
+     * and keeps the column heights and holes right.
+     */
+    public void testClearRows() {
+        bits = new BitBoard(new Board(10, 24,
+            " #        ",
+            "##########",
+            "#  #######",
+            "##########",
+            "#### #####"
+        ));
+        assertEquals(bits.clearRows(), 2);
+        assertEquals(bits.getLargestHeight(), 3);
+        assertEquals(bits.getFullRowCount(), 0);
+        assertTrue(bits.hasBlockAt(1, 2));
+        assertFalse(bits.hasBlockAt(1, 1));
+        assertFalse(bits.hasBlockAt(4, 0));
+        assertEquals(bits.getColumnHeight(1), 3);
+        assertEquals(bits.getColumnHoles(1), 1);
+        assertEquals(bits.getColumnHeight(2), 1);
+        assertEquals(bits.getColumnHeight(4), 2);
+        assertEquals(bits.getColumnHoles(4), 1);
+        assertFalse(bits.hasBlockAt(0, 3));
+    }
+    /**
+     * This test ensures that clearing the top row of a board as tall as a
+     * BitBoard can be leaves nothing behind in it.
+     */
+    public void testClearTopRow() {
+        String[] rows = new String[BitBoard.MAX_SIZE];
+        for (int j = 0; j < rows.length; j++) {
+            rows[j] = "          ";
+        }
+        //the rows are listed from the top of the board down
+        rows[0] = "##########";
+        rows[rows.length - 1] = "# ########";
+        bits = new BitBoard(new Board(10, BitBoard.MAX_SIZE, rows));
+        assertEquals(bits.clearRows(), 1);
+        assertFalse(bits.hasBlockAt(0, BitBoard.MAX_SIZE - 1));
+        assertEquals(bits.getColumnHeight(0), 1);
+        assertEquals(bits.getColumnHeight(1), 0);
+        assertEquals(bits.getLargestHeight(), 1);
+        assertEquals(bits.getHash(), new BitBoard(new Board(10,
+            BitBoard.MAX_SIZE, "# ########")).getHash());
+    }
+    /**
+     * This test ensures that the hash follows the blocks on the board: it
+     * comes back after undo, and a board reached by clearing rows has the
+     * same hash as the same board read from a Board.
+     */
+    public void testHash() {
+        long before = bits.getHash();
+        PieceShape stick = PieceShape.of(Piece.getPiece(Piece.STICK, 1));
+        bits.place(stick, 5, 3);
+        assertFalse(bits.getHash() == before);
+        bits.undo();
+        assertEquals(bits.getHash(), before);
+        bits.clearRows();
+        BitBoard cleared = new BitBoard(new Board(10, 24,
+            "    #     ",
+            "#### #####"
+        ));
+        assertEquals(bits.getHash(), cleared.getHash());
+    }
+    /**
+     * This test ensures that a piece lands where Board says it does, and
+     * that a BitBoard turned back into a Board has the same blocks.
+     */
+    public void testLandingRowAndToBoard() {
+        Board board = new Board(10, 24,
+            "    #     ",
+            "##########",
+            "#### #####"
+        );
+        Piece stick = Piece.getPiece(Piece.STICK, 1);
+        for (int i = 0; i + stick.getWidth() <= 10; i++) {
+            assertEquals(bits.getLandingRow(PieceShape.of(stick), i),
+                board.rowAfterDrop(stick, i));
+        }
+        Board copy = bits.toBoard();
+        assertEquals(copy.getWidth(), 10);
+        assertEquals(copy.getHeight(), 24);
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 24; j++) {
+                assertEquals(copy.hasBlockAt(i, j), board.hasBlockAt(i, j));
+            }
+        }
+    }
+    /**
+     * This test ensures that the table of shapes holds every rotation of
+     * every piece type in the order nextRotation() visits them, and that
+     * each shape lands where Board says its piece does.
+     */
+    public void testShapeTable() {
+        Board board = new Board(10, 24,
+            "  #       ",
+            " ###   #  ",
+            "#### ## ##"
+        );
+        Piece[] types = PieceShape.getPieceTypes();
+        for (int t = 0; t < types.length; t++) {
+            PieceShape[] shapes = PieceShape.rotationsOfType(t);
+            assertEquals(PieceShape.rotations(types[t]), shapes);
+            assertEquals(shapes.length, types[t].numRotations());
+            Piece piece = types[t];
+            for (int r = 0; r < shapes.length; r++) {
+                assertEquals(shapes[r].getPiece(), piece);
+                assertEquals(shapes[r], PieceShape.of(piece));
+                int[] heights = new int[10];
+                for (int i = 0; i < 10; i++) {
+                    heights[i] = board.getColumnHeight(i);
+                }
+                for (int i = 0; i + piece.getWidth() <= 10; i++) {
+                    assertEquals(shapes[r].getLandingRow(heights, i),
+                        board.rowAfterDrop(piece, i));
+                }
+                piece = piece.nextRotation();
+            }
+        }
+    }
+    /**
+     * This test ensures that the count of full rows follows placements,
+     * undos, copies and clears.
+     */
+    public void testFullRowCount() {
+        bits = new BitBoard(new Board(10, 24,
+            "#### #####"
+        ));
+        assertEquals(bits.getFullRowCount(), 0);
+        PieceShape stick = PieceShape.of(Piece.getPiece(Piece.STICK, 0));
+        bits.place(stick, 4, 0);
+        assertEquals(bits.getFullRowCount(), 1);
+        bits.undo();
+        assertEquals(bits.getFullRowCount(), 0);
+        bits.place(stick, 4, 0);
+        bits.commit();
+        BitBoard copy = new BitBoard(10, 24);
+        copy.copyFrom(bits);
+        assertEquals(copy.getFullRowCount(), 1);
+        //a piece that lands on a full row does not count it again
+        bits.place(PieceShape.of(Piece.getPiece(Piece.SQUARE, 0)), 0, 1);
+        assertEquals(bits.getFullRowCount(), 1);
+        bits.undo();
+        assertEquals(bits.clearRows(), 1);
+        assertEquals(bits.getFullRowCount(), 0);
+        assertEquals(new BitBoard(copy.toBoard()).getFullRowCount(), 1);
+    }
+    /**
+     * This test ensures that several placements can be undone in the
+     * opposite order, and that a copy does not share the board's arrays.
+     */
+    public void testJournal() {
+        BitBoard before = bits.copy();
+        PieceShape square = PieceShape.of(Piece.getPiece(Piece.SQUARE, 0));
+        PieceShape stick = PieceShape.of(Piece.getPiece(Piece.STICK, 0));
+        bits.place(square, 0, bits.getLandingRow(square, 0));
+        long afterSquare = bits.getHash();
+        int squareHeight = bits.getColumnHeight(0);
+        bits.place(stick, 0, bits.getLandingRow(stick, 0));
+        bits.place(square, 7, bits.getLandingRow(square, 7));
+        assertEquals(bits.getJournalDepth(), 3);
+        assertEquals(bits.getColumnHeight(0), squareHeight + 4);
+        bits.undo();
+        bits.undo();
+        assertEquals(bits.getJournalDepth(), 1);
+        assertEquals(bits.getHash(), afterSquare);
+        assertEquals(bits.getColumnHeight(0), squareHeight);
+        assertEquals(bits.getColumnHeight(7), before.getColumnHeight(7));
+        bits.undo();
+        bits.undo();
+        assertEquals(bits.getHash(), before.getHash());
+        assertEquals(bits.getLargestHeight(), before.getLargestHeight());
+        for (int j = 0; j < bits.getHeight(); j++) {
+            assertEquals(bits.getRow(j), before.getRow(j));
+        }
+        bits.place(square, 0, bits.getLandingRow(square, 0));
+        bits.commit();
+        assertEquals(bits.getJournalDepth(), 0);
+        bits.undo();
+        assertEquals(bits.getHash(), afterSquare);
+        assertEquals(before.getColumnHeight(0), 2);
+    }
+}
@@ -0,0 +1,236 @@
+import java.util.Arrays;
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class holds many positions for CleverBrain.bestMoves() to find moves
+ *  for in one call.  A position is a board, the piece to play on it and the
+ *  height limit of the game.
+ *
+ *  The boards are packed as they are added, not kept as Boards: the row
+ *  masks of every board are laid end to end in one array, the column masks
+ *  in another, and the height and holes of every column in two more, each
+ *  board starting where the last one ended.  Adding a board scans it cell
+ *  by cell once; after that the brain reads each position straight out of
+ *  these arrays, with no calls into Board at all.  A batch can be cleared
+ *  and filled again, and its arrays are kept, so a steady stream of batches
+ *  of the same size allocates nothing.
+ *
+ *  Boards up to BitBoard.MAX_SIZE cells on each side are supported, and the
+ *  boards of one batch do not need to be the same size.
+ *
+ *  @author stevr76
+ *  @version 2016.08.24
+ */
+public class BoardBatch
+{
+    //Fields
+    private int size;
+    private Piece[] pieces;
+    private int[] heightLimits;
+    private int[] widths;
+    private int[] heights;
+    //where the rows of each board start in rows, and where its columns
+    //start in columns, columnHeights and columnHoles
+    private int[] rowStarts;
+    private int[] columnStarts;
+    private int rowCount;
+    private int columnCount;
+    private long[] rows;
+    private long[] columns;
+    private int[] columnHeights;
+    private int[] columnHoles;
+    /**
+     * This constructor makes an empty batch with room for the given number
+     * of standard 10 by 24 positions.  It grows as needed.
+     *
+     * @param capacity is the number of positions to make room for
+     */
+    public BoardBatch(int capacity) {
+        capacity = Math.max(1, capacity);
+        pieces = new Piece[capacity];
+        heightLimits = new int[capacity];
+        widths = new int[capacity];
+        heights = new int[capacity];
+        rowStarts = new int[capacity];
+        columnStarts = new int[capacity];
+        rows = new long[capacity * 24];
+        columns = new long[capacity * 10];
+        columnHeights = new int[capacity * 10];
+        columnHoles = new int[capacity * 10];
+    }
+    /**
+     * This constructor makes a batch of the given positions.
+     *
+     * @param boards holds the board of each position
+     * @param pieces holds the piece to play on each board
+     * @param heightLimits holds the height limit of each board
+     */
+    public BoardBatch(Board[] boards, Piece[] pieces, int[] heightLimits) {
+        this(boards.length);
+        if (pieces.length != boards.length
+            || heightLimits.length != boards.length) {
+            throw new IllegalArgumentException("Expected one piece and one"
+                + " height limit per board");
+        }
+        for (int n = 0; n < boards.length; n++) {
+            this.add(boards[n], pieces[n], heightLimits[n]);
+        }
+    }
+    /**
+     * This method adds a position to the end of the batch, packing the
+     * board's blocks into the batch's arrays.
+     *
+     * @param board is the board
+     * @param piece is the piece to play on it
+     * @param heightLimit is the height limit of the board
+     */
+    public void add(Board board, Piece piece, int heightLimit) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        if (width < 1 || width > BitBoard.MAX_SIZE || height < 1
+            || height > BitBoard.MAX_SIZE) {
+            throw new IllegalArgumentException("A batch board must be"
+                + " between 1 and " + BitBoard.MAX_SIZE + " cells on each"
+                + " side, not " + width + " by " + height);
+        }
+        this.ensureRoom(width, height);
+        pieces[size] = piece;
+        heightLimits[size] = heightLimit;
+        widths[size] = width;
+        heights[size] = height;
+        rowStarts[size] = rowCount;
+        columnStarts[size] = columnCount;
+        Arrays.fill(rows, rowCount, rowCount + height, 0L);
+        for (int i = 0; i < width; i++) {
+            long column = 0;
+            int columnHeight = board.getColumnHeight(i);
+            for (int j = 0; j < columnHeight; j++) {
+                if (board.hasBlockAt(i, j)) {
+                    rows[rowCount + j] |= 1L << i;
+                    column |= 1L << j;
+                }
+            }
+            columns[columnCount + i] = column;
+        }
+        //the heights and holes of every column come straight from the
+        //column masks, in one pass over this board's stretch of the arrays
+        int end = columnCount + width;
+        for (int i = columnCount; i < end; i++) {
+            int columnHeight = 64 - Long.numberOfLeadingZeros(columns[i]);
+            columnHeights[i] = columnHeight;
+            columnHoles[i] = columnHeight - Long.bitCount(columns[i]);
+        }
+        rowCount += height;
+        columnCount += width;
+        size++;
+    }
+    /**
+     * This method makes sure there is room for one more position with a
+     * board of the given size, growing the arrays if there is not.
+     *
+     * @param width is the number of columns of the board
+     * @param height is the number of rows of the board
+     */
+    private void ensureRoom(int width, int height) {
+        if (size == pieces.length) {
+            int capacity = size * 2;
+            pieces = Arrays.copyOf(pieces, capacity);
+            heightLimits = Arrays.copyOf(heightLimits, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            heights = Arrays.copyOf(heights, capacity);
+            rowStarts = Arrays.copyOf(rowStarts, capacity);
+            columnStarts = Arrays.copyOf(columnStarts, capacity);
+        }
+        if (rowCount + height > rows.length) {
+            rows = Arrays.copyOf(rows,
+                Math.max(rows.length * 2, rowCount + height));
+        }
+        if (columnCount + width > columns.length) {
+            int length = Math.max(columns.length * 2, columnCount + width);
+            columns = Arrays.copyOf(columns, length);
+            columnHeights = Arrays.copyOf(columnHeights, length);
+            columnHoles = Arrays.copyOf(columnHoles, length);
+        }
+    }
+    /**
+     * This method empties the batch, keeping its arrays for the next
+     * positions added.
+     */
+    public void clear() {
+        Arrays.fill(pieces, 0, size, null);
+        size = 0;
+        rowCount = 0;
+        columnCount = 0;
+    }
+    /**
+     * This method returns the number of positions in the batch.
+     *
+     * @return the number of positions
+     */
+    public int size() {
+        return size;
+    }
+    /**
+     * This method returns the piece to play in a position.
+     *
+     * @param index is the number of the position
+     * @return the piece
+     */
+    public Piece getPiece(int index) {
+        return pieces[index];
+    }
+    /**
+     * This method returns the height limit of a position.
+     *
+     * @param index is the number of the position
+     * @return the height limit
+     */
+    public int getHeightLimit(int index) {
+        return heightLimits[index];
+    }
+    /**
+     * This method returns the number of columns of a position's board.
+     *
+     * @param index is the number of the position
+     * @return the width of the board
+     */
+    public int getWidth(int index) {
+        return widths[index];
+    }
+    /**
+     * This method returns the number of rows of a position's board.
+     *
+     * @param index is the number of the position
+     * @return the height of the board
+     */
+    public int getHeight(int index) {
+        return heights[index];
+    }
+    /**
+     * This method copies a position's board into a BitBoard of the same
+     * size.
+     *
+     * @param index is the number of the position
+     * @param board receives the blocks of the board
+     */
+    public void loadBoard(int index, BitBoard board) {
+        board.load(rows, rowStarts[index], columns, columnStarts[index],
+            columnHeights);
+    }
+    /**
+     * This method copies the height and holes of every column of a
+     * position's board into the given arrays, which must have one entry per
+     * column.
+     *
+     * @param index is the number of the position
+     * @param holes receives the holes of each column
+     * @param columnHeights receives the height of each column
+     */
+    public void loadColumns(int index, int[] holes, int[] columnHeights) {
+        System.arraycopy(columnHoles, columnStarts[index], holes, 0,
+            widths[index]);
+        System.arraycopy(this.columnHeights, columnStarts[index],
+            columnHeights, 0, widths[index]);
+    }
+}
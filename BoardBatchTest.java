@@ -0,0 +1,81 @@
+import cs5044.tetris.*;
+// -------------------------------------------------------------------------
+/**
+ *  This is the test class for BoardBatch
+ *
+ *  @author stevr76
+ *  @version 2016.08.24
+ */
+public class BoardBatchTest
+    extends student.TestCase
+{
+    private BoardBatch batch;
+    private Board first;
+    private Board second;
+    /**
+     * This makes a batch with room for one position and two boards of
+     * different sizes to add to it.
+     */
+    public void setUp()
+        throws Exception
+    {
+        batch = new BoardBatch(1);
+        first = new Board(10, 24,
+            "    #     ",
+            "##########",
+            "#### #####"
+        );
+        second = new Board(12, 20,
+            "#          #",
+            "## ##  #####"
+        );
+    }
+    /**
+     * This test ensures that positions are packed accurately, that the
+     * batch grows past its capacity, and that each board loads back the
+     * same as a BitBoard copied from the Board.
+     */
+    public void testAddAndLoad() {
+        batch.add(first, Piece.getPiece(Piece.T, 0), 20);
+        batch.add(second, Piece.getPiece(Piece.STICK, 0), 16);
+        assertEquals(batch.size(), 2);
+        assertEquals(batch.getWidth(1), 12);
+        assertEquals(batch.getHeight(1), 20);
+        assertEquals(batch.getHeightLimit(0), 20);
+        assertEquals(batch.getPiece(1), Piece.getPiece(Piece.STICK, 0));
+        Board[] boards = {first, second};
+        for (int n = 0; n < boards.length; n++) {
+            BitBoard expected = new BitBoard(boards[n]);
+            BitBoard loaded = new BitBoard(batch.getWidth(n),
+                batch.getHeight(n));
+            batch.loadBoard(n, loaded);
+            assertEquals(loaded.getHash(), expected.getHash());
+            assertEquals(loaded.getLargestHeight(),
+                expected.getLargestHeight());
+            int[] holes = new int[batch.getWidth(n)];
+            int[] heights = new int[batch.getWidth(n)];
+            batch.loadColumns(n, holes, heights);
+            for (int i = 0; i < holes.length; i++) {
+                assertEquals(loaded.getColumnHeight(i),
+                    expected.getColumnHeight(i));
+                assertEquals(holes[i], expected.getColumnHoles(i));
+                assertEquals(heights[i], expected.getColumnHeight(i));
+            }
+            for (int j = 0; j < expected.getHeight(); j++) {
+                assertEquals(loaded.getRow(j), expected.getRow(j));
+            }
+        }
+    }
+    /**
+     * This test ensures that a cleared batch starts again from the first
+     * position.
+     */
+    public void testClear() {
+        batch.add(first, Piece.getPiece(Piece.T, 0), 20);
+        batch.clear();
+        assertEquals(batch.size(), 0);
+        batch.add(second, Piece.getPiece(Piece.T, 0), 16);
+        assertEquals(batch.size(), 1);
+        assertEquals(batch.getWidth(0), 12);
+    }
+}
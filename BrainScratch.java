@@ -0,0 +1,281 @@
+import java.util.Arrays;
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class holds the working arrays CleverBrain needs for one call to
+ *  bestMove, so that they can be kept and reused from one call to the next
+ *  instead of being allocated every time.  The arrays only grow: a call on
+ *  a board or piece larger than any seen before makes them bigger, and every
+ *  later call of that size or smaller reuses them.
+ *
+ *  A scratch object must only be used by one thread at a time.  CleverBrain
+ *  keeps one per thread.
+ *
+ *  @author stevr76
+ *  @version 2016.08.09
+ */
+public class BrainScratch
+{
+    //Fields
+    private BitBoard bits;
+    //the copy prepare(Board) reads the board into, kept apart from the
+    //tracker's board so that the two never overwrite each other
+    private BitBoard copy;
+    private final FeatureTracker tracker = new FeatureTracker();
+    private final MoveSimulator simulator;
+    private final FeaturePass pass;
+    private int[] preHoles = new int[0];
+    private int[] preHeights = new int[0];
+    private int[] rotationHolder = new int[0];
+    private final CandidateTable candidates = new CandidateTable();
+    private double[] scores = new double[0];
+    //the boards left by the first moves a lookahead search follows up, and
+    //the ordinal numbers of those moves
+    private BitBoard[] children = new BitBoard[0];
+    private int[] beam = new int[0];
+    //the score of the move the last decision made, or NaN if it was not
+    //scored
+    private double lastScore = Double.NaN;
+    /**
+     * This constructor makes an empty scratch object.  The arrays are sized
+     * by the first call to prepare().
+     */
+    public BrainScratch() {
+        simulator = new MoveSimulator();
+        pass = new FeaturePass(simulator);
+    }
+    /**
+     * This method copies the board into the scratch BitBoard, records its
+     * pre-move heights and holes, and makes sure every array is large enough
+     * for the given number of rotations.
+     *
+     * @param board is the board bestMove was called with
+     * @param rotations is the number of rotations of the piece
+     */
+    public void prepare(Board board, int rotations) {
+        if (copy == null || copy.getWidth() != board.getWidth()
+            || copy.getHeight() != board.getHeight()) {
+            copy = new BitBoard(board);
+        }
+        else {
+            copy.load(board);
+        }
+        this.prepare(copy, rotations);
+    }
+    /**
+     * This method brings this scratch object's feature tracker up to date
+     * with the board, then prepares to find a move on the tracked board,
+     * using the heights and holes the tracker keeps instead of working them
+     * out again.  After the move is chosen, it should be given to the
+     * tracker's expect() so that the next call can skip scanning the board.
+     *
+     * @param board is the board bestMove was called with
+     * @param rotations is the number of rotations of the piece
+     */
+    public void track(Board board, int rotations) {
+        tracker.sync(board);
+        bits = tracker.getBoard();
+        int width = bits.getWidth();
+        if (preHoles.length != width) {
+            preHoles = new int[width];
+            preHeights = new int[width];
+        }
+        System.arraycopy(tracker.getHoles(), 0, preHoles, 0, width);
+        System.arraycopy(tracker.getHeights(), 0, preHeights, 0, width);
+        this.prepareArrays(rotations);
+    }
+    /**
+     * This method copies one position of a batch into the scratch BitBoard,
+     * takes its pre-move heights and holes from the batch, and makes sure
+     * every array is large enough for the given number of rotations.
+     *
+     * @param batch holds the position
+     * @param index is the number of the position
+     * @param rotations is the number of rotations of the piece
+     */
+    public void prepare(BoardBatch batch, int index, int rotations) {
+        int width = batch.getWidth(index);
+        if (copy == null || copy.getWidth() != width
+            || copy.getHeight() != batch.getHeight(index)) {
+            copy = new BitBoard(width, batch.getHeight(index));
+        }
+        batch.loadBoard(index, copy);
+        bits = copy;
+        if (preHoles.length != width) {
+            preHoles = new int[width];
+            preHeights = new int[width];
+        }
+        batch.loadColumns(index, preHoles, preHeights);
+        this.prepareArrays(rotations);
+    }
+    /**
+     * This method uses the given BitBoard as the board, records its pre-move
+     * heights and holes, and makes sure every array is large enough for the
+     * given number of rotations.  The board is not copied, so it must not
+     * change while this scratch object is using it.
+     *
+     * @param board is the packed board to find a move for
+     * @param rotations is the largest number of rotations of the pieces
+     * that will be tried
+     */
+    public void prepare(BitBoard board, int rotations) {
+        bits = board;
+        int width = board.getWidth();
+        if (preHoles.length != width) {
+            preHoles = new int[width];
+            preHeights = new int[width];
+        }
+        for (int i = 0; i < width; i++) {
+            preHoles[i] = bits.getColumnHoles(i);
+            preHeights[i] = bits.getColumnHeight(i);
+        }
+        this.prepareArrays(rotations);
+    }
+    /**
+     * This method loads the simulator from the board and the pre-move
+     * arrays, and makes sure every other array is large enough for the
+     * given number of rotations.
+     *
+     * @param rotations is the largest number of rotations of the pieces
+     * that will be tried
+     */
+    private void prepareArrays(int rotations) {
+        int width = bits.getWidth();
+        simulator.load(bits, preHoles, preHeights);
+        if (rotationHolder.length < rotations) {
+            rotationHolder = new int[rotations];
+        }
+        int entries = rotations * width;
+        if (candidates.getCapacity() < entries) {
+            candidates.ensureCapacity(entries);
+            scores = new double[entries];
+        }
+    }
+    /**
+     * This method returns the packed copy of the board.
+     *
+     * @return the BitBoard filled in by prepare()
+     */
+    public BitBoard getBits() {
+        return bits;
+    }
+    /**
+     * This method returns the tracker track() keeps up to date.
+     *
+     * @return the feature tracker
+     */
+    public FeatureTracker getTracker() {
+        return tracker;
+    }
+    /**
+     * This method returns the simulator for the board.
+     *
+     * @return the MoveSimulator loaded by prepare()
+     */
+    public MoveSimulator getSimulator() {
+        return simulator;
+    }
+    /**
+     * This method returns the feature pass that reads the simulator's
+     * board.
+     *
+     * @return the FeaturePass for the simulator
+     */
+    public FeaturePass getPass() {
+        return pass;
+    }
+    /**
+     * This method returns the pre-move holes of each column.
+     *
+     * @return the array of holes, one entry per column
+     */
+    public int[] getPreHoles() {
+        return preHoles;
+    }
+    /**
+     * This method returns the pre-move height of each column.
+     *
+     * @return the array of heights, one entry per column
+     */
+    public int[] getPreHeights() {
+        return preHeights;
+    }
+    /**
+     * This method returns the array holding the number of columns tried in
+     * each rotation.  It may be longer than the number of rotations.
+     *
+     * @return the rotation holder array
+     */
+    public int[] getRotationHolder() {
+        return rotationHolder;
+    }
+    /**
+     * This method returns the table the features of each move are recorded
+     * in.  It may have room for more moves than the current call needs, and
+     * moves from earlier calls are not cleared.
+     *
+     * @return the candidate table
+     */
+    public CandidateTable getCandidates() {
+        return candidates;
+    }
+    /**
+     * This method returns the array the final score of each move is kept
+     * in.  It may be longer than the number of moves.
+     *
+     * @return the scores array
+     */
+    public double[] getScores() {
+        return scores;
+    }
+    /**
+     * This method returns an array of at least the given size for holding
+     * the ordinal numbers of the moves a lookahead search follows up.
+     *
+     * @param size is the number of moves that will be followed up
+     * @return the beam array
+     */
+    public int[] getBeam(int size) {
+        if (beam.length < size) {
+            beam = new int[size];
+        }
+        return beam;
+    }
+    /**
+     * This method returns a BitBoard the same size as the current board, for
+     * holding the board left by one of the moves a lookahead search follows
+     * up.  The same board is returned for the same slot on every call, so
+     * it can be kept between calls.
+     *
+     * @param slot is the position of the move in the beam
+     * @return a board that belongs to that slot
+     */
+    public BitBoard getChild(int slot) {
+        if (children.length <= slot) {
+            children = Arrays.copyOf(children, slot + 1);
+        }
+        if (children[slot] == null
+            || children[slot].getWidth() != bits.getWidth()
+            || children[slot].getHeight() != bits.getHeight()) {
+            children[slot] = new BitBoard(bits.getWidth(), bits.getHeight());
+        }
+        return children[slot];
+    }
+    /**
+     * This method records the score of the move a decision made.
+     *
+     * @param score is the score, or NaN if the move was not scored
+     */
+    public void setLastScore(double score) {
+        lastScore = score;
+    }
+    /**
+     * This method returns the score of the move the last decision made.
+     *
+     * @return the score, or NaN if the move was not scored
+     */
+    public double getLastScore() {
+        return lastScore;
+    }
+}
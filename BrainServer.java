@@ -0,0 +1,949 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class serves bestMove decisions for many games at once from one
+ *  JVM.  Each game is a session, named by a number the caller picks, and
+ *  gets a CleverBrain of its own the first time it asks for a move, so
+ *  settings such as the next piece are kept per session.  Each lane has
+ *  an EvaluationCache of its own, which the brains of all of its sessions
+ *  share.  Only the lane's thread decides with it, so its lock is never
+ *  fought over, and each lane's cache only has to hold the positions of
+ *  its own share of the sessions.
+ *
+ *  Requests are handed to a fixed set of lanes, each a thread with a
+ *  bounded queue of its own.  A session always uses the same lane, so its
+ *  requests are decided one at a time and in order, and its brain only
+ *  ever keeps scratch arrays for that one thread, and a brain that carries
+ *  its board copy over between moves finds it again on its next move.  A
+ *  session costs its brain and nothing more while it waits, so thousands
+ *  of sessions can be open with only as many threads as there are lanes.
+ *
+ *  When a lane's queue is full, submit() fails the request at once with a
+ *  RejectedExecutionException, and submitWaiting() waits for room, so a
+ *  caller that sends requests faster than they are decided is held back
+ *  either way.  The time from each request being handed over to its move
+ *  being found, waiting in the queue included, is counted in a latency
+ *  histogram; report() gives it along with the throughput.
+ *
+ *  The server can also be reached over a socket on the loopback address
+ *  with listen(), which Client talks to.  Each connection is served by a
+ *  thread of its own, which reads a request, waits for room in the lane
+ *  and for the move, and writes the move back before reading the next, so
+ *  a full lane holds back the connection rather than failing it.  Every
+ *  number is written big-endian, the way DataOutputStream writes it.  A
+ *  request is:
+ *
+ *      the session, as a long
+ *      the width, height and height limit of the board, as ints
+ *      the code of the piece, as DecisionRecord.codeOf() gives it, an int
+ *      the number of rows up to the top filled one, as an int
+ *      those rows, bottom first, as longs with bit x set when column x is
+ *          filled
+ *
+ *  and each reply is a status byte, followed for OK by the code of the
+ *  piece played, the column and row of the move as ints and its score as a
+ *  double, or for FAILED by a message written with writeUTF().
+ *
+ *  It can be run from the command line:
+ *
+ *      java BrainServer [-lanes N] [-queue 1024] [-cache 65536]
+ *          [-port -1] [-sessions 2000] [-clients 64] [-pieces 100]
+ *          [-seed 5044]
+ *
+ *  -cache is the number of entries in each lane's cache.  With -port, the
+ *  server listens on that port (0 picks a free one) and prints its report
+ *  every ten seconds until it is stopped.  Without it, -sessions games are
+ *  played through the server at once by -clients threads, each taking
+ *  turns between its share of the games, for at most -pieces pieces each,
+ *  and the report is printed at the end.
+ *
+ *  Java 8 has no virtual threads, so the lanes are platform threads; since
+ *  a waiting session holds no thread, only the lanes and the socket
+ *  connections need one.
+ *
+ *  @author stevr76
+ *  @version 2016.08.29
+ */
+public class BrainServer
+    implements Closeable
+{
+    //Fields
+    /**
+     * The number of requests that can wait in each lane unless another
+     * number is given.
+     */
+    public static final int DEFAULT_QUEUE = 1024;
+    /**
+     * The number of entries in each lane's cache unless another number is
+     * given.
+     */
+    public static final int DEFAULT_CACHE = 1 << 16;
+    /**
+     * The status byte of a reply that holds a move.
+     */
+    public static final int OK = 0;
+    /**
+     * The status byte of a reply that holds an error message.
+     */
+    public static final int FAILED = 1;
+    //put in a lane's queue by close() to tell the lane to finish
+    private static final Request END = new Request(null, null, null, 0);
+    private final Supplier<CleverBrain> brains;
+    private final ConcurrentHashMap<Long, Session> sessions =
+        new ConcurrentHashMap<Long, Session>();
+    private final Lane[] lanes;
+    private final Set<Closeable> connections =
+        ConcurrentHashMap.<Closeable>newKeySet();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile long started = System.nanoTime();
+    private volatile boolean closed = false;
+    private ServerSocket listener = null;
+    /**
+     * This constructor starts a server with one lane per processor, each
+     * with room for DEFAULT_QUEUE requests, that gives every session a
+     * CleverBrain with the default weights.
+     */
+    public BrainServer() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE,
+            new Supplier<CleverBrain>() {
+                public CleverBrain get() {
+                    return new CleverBrain();
+                }
+            });
+    }
+    /**
+     * This constructor starts a server and its lane threads, each with a
+     * cache of DEFAULT_CACHE entries.
+     *
+     * @param laneCount is the number of lanes
+     * @param queueCapacity is the number of requests that can wait in each
+     * lane
+     * @param brains makes the brain of each new session
+     */
+    public BrainServer(int laneCount, int queueCapacity,
+        Supplier<CleverBrain> brains) {
+        this(laneCount, queueCapacity, DEFAULT_CACHE, brains);
+    }
+    /**
+     * This constructor starts a server and its lane threads.
+     *
+     * @param laneCount is the number of lanes
+     * @param queueCapacity is the number of requests that can wait in each
+     * lane
+     * @param cacheCapacity is the number of entries in each lane's cache
+     * @param brains makes the brain of each new session
+     */
+    public BrainServer(int laneCount, int queueCapacity, int cacheCapacity,
+        Supplier<CleverBrain> brains) {
+        if (laneCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("A server needs at least one"
+                + " lane with room for one request, not " + laneCount
+                + " lanes of " + queueCapacity);
+        }
+        this.brains = brains;
+        lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(queueCapacity, cacheCapacity, i);
+        }
+    }
+    /**
+     * This method hands a request to its session's lane without waiting.
+     * If the lane's queue is full, or the server is closed, the request is
+     * counted as rejected and the future returned has already failed with a
+     * RejectedExecutionException.  The board must not be changed until the
+     * future is done.
+     *
+     * @param session names the game the request is for
+     * @param board is the current board
+     * @param piece is the current piece
+     * @param heightLimit is the height limit of the board
+     * @return a future that gets the move
+     */
+    public CompletableFuture<Move> submit(long session, Board board,
+        Piece piece, int heightLimit) {
+        Request request = new Request(this.sessionFor(session), board, piece,
+            heightLimit);
+        Lane lane = request.session.lane;
+        if (closed || !lane.queue.offer(request)) {
+            rejected.increment();
+            request.result.completeExceptionally(
+                new RejectedExecutionException("The lane of session "
+                + session + " is " + (closed ? "closed" : "full")));
+        }
+        else {
+            lane.checkStopped();
+        }
+        return request.result;
+    }
+    /**
+     * This method hands a request to its session's lane, waiting for room
+     * if the lane's queue is full.  The board must not be changed until the
+     * future is done.
+     *
+     * @param session names the game the request is for
+     * @param board is the current board
+     * @param piece is the current piece
+     * @param heightLimit is the height limit of the board
+     * @return a future that gets the move
+     * @throws InterruptedException if the thread is interrupted while it
+     * waits
+     */
+    public CompletableFuture<Move> submitWaiting(long session, Board board,
+        Piece piece, int heightLimit)
+        throws InterruptedException
+    {
+        if (closed) {
+            throw new IllegalStateException("The server is closed");
+        }
+        Request request = new Request(this.sessionFor(session), board, piece,
+            heightLimit);
+        Lane lane = request.session.lane;
+        lane.queue.put(request);
+        lane.checkStopped();
+        return request.result;
+    }
+    /**
+     * This method returns a Brain that asks this server for the moves of
+     * one session, waiting for each.  It lets a game such as HeadlessGame
+     * be played through the server.
+     *
+     * @param session names the game the brain plays
+     * @return the brain
+     */
+    public Brain brainFor(final long session) {
+        return new Brain() {
+            public void bestMove(Board board, Piece piece, int heightLimit,
+                Move move) {
+                Move found = BrainServer.this.waitFor(session, board, piece,
+                    heightLimit);
+                move.setPiece(found.piece());
+                move.setX(found.x());
+                move.setY(found.y());
+                move.setScore(found.score());
+            }
+        };
+    }
+    /**
+     * This method asks for a move and waits for it, turning the ways the
+     * wait can fail into unchecked exceptions.
+     *
+     * @param session names the game the request is for
+     * @param board is the current board
+     * @param piece is the current piece
+     * @param heightLimit is the height limit of the board
+     * @return the move
+     */
+    private Move waitFor(long session, Board board, Piece piece,
+        int heightLimit) {
+        try {
+            return this.submitWaiting(session, board, piece, heightLimit)
+                .get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for"
+                + " a move", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+    /**
+     * This method returns the state of a session, making it the first time
+     * the session is seen.
+     *
+     * @param session names the game
+     * @return the session's state
+     */
+    private Session sessionFor(long session) {
+        Session state = sessions.get(session);
+        if (state == null) {
+            state = sessions.computeIfAbsent(session,
+                new Function<Long, Session>() {
+                    public Session apply(Long id) {
+                        //the bits of the session are mixed so that
+                        //sessions numbered one after another spread out
+                        Lane lane = lanes[(int)Long.remainderUnsigned(
+                            EvaluationCache.mix(id), lanes.length)];
+                        CleverBrain brain = brains.get();
+                        brain.setCache(lane.cache);
+                        return new Session(brain, lane);
+                    }
+                });
+        }
+        return state;
+    }
+    /**
+     * This method forgets a session and its brain.  A request for it that
+     * is still waiting is decided with the brain it already has; a later
+     * request starts the session again.
+     *
+     * @param session names the game
+     * @return true if there was such a session
+     */
+    public boolean closeSession(long session) {
+        return sessions.remove(session) != null;
+    }
+    /**
+     * This method returns the brain of a session, so that its settings can
+     * be changed, making the session if it does not exist yet.  Settings
+     * should only be changed while none of the session's requests are
+     * waiting.
+     *
+     * @param session names the game
+     * @return the session's brain
+     */
+    public CleverBrain getBrain(long session) {
+        return this.sessionFor(session).brain;
+    }
+    /**
+     * This method returns the number of sessions open.
+     *
+     * @return the number of sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+    /**
+     * This method returns the number of lanes.
+     *
+     * @return the number of lanes
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+    /**
+     * This method returns the number of requests waiting in every lane.
+     *
+     * @return the number of waiting requests
+     */
+    public int getQueued() {
+        int queued = 0;
+        for (Lane lane : lanes) {
+            queued += lane.queue.size();
+        }
+        return queued;
+    }
+    /**
+     * This method returns the number of moves found since the server
+     * started or resetStats() was called.
+     *
+     * @return the number of moves
+     */
+    public long getCompleted() {
+        return completed.sum();
+    }
+    /**
+     * This method returns the number of requests submit() turned away
+     * because a lane was full or the server was closed.
+     *
+     * @return the number of rejected requests
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+    /**
+     * This method returns the number of requests whose brain threw an
+     * exception.
+     *
+     * @return the number of failed requests
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+    /**
+     * This method returns the time each request took, from being handed
+     * over to its move being found.
+     *
+     * @return the histogram of request times
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+    /**
+     * This method forgets the counts and times so far, and starts timing
+     * the throughput again.
+     */
+    public void resetStats() {
+        latency.reset();
+        completed.reset();
+        rejected.reset();
+        failed.reset();
+        started = System.nanoTime();
+    }
+    /**
+     * This method returns the counts, throughput and request times since
+     * the server started or resetStats() was called, as text.
+     *
+     * @return the report
+     */
+    public String report() {
+        double seconds = Math.max(System.nanoTime() - started, 1) / 1e9;
+        return String.format("%d sessions on %d lanes, %d moves, %d rejected,"
+            + " %d failed in %.2fs%n  %.0f moves/s, %d waiting%n"
+            + "  request latency: %s", this.getSessionCount(), lanes.length,
+            this.getCompleted(), this.getRejected(), this.getFailed(),
+            seconds, this.getCompleted() / seconds, this.getQueued(),
+            latency);
+    }
+    /**
+     * This method starts serving requests over a socket on the loopback
+     * address, on a thread of its own.
+     *
+     * @param port is the port to listen on, or 0 for any free port
+     * @return the port being listened on
+     * @throws IOException if the socket cannot be opened
+     */
+    public synchronized int listen(int port)
+        throws IOException
+    {
+        if (listener != null) {
+            throw new IllegalStateException("The server is already"
+                + " listening on port " + listener.getLocalPort());
+        }
+        final ServerSocket socket = new ServerSocket(port, 50,
+            InetAddress.getLoopbackAddress());
+        listener = socket;
+        connections.add(socket);
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                BrainServer.this.accept(socket);
+            }
+        }, "brain-server-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return socket.getLocalPort();
+    }
+    /**
+     * This method is run by the listening thread.  It starts a thread for
+     * every connection until the socket is closed.
+     *
+     * @param socket is the listening socket
+     */
+    private void accept(ServerSocket socket) {
+        while (!closed) {
+            final Socket connection;
+            try {
+                connection = socket.accept();
+            }
+            catch (IOException e) {
+                //the socket was closed
+                return;
+            }
+            connections.add(connection);
+            Thread handler = new Thread(new Runnable() {
+                public void run() {
+                    BrainServer.this.serve(connection);
+                }
+            }, "brain-server-" + connection.getPort());
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+    /**
+     * This method is run by the thread of one connection.  It answers
+     * requests one at a time until the other end closes the connection.
+     *
+     * @param connection is the connection
+     */
+    private void serve(Socket connection) {
+        try {
+            connection.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(connection.getOutputStream()));
+            while (true) {
+                long session;
+                try {
+                    session = in.readLong();
+                }
+                catch (EOFException e) {
+                    return;
+                }
+                int width = in.readInt();
+                int height = in.readInt();
+                int heightLimit = in.readInt();
+                int code = in.readInt();
+                int count = in.readInt();
+                if (count < 0 || count > BitBoard.MAX_SIZE) {
+                    throw new IOException("A request cannot have " + count
+                        + " rows");
+                }
+                long[] rows = new long[BitBoard.MAX_SIZE];
+                for (int j = 0; j < count; j++) {
+                    rows[j] = in.readLong();
+                }
+                try {
+                    BitBoard bits = new BitBoard(width, height);
+                    bits.load(rows, 0);
+                    Move move = this.waitFor(session, bits.toBoard(),
+                        DecisionRecord.pieceOf(code), heightLimit);
+                    out.writeByte(OK);
+                    out.writeInt(DecisionRecord.codeOf(move.piece()));
+                    out.writeInt(move.x());
+                    out.writeInt(move.y());
+                    out.writeDouble(move.score());
+                }
+                catch (RuntimeException e) {
+                    out.writeByte(FAILED);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        }
+        catch (IOException e) {
+            //the connection failed or was closed, so there is no one to
+            //tell
+            return;
+        }
+        finally {
+            connections.remove(connection);
+            try {
+                connection.close();
+            }
+            catch (IOException e) {
+                //already closed
+            }
+        }
+    }
+    /**
+     * This method stops listening, closes every connection, and stops the
+     * lanes once the requests already waiting in them are decided.
+     * Requests submitted after this are rejected.  A request handed over
+     * while the server was closing may land behind the end of its lane's
+     * queue; it is failed with a RejectedExecutionException rather than
+     * left waiting, by the lane as it stops, by this method once the lane
+     * has stopped, or by the caller that handed it over if both are done.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        for (Closeable connection : connections) {
+            try {
+                connection.close();
+            }
+            catch (IOException e) {
+                //already closed
+            }
+        }
+        boolean interrupted = false;
+        for (Lane lane : lanes) {
+            boolean ended = false;
+            while (lane.thread.isAlive()) {
+                try {
+                    if (!ended) {
+                        lane.queue.put(END);
+                        ended = true;
+                    }
+                    lane.thread.join();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            lane.rejectWaiting();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * This method reads the settings from the command line and either
+     * serves requests on a port or plays games through the server, as
+     * described above.
+     *
+     * @param args are the settings described above
+     * @throws Exception if the socket cannot be opened or a game fails
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        int laneCount = Runtime.getRuntime().availableProcessors();
+        int queue = DEFAULT_QUEUE;
+        int cacheCapacity = DEFAULT_CACHE;
+        int port = -1;
+        int sessionCount = 2000;
+        int clients = 64;
+        int pieces = 100;
+        long seed = 5044;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-lanes":
+                    laneCount = Integer.parseInt(value);
+                    break;
+                case "-queue":
+                    queue = Integer.parseInt(value);
+                    break;
+                case "-cache":
+                    cacheCapacity = Integer.parseInt(value);
+                    break;
+                case "-port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "-sessions":
+                    sessionCount = Integer.parseInt(value);
+                    break;
+                case "-clients":
+                    clients = Integer.parseInt(value);
+                    break;
+                case "-pieces":
+                    pieces = Integer.parseInt(value);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+        BrainServer server = new BrainServer(laneCount, queue,
+            cacheCapacity, new Supplier<CleverBrain>() {
+                public CleverBrain get() {
+                    return new CleverBrain();
+                }
+            });
+        if (port >= 0) {
+            System.out.println("Listening on port " + server.listen(port));
+            while (true) {
+                Thread.sleep(10000);
+                System.out.println(server.report());
+            }
+        }
+        server.playGames(sessionCount, clients, pieces, seed);
+        System.out.println(server.report());
+        server.close();
+    }
+    /**
+     * This method plays games through the server, one session per game,
+     * all of them open at once.  Each client thread takes turns between
+     * its share of the games, playing one piece of each in turn, until
+     * every game is over or has played its pieces.  Game number i is
+     * played with the seed SelfPlay gives it.
+     *
+     * @param games is the number of games
+     * @param clients is the number of threads asking for moves
+     * @param pieces is the most pieces any one game may last
+     * @param seed is the base seed
+     * @throws Exception if a game fails
+     */
+    public void playGames(final int games, final int clients,
+        final int pieces, final long seed)
+        throws Exception
+    {
+        List<Thread> threads = new ArrayList<Thread>();
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        for (int c = 0; c < clients; c++) {
+            final int client = c;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        BrainServer.this.playShare(client, games, clients,
+                            pieces, seed);
+                    }
+                    catch (RuntimeException e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            }, "brain-client-" + c);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("A game failed",
+                failures.get(0));
+        }
+    }
+    /**
+     * This method plays one client's share of the games of playGames().
+     *
+     * @param client is the number of the client
+     * @param games is the number of games of every client
+     * @param clients is the number of clients
+     * @param pieces is the most pieces any one game may last
+     * @param seed is the base seed
+     */
+    private void playShare(int client, int games, int clients, int pieces,
+        long seed) {
+        List<HeadlessGame> share = new ArrayList<HeadlessGame>();
+        for (int g = client; g < games; g += clients) {
+            share.add(new HeadlessGame(this.brainFor(g), 10, 24,
+                SelfPlay.seedOf(seed, g)));
+        }
+        boolean playing = true;
+        while (playing) {
+            playing = false;
+            for (HeadlessGame game : share) {
+                if (!game.isOver()
+                    && (pieces <= 0 || game.getPieces() < pieces)) {
+                    game.step();
+                    playing = true;
+                }
+            }
+        }
+    }
+    // ----------------------------------------------------------
+    /**
+     * This class holds the brain and lane of one session.
+     */
+    private static class Session
+    {
+        //Fields
+        private final CleverBrain brain;
+        private final Lane lane;
+        /**
+         * This constructor makes the state of a session.
+         *
+         * @param brain is the brain of the session
+         * @param lane is the lane the session's requests go to
+         */
+        Session(CleverBrain brain, Lane lane) {
+            this.brain = brain;
+            this.lane = lane;
+        }
+    }
+    // ----------------------------------------------------------
+    /**
+     * This class holds one request and the future its move goes to.
+     */
+    private static class Request
+    {
+        //Fields
+        private final Session session;
+        private final Board board;
+        private final Piece piece;
+        private final int heightLimit;
+        private final long submitted = System.nanoTime();
+        private final CompletableFuture<Move> result =
+            new CompletableFuture<Move>();
+        /**
+         * This constructor makes a request.
+         *
+         * @param session is the session the request is for
+         * @param board is the current board
+         * @param piece is the current piece
+         * @param heightLimit is the height limit of the board
+         */
+        Request(Session session, Board board, Piece piece, int heightLimit) {
+            this.session = session;
+            this.board = board;
+            this.piece = piece;
+            this.heightLimit = heightLimit;
+        }
+    }
+    // ----------------------------------------------------------
+    /**
+     * This class is one lane: a queue of requests and the thread that
+     * decides them in order.
+     */
+    private class Lane
+        implements Runnable
+    {
+        //Fields
+        private final BlockingQueue<Request> queue;
+        private final EvaluationCache cache;
+        private final Thread thread;
+        /**
+         * This constructor makes a lane and starts its thread.
+         *
+         * @param capacity is the number of requests that can wait
+         * @param cacheCapacity is the number of entries in the lane's cache
+         * @param number is the number of the lane, for naming its thread
+         */
+        Lane(int capacity, int cacheCapacity, int number) {
+            queue = new ArrayBlockingQueue<Request>(capacity);
+            cache = new EvaluationCache(cacheCapacity);
+            thread = new Thread(this, "brain-lane-" + number);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        /**
+         * This method decides requests until END is taken from the queue,
+         * then fails whatever is left behind it.  A request whose brain
+         * throws anything at all is failed with it, and the lane goes on to
+         * the next one.
+         */
+        public void run() {
+            try {
+                while (true) {
+                    Request request;
+                    try {
+                        request = queue.take();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    if (request == END) {
+                        return;
+                    }
+                    try {
+                        Move move = new Move();
+                        request.session.brain.bestMove(request.board,
+                            request.piece, request.heightLimit, move);
+                        latency.record(System.nanoTime() - request.submitted);
+                        completed.increment();
+                        request.result.complete(move);
+                    }
+                    catch (Throwable e) {
+                        failed.increment();
+                        request.result.completeExceptionally(e);
+                    }
+                }
+            }
+            finally {
+                this.rejectWaiting();
+            }
+        }
+        /**
+         * This method fails every request waiting in the queue with a
+         * RejectedExecutionException, for when the lane has stopped.
+         */
+        void rejectWaiting() {
+            Request request = queue.poll();
+            while (request != null) {
+                if (request != END) {
+                    rejected.increment();
+                    request.result.completeExceptionally(
+                        new RejectedExecutionException("The server is"
+                        + " closed"));
+                }
+                request = queue.poll();
+            }
+        }
+        /**
+         * This method is called after a request is put in the queue.  If
+         * the lane has already stopped, and so has already failed what was
+         * waiting, nothing will take the request, so it is failed here.
+         */
+        void checkStopped() {
+            if (!thread.isAlive()) {
+                this.rejectWaiting();
+            }
+        }
+    }
+    // ----------------------------------------------------------
+    /**
+     * This class asks a BrainServer for moves over a socket on the
+     * loopback address, one request at a time.
+     */
+    public static class Client
+        implements Closeable
+    {
+        //Fields
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final long[] rows = new long[BitBoard.MAX_SIZE];
+        /**
+         * This constructor connects to a server on this machine.
+         *
+         * @param port is the port the server listens on
+         * @throws IOException if the connection cannot be made
+         */
+        public Client(int port)
+            throws IOException
+        {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+        }
+        /**
+         * This method asks the server for a move and waits for it.
+         *
+         * @param session names the game the request is for
+         * @param board is the current board
+         * @param piece is the current piece
+         * @param heightLimit is the height limit of the board
+         * @param move receives the move
+         * @throws IOException if the connection fails or the server could
+         * not find a move
+         */
+        public void bestMove(long session, Board board, Piece piece,
+            int heightLimit, Move move)
+            throws IOException
+        {
+            int count = 0;
+            for (int i = 0; i < board.getWidth(); i++) {
+                int height = board.getColumnHeight(i);
+                count = Math.max(count, height);
+                for (int j = 0; j < height; j++) {
+                    if (board.hasBlockAt(i, j)) {
+                        rows[j] |= 1L << i;
+                    }
+                }
+            }
+            out.writeLong(session);
+            out.writeInt(board.getWidth());
+            out.writeInt(board.getHeight());
+            out.writeInt(heightLimit);
+            out.writeInt(DecisionRecord.codeOf(piece));
+            out.writeInt(count);
+            for (int j = 0; j < count; j++) {
+                out.writeLong(rows[j]);
+                rows[j] = 0;
+            }
+            out.flush();
+            if (in.readByte() != OK) {
+                throw new IOException("The server could not find a move: "
+                    + in.readUTF());
+            }
+            move.setPiece(DecisionRecord.pieceOf(in.readInt()));
+            move.setX(in.readInt());
+            move.setY(in.readInt());
+            move.setScore(in.readDouble());
+        }
+        /**
+         * This method closes the connection.
+         *
+         * @throws IOException if the socket cannot be closed
+         */
+        public void close()
+            throws IOException
+        {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import cs5044.tetris.*;
+// -------------------------------------------------------------------------
+/**
+ *  This is the test class for BrainServer
+ *
+ *  @author stevr76
+ *  @version 2016.08.29
+ */
+public class BrainServerTest
+    extends student.TestCase
+{
+    private Board board;
+    private Piece piece;
+    private Move expected;
+    /**
+     * This sets up a board and the move a CleverBrain makes on it.
+     */
+    public void setUp()
+        throws Exception
+    {
+        board = new Board(10, 24,
+            "#         ",
+            "##   #  # ",
+            "### ##### ",
+            "#### #### "
+        );
+        piece = Piece.getPiece(Piece.T, 0);
+        expected = new Move();
+        new CleverBrain().bestMove(board, piece, 20, expected);
+    }
+    /**
+     * This test ensures that the server gives the same move as a brain of
+     * its own would, both in the same JVM and over the socket, and that
+     * each session gets a brain of its own.
+     */
+    public void testSameMove()
+        throws Exception
+    {
+        BrainServer server = new BrainServer(2, 16,
+            new Supplier<CleverBrain>() {
+                public CleverBrain get() {
+                    return new CleverBrain();
+                }
+            });
+        try {
+            Move move = server.submit(1, board, piece, 20).get();
+            assertEquals(move.piece(), expected.piece());
+            assertEquals(move.x(), expected.x());
+            assertEquals(move.y(), expected.y());
+            Move played = new Move();
+            server.brainFor(2).bestMove(board, piece, 20, played);
+            assertEquals(played.x(), expected.x());
+            assertEquals(server.getSessionCount(), 2);
+            assertFalse(server.getBrain(1) == server.getBrain(2));
+            int port = server.listen(0);
+            BrainServer.Client client = new BrainServer.Client(port);
+            try {
+                Move remote = new Move();
+                client.bestMove(3, board, piece, 20, remote);
+                assertEquals(remote.piece(), expected.piece());
+                assertEquals(remote.x(), expected.x());
+                assertEquals(remote.y(), expected.y());
+                assertEquals(remote.score(), expected.score(), 1e-9);
+            }
+            finally {
+                client.close();
+            }
+            assertEquals(server.getCompleted(), 3);
+            assertEquals(server.getLatency().getCount(), 3);
+            assertTrue(server.report().startsWith("3 sessions on 2 lanes"));
+            assertTrue(server.closeSession(3));
+            assertFalse(server.closeSession(3));
+        }
+        finally {
+            server.close();
+        }
+    }
+    /**
+     * This test ensures that a request is turned away when its lane is
+     * full, and that the requests already waiting are still decided.
+     */
+    public void testBackpressure()
+        throws Exception
+    {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        BrainServer server = new BrainServer(1, 1,
+            new Supplier<CleverBrain>() {
+                public CleverBrain get() {
+                    return new CleverBrain() {
+                        public void bestMove(Board current, Piece next,
+                            int limit, Move move) {
+                            running.countDown();
+                            try {
+                                release.await();
+                            }
+                            catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            super.bestMove(current, next, limit, move);
+                        }
+                    };
+                }
+            });
+        try {
+            CompletableFuture<Move> first = server.submit(1, board, piece,
+                20);
+            running.await();
+            CompletableFuture<Move> second = server.submit(1, board, piece,
+                20);
+            CompletableFuture<Move> third = server.submit(1, board, piece,
+                20);
+            assertTrue(third.isCompletedExceptionally());
+            try {
+                third.get();
+                fail("The third request should have been rejected");
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            assertEquals(server.getRejected(), 1);
+            release.countDown();
+            assertEquals(first.get().x(), expected.x());
+            assertEquals(second.get().x(), expected.x());
+        }
+        finally {
+            release.countDown();
+            server.close();
+        }
+        assertTrue(server.submit(1, board, piece, 20)
+            .isCompletedExceptionally());
+    }
+    /**
+     * This test ensures that a brain that throws an Error fails only its
+     * own request, and that the lane goes on deciding the next one.
+     */
+    public void testBrainError()
+        throws Exception
+    {
+        BrainServer server = new BrainServer(1, 4,
+            new Supplier<CleverBrain>() {
+                public CleverBrain get() {
+                    return new CleverBrain() {
+                        private boolean thrown;
+                        public void bestMove(Board current, Piece next,
+                            int limit, Move move) {
+                            if (!thrown) {
+                                thrown = true;
+                                throw new StackOverflowError();
+                            }
+                            super.bestMove(current, next, limit, move);
+                        }
+                    };
+                }
+            });
+        try {
+            try {
+                server.submit(1, board, piece, 20).get();
+                fail("The first request should have failed");
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof StackOverflowError);
+            }
+            assertEquals(server.submit(1, board, piece, 20).get().x(),
+                expected.x());
+            assertEquals(server.getFailed(), 1);
+        }
+        finally {
+            server.close();
+        }
+    }
+    /**
+     * This test ensures that the sessions of a lane share its cache, and
+     * that each lane has a cache of its own.
+     */
+    public void testLaneCaches()
+        throws Exception
+    {
+        BrainServer server = new BrainServer(2, 16, 64,
+            new Supplier<CleverBrain>() {
+                public CleverBrain get() {
+                    return new CleverBrain();
+                }
+            });
+        try {
+            Set<EvaluationCache> caches = new HashSet<EvaluationCache>();
+            for (long session = 0; session < 16; session++) {
+                caches.add(server.getBrain(session).getCache());
+            }
+            assertEquals(caches.size(), 2);
+            for (EvaluationCache cache : caches) {
+                assertEquals(cache.getCapacity(), 64);
+            }
+            EvaluationCache first = server.getBrain(0).getCache();
+            Move move = server.submit(0, board, piece, 20).get();
+            assertEquals(move.x(), expected.x());
+            assertEquals(move.score(), expected.score(), 1e-9);
+            assertTrue(first.getSize() > 0);
+            for (EvaluationCache cache : caches) {
+                if (cache != first) {
+                    assertEquals(cache.getSize(), 0);
+                }
+            }
+        }
+        finally {
+            server.close();
+        }
+    }
+    /**
+     * This test ensures that many sessions can play at once through the
+     * server.
+     */
+    public void testManySessions()
+        throws Exception
+    {
+        BrainServer server = new BrainServer();
+        try {
+            server.playGames(200, 8, 10, 5044);
+            assertEquals(server.getSessionCount(), 200);
+            assertEquals(server.getCompleted(), 2000);
+            assertEquals(server.getFailed(), 0);
+        }
+        finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class holds the five weights CleverBrain tallies the ranks of a
+ *  move with.  Each weight multiplies one of the features of a move:
+ *
+ *      oldHolesWeight   the rank of the holes the move covers up
+ *      newHolesWeight   the rank of the holes the move makes
+ *      caveWeight       the rank of the caves the move leaves
+ *      heightWeight     the rank of the height the move leaves
+ *      rowWeight        the number of rows the move clears
+ *
+ *  Lower scores are better, so every weight is normally negative.  A set of
+ *  weights is kept in a profile file, a Java properties file with one line
+ *  per weight named as above, so that weights found by WeightTuner can be
+ *  loaded into a brain later.  Weights that a profile leaves out keep their
+ *  default values.
+ *
+ *  @author stevr76
+ *  @version 2016.08.22
+ */
+public class BrainWeights
+{
+    //Fields
+    /**
+     * The weights CleverBrain was tuned by hand with.
+     */
+    public static final BrainWeights DEFAULT =
+        new BrainWeights(-1.0, -1.8, -2.2, -1.7, -50);
+    /**
+     * The number of weights.
+     */
+    public static final int COUNT = 5;
+    private static final String[] NAMES = {
+        "oldHolesWeight", "newHolesWeight", "caveWeight", "heightWeight",
+        "rowWeight"
+    };
+    private final double[] weights;
+    /**
+     * This constructor makes a set of weights with the given values.
+     *
+     * @param oldHolesWeight multiplies the old holes rank
+     * @param newHolesWeight multiplies the new holes rank
+     * @param caveWeight multiplies the cave rank
+     * @param heightWeight multiplies the height rank
+     * @param rowWeight multiplies the number of rows cleared
+     */
+    public BrainWeights(double oldHolesWeight, double newHolesWeight,
+        double caveWeight, double heightWeight, double rowWeight) {
+        this(new double[] {oldHolesWeight, newHolesWeight, caveWeight,
+            heightWeight, rowWeight});
+    }
+    /**
+     * This constructor makes a set of weights from an array holding them in
+     * the order of the other constructor.  The array is copied.
+     *
+     * @param weights holds the COUNT weights
+     */
+    public BrainWeights(double[] weights) {
+        if (weights.length != COUNT) {
+            throw new IllegalArgumentException("Expected " + COUNT
+                + " weights, not " + weights.length);
+        }
+        this.weights = weights.clone();
+    }
+    /**
+     * This method returns the weight that multiplies the old holes rank.
+     *
+     * @return the old holes weight
+     */
+    public double getOldHolesWeight() {
+        return weights[0];
+    }
+    /**
+     * This method returns the weight that multiplies the new holes rank.
+     *
+     * @return the new holes weight
+     */
+    public double getNewHolesWeight() {
+        return weights[1];
+    }
+    /**
+     * This method returns the weight that multiplies the cave rank.
+     *
+     * @return the cave weight
+     */
+    public double getCaveWeight() {
+        return weights[2];
+    }
+    /**
+     * This method returns the weight that multiplies the height rank.
+     *
+     * @return the height weight
+     */
+    public double getHeightWeight() {
+        return weights[3];
+    }
+    /**
+     * This method returns the weight that multiplies the number of rows
+     * cleared.
+     *
+     * @return the row weight
+     */
+    public double getRowWeight() {
+        return weights[4];
+    }
+    /**
+     * This method returns the weights as a new array, in the order of the
+     * constructor.
+     *
+     * @return a copy of the weights
+     */
+    public double[] toArray() {
+        return weights.clone();
+    }
+    /**
+     * This method returns a number made from the bits of every weight, so
+     * that brains with different weights can keep their results apart in a
+     * shared cache.
+     *
+     * @return the key of these weights
+     */
+    public long getKey() {
+        long key = 0;
+        for (int i = 0; i < COUNT; i++) {
+            key = EvaluationCache.mix(key
+                ^ Double.doubleToLongBits(weights[i] + 0.0));
+        }
+        return key;
+    }
+    /**
+     * This method reads a set of weights from a profile file.
+     *
+     * @param file is the profile to read
+     * @return the weights in it
+     * @throws IOException if the file cannot be read, or a weight in it is
+     * not a number
+     */
+    public static BrainWeights load(File file)
+        throws IOException
+    {
+        Properties profile = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            profile.load(in);
+        }
+        finally {
+            in.close();
+        }
+        return BrainWeights.fromProperties(profile);
+    }
+    /**
+     * This method reads a set of weights from properties named the way a
+     * profile names them.
+     *
+     * @param profile holds the weights
+     * @return the weights
+     * @throws IOException if a weight is not a number
+     */
+    public static BrainWeights fromProperties(Properties profile)
+        throws IOException
+    {
+        double[] values = DEFAULT.toArray();
+        for (int i = 0; i < COUNT; i++) {
+            String value = profile.getProperty(NAMES[i]);
+            if (value != null) {
+                try {
+                    values[i] = Double.parseDouble(value.trim());
+                }
+                catch (NumberFormatException e) {
+                    throw new IOException(NAMES[i] + " is not a number: "
+                        + value, e);
+                }
+            }
+        }
+        return new BrainWeights(values);
+    }
+    /**
+     * This method writes the weights into properties, named the way a
+     * profile names them.
+     *
+     * @param profile receives the weights
+     */
+    public void toProperties(Properties profile) {
+        for (int i = 0; i < COUNT; i++) {
+            profile.setProperty(NAMES[i], Double.toString(weights[i]));
+        }
+    }
+    /**
+     * This method writes the weights to a profile file.
+     *
+     * @param file is the profile to write
+     * @param comment is written at the top of the file, or is null
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file, String comment)
+        throws IOException
+    {
+        Properties profile = new Properties();
+        this.toProperties(profile);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            profile.store(out, comment);
+        }
+        finally {
+            out.close();
+        }
+    }
+    /**
+     * This method returns whether the other object is a set of the same
+     * weights.
+     *
+     * @param other is the object to compare to
+     * @return true if every weight is the same
+     */
+    public boolean equals(Object other) {
+        return other instanceof BrainWeights
+            && java.util.Arrays.equals(weights, ((BrainWeights)other).weights);
+    }
+    /**
+     * This method returns a hash code that agrees with equals().
+     *
+     * @return the hash code
+     */
+    public int hashCode() {
+        return java.util.Arrays.hashCode(weights);
+    }
+    /**
+     * This method returns the weights as text, named the way a profile names
+     * them.
+     *
+     * @return the weights as text
+     */
+    public String toString() {
+        StringBuilder text = new StringBuilder("BrainWeights[");
+        for (int i = 0; i < COUNT; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(NAMES[i]).append('=').append(weights[i]);
+        }
+        return text.append(']').toString();
+    }
+}
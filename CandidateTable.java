@@ -0,0 +1,336 @@
+import java.util.Arrays;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class holds the features of every candidate move CleverBrain tries
+ *  for one piece, one array per feature with one entry per move, so that
+ *  each pass over the moves reads one or two arrays from front to back
+ *  instead of jumping between a separate small array for every move.  The
+ *  arrays are sized once for the largest number of moves seen and then
+ *  kept, so a steady stream of calls allocates nothing.
+ *
+ *  The features of a move are:
+ *
+ *      new holes     the holes the move makes
+ *      old holes     the holes the move covers up
+ *      cave          the cave level the move leaves
+ *      height score  how far the move keeps the stack below its old top
+ *      height        the height of the stack after the move
+ *      row kills     the number of rows the move clears
+ *      extra         a part of the score added as it is, not ranked
+ *
+ *  rank() ranks the first four against the other moves, lowest rank best,
+ *  and tally() adds the ranks up into the part of each move's score that
+ *  comes from them.
+ *
+ *  The table is the same data CleverBrain used to keep in an int[11] per
+ *  move: the features in entries 1 to 5, the ranks in 6 to 9 and the row
+ *  kills in 10.  CleverBrain's methods that take such an array copy it
+ *  into and out of a table.
+ *
+ *  @author stevr76
+ *  @version 2016.08.27
+ */
+public class CandidateTable
+{
+    //Fields
+    //the widest spread of values that is ranked by counting; a wider one
+    //is ranked by sorting
+    private static final int MAX_COUNTED_RANGE = 4096;
+    private int capacity;
+    private int[] newHoles = new int[0];
+    private int[] oldHoles = new int[0];
+    private int[] caves = new int[0];
+    private int[] heightScores = new int[0];
+    private int[] heights = new int[0];
+    private int[] rowKills = new int[0];
+    private double[] extras = new double[0];
+    private int[] newHolesRanks = new int[0];
+    private int[] oldHolesRanks = new int[0];
+    private int[] caveRanks = new int[0];
+    private int[] heightRanks = new int[0];
+    private double[] rankedScores = new double[0];
+    private int[] counts = new int[0];
+    private long[] keys = new long[0];
+    /**
+     * This method makes sure the table has room for the given number of
+     * moves.  Entries already in the table are kept.
+     *
+     * @param entries is the number of moves
+     */
+    public void ensureCapacity(int entries) {
+        if (entries > capacity) {
+            newHoles = Arrays.copyOf(newHoles, entries);
+            oldHoles = Arrays.copyOf(oldHoles, entries);
+            caves = Arrays.copyOf(caves, entries);
+            heightScores = Arrays.copyOf(heightScores, entries);
+            heights = Arrays.copyOf(heights, entries);
+            rowKills = Arrays.copyOf(rowKills, entries);
+            extras = Arrays.copyOf(extras, entries);
+            newHolesRanks = Arrays.copyOf(newHolesRanks, entries);
+            oldHolesRanks = Arrays.copyOf(oldHolesRanks, entries);
+            caveRanks = Arrays.copyOf(caveRanks, entries);
+            heightRanks = Arrays.copyOf(heightRanks, entries);
+            rankedScores = new double[entries];
+            keys = new long[entries];
+            capacity = entries;
+        }
+    }
+    /**
+     * This method returns the number of moves the table has room for.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+    /**
+     * This method sets every feature of the given moves to zero, the way a
+     * new table would hold them.
+     *
+     * @param from is the first move to clear
+     * @param to is one past the last move to clear
+     */
+    public void clear(int from, int to) {
+        Arrays.fill(newHoles, from, to, 0);
+        Arrays.fill(oldHoles, from, to, 0);
+        Arrays.fill(caves, from, to, 0);
+        Arrays.fill(heightScores, from, to, 0);
+        Arrays.fill(heights, from, to, 0);
+        Arrays.fill(rowKills, from, to, 0);
+        Arrays.fill(extras, from, to, 0);
+    }
+    /**
+     * This method records the features of one move, other than its row
+     * kills.
+     *
+     * @param move is the ordinal number of the move
+     * @param newHoleCount is the number of holes the move makes
+     * @param oldHoleCount is the number of holes the move covers up
+     * @param cave is the cave level the move leaves
+     * @param heightScore is the old top of the stack minus the new one
+     * @param height is the height of the stack after the move
+     */
+    public void set(int move, int newHoleCount, int oldHoleCount, int cave,
+        int heightScore, int height) {
+        newHoles[move] = newHoleCount;
+        oldHoles[move] = oldHoleCount;
+        caves[move] = cave;
+        heightScores[move] = heightScore;
+        heights[move] = height;
+    }
+    /**
+     * This method records the number of rows a move clears.
+     *
+     * @param move is the ordinal number of the move
+     * @param kills is the number of rows cleared
+     */
+    public void setRowKills(int move, int kills) {
+        rowKills[move] = kills;
+    }
+    /**
+     * This method records the part of a move's score that is added as it
+     * is rather than ranked, such as the weighted features of a
+     * FeaturePipeline.
+     *
+     * @param move is the ordinal number of the move
+     * @param extra is the part of the score
+     */
+    public void setExtra(int move, double extra) {
+        extras[move] = extra;
+    }
+    /**
+     * This method ranks the new holes, old holes, cave level and height
+     * score of the first entries moves.  The rank of a move is the number
+     * of moves with a better value, so moves with the same value share a
+     * rank and the rank after them is skipped.  Fewer holes and lower caves
+     * are better, and a higher height score is better.
+     *
+     * @param entries is the number of moves to rank
+     */
+    public void rank(int entries) {
+        this.rankColumn(newHoles, 1, newHolesRanks, entries);
+        this.rankColumn(oldHoles, 1, oldHolesRanks, entries);
+        this.rankColumn(caves, 1, caveRanks, entries);
+        this.rankColumn(heightScores, -1, heightRanks, entries);
+    }
+    /**
+     * This method ranks one feature.  When the values fall in a narrow
+     * enough range, which they nearly always do, they are counted: the rank
+     * of a value is the number of values below it, found with one pass to
+     * count each value and one pass to add up the counts.  Otherwise the
+     * moves are sorted by value.
+     *
+     * @param values holds the feature of each move
+     * @param sign is 1 if lower values are better, or -1 if higher values
+     * are better
+     * @param ranks receives the rank of each move
+     * @param entries is the number of moves to rank
+     */
+    private void rankColumn(int[] values, int sign, int[] ranks,
+        int entries) {
+        if (entries == 0) {
+            return;
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int j = 0; j < entries; j++) {
+            long value = (long)sign * values[j];
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        long range = max - min + 1;
+        if (range <= MAX_COUNTED_RANGE) {
+            if (counts.length < range) {
+                counts = new int[MAX_COUNTED_RANGE];
+            }
+            Arrays.fill(counts, 0, (int)range, 0);
+            for (int j = 0; j < entries; j++) {
+                counts[(int)((long)sign * values[j] - min)]++;
+            }
+            int below = 0;
+            for (int k = 0; k < range; k++) {
+                int count = counts[k];
+                counts[k] = below;
+                below += count;
+            }
+            for (int j = 0; j < entries; j++) {
+                ranks[j] = counts[(int)((long)sign * values[j] - min)];
+            }
+        }
+        else {
+            //each key holds the value in the upper 32 bits and the move in
+            //the lower 32, so sorting the keys sorts the moves by value
+            for (int j = 0; j < entries; j++) {
+                keys[j] = (((long)sign * values[j]) << 32) | j;
+            }
+            Arrays.sort(keys, 0, entries);
+            int rank = 0;
+            for (int count = 0; count < entries; count++) {
+                //a new rank starts wherever the value changes
+                if (count > 0
+                    && (keys[count] >> 32) != (keys[count - 1] >> 32)) {
+                    rank = count;
+                }
+                ranks[(int)keys[count]] = rank;
+            }
+        }
+    }
+    /**
+     * This method tallies the ranks of the first totalMoves moves into the
+     * part of each move's score that comes from them, lower being better.
+     * Each rank is turned into a fraction of the number of moves and
+     * multiplied by its weight.  The results are kept in the array
+     * getRankedScores() returns.
+     *
+     * @param totalMoves is the number of moves
+     * @param newHolesWeight multiplies the new holes rank
+     * @param oldHolesWeight multiplies the old holes rank
+     * @param caveWeight multiplies the cave rank
+     * @param heightWeight multiplies the height rank
+     */
+    public void tally(int totalMoves, double newHolesWeight,
+        double oldHolesWeight, double caveWeight, double heightWeight) {
+        for (int i = 0; i < totalMoves; i++) {
+            rankedScores[i] = newHolesWeight *
+                (totalMoves - newHolesRanks[i]) / totalMoves +
+                oldHolesWeight *
+                (totalMoves - oldHolesRanks[i]) / totalMoves +
+                caveWeight *
+                (totalMoves - caveRanks[i]) / totalMoves +
+                heightWeight *
+                (totalMoves - heightRanks[i]) / totalMoves;
+        }
+    }
+    /**
+     * This method copies the features and row kills of the given moves into
+     * rows laid out the old way, entries 1 to 5 and 10.
+     *
+     * @param from is the first move to copy
+     * @param to is one past the last move to copy
+     * @param rows receives the moves, with the row for each move at the
+     * same index as the move
+     */
+    public void copyFeaturesTo(int from, int to, int[][] rows) {
+        for (int i = from; i < to; i++) {
+            rows[i][1] = newHoles[i];
+            rows[i][2] = oldHoles[i];
+            rows[i][3] = caves[i];
+            rows[i][4] = heightScores[i];
+            rows[i][5] = heights[i];
+            rows[i][10] = rowKills[i];
+        }
+    }
+    /**
+     * This method copies the ranks of the given moves into rows laid out
+     * the old way, entries 6 to 9.
+     *
+     * @param from is the first move to copy
+     * @param to is one past the last move to copy
+     * @param rows receives the ranks, with the row for each move at the
+     * same index as the move
+     */
+    public void copyRanksTo(int from, int to, int[][] rows) {
+        for (int i = from; i < to; i++) {
+            rows[i][6] = newHolesRanks[i];
+            rows[i][7] = oldHolesRanks[i];
+            rows[i][8] = caveRanks[i];
+            rows[i][9] = heightRanks[i];
+        }
+    }
+    /**
+     * This method fills the table from rows laid out the old way.  Only the
+     * features are read; the ranks are left for rank() to work out.  Rows
+     * too short to hold the row kills are taken to clear no rows.
+     *
+     * @param rows holds one row per move
+     * @param entries is the number of rows to read
+     */
+    public void copyFrom(int[][] rows, int entries) {
+        this.ensureCapacity(entries);
+        for (int i = 0; i < entries; i++) {
+            this.set(i, rows[i][1], rows[i][2], rows[i][3], rows[i][4],
+                rows[i][5]);
+            rowKills[i] = (rows[i].length > 10) ? rows[i][10] : 0;
+        }
+    }
+    /**
+     * This method returns the height of the stack after each move.  The
+     * array may be longer than the number of moves, and must not be
+     * changed.
+     *
+     * @return one entry per move
+     */
+    public int[] getHeights() {
+        return heights;
+    }
+    /**
+     * This method returns the number of rows each move clears.  The array
+     * may be longer than the number of moves, and must not be changed.
+     *
+     * @return one entry per move
+     */
+    public int[] getRowKills() {
+        return rowKills;
+    }
+    /**
+     * This method returns the part of each move's score set by setExtra().
+     * The array may be longer than the number of moves, and must not be
+     * changed.
+     *
+     * @return one entry per move
+     */
+    public double[] getExtras() {
+        return extras;
+    }
+    /**
+     * This method returns the ranked score of each move worked out by
+     * tally().  The array may be longer than the number of moves, and must
+     * not be changed.
+     *
+     * @return one entry per move
+     */
+    public double[] getRankedScores() {
+        return rankedScores;
+    }
+}
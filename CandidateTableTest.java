@@ -0,0 +1,107 @@
+import java.util.Random;
+// -------------------------------------------------------------------------
+/**
+ *  This is the test class for CandidateTable
+ *
+ *  @author stevr76
+ *  @version 2016.08.27
+ */
+public class CandidateTableTest
+    extends student.TestCase
+{
+    private CandidateTable table;
+    /**
+     * This sets up a new table.
+     */
+    public void setUp()
+        throws Exception
+    {
+        table = new CandidateTable();
+    }
+    /**
+     * This method works out the rank of one feature of one move the slow
+     * way, by counting the moves with a better value.
+     *
+     * @param rows holds the moves laid out the old way
+     * @param feature is the entry of the feature
+     * @param move is the move to rank
+     * @return the rank
+     */
+    private int rankOf(int[][] rows, int feature, int move) {
+        int rank = 0;
+        for (int[] row : rows) {
+            boolean better = (feature == 4) ? row[4] > rows[move][4]
+                : row[feature] < rows[move][feature];
+            if (better) {
+                rank++;
+            }
+        }
+        return rank;
+    }
+    /**
+     * This method fills rows with random features and checks the ranks the
+     * table gives them.
+     *
+     * @param random is the source of random numbers
+     * @param spread is the number of different values a feature can take
+     */
+    private void checkRanks(Random random, int spread) {
+        int[][] rows = new int[150][11];
+        for (int[] row : rows) {
+            for (int i = 1; i < 5; i++) {
+                row[i] = random.nextInt(spread) - spread / 2;
+            }
+        }
+        table.copyFrom(rows, rows.length);
+        table.rank(rows.length);
+        table.copyRanksTo(0, rows.length, rows);
+        for (int j = 0; j < rows.length; j++) {
+            for (int i = 1; i < 5; i++) {
+                assertEquals(rows[j][i + 5], this.rankOf(rows, i, j));
+            }
+        }
+    }
+    /**
+     * This test ensures that moves are ranked the same whether their values
+     * are close enough together to be counted or far enough apart to be
+     * sorted.
+     */
+    public void testRank() {
+        Random random = new Random(5044);
+        this.checkRanks(random, 21);
+        this.checkRanks(random, 1 << 20);
+        this.checkRanks(random, Integer.MAX_VALUE);
+    }
+    /**
+     * This test ensures that the table keeps its entries when it grows, and
+     * that clearing sets the features back to zero.
+     */
+    public void testCapacityAndClear() {
+        table.ensureCapacity(4);
+        table.set(3, 1, 2, 3, 4, 5);
+        table.setRowKills(3, 2);
+        table.ensureCapacity(100);
+        assertEquals(table.getCapacity(), 100);
+        assertEquals(table.getHeights()[3], 5);
+        assertEquals(table.getRowKills()[3], 2);
+        table.clear(0, 100);
+        assertEquals(table.getHeights()[3], 0);
+        assertEquals(table.getRowKills()[3], 0);
+    }
+    /**
+     * This test ensures that the tally of a move's ranks is each rank's
+     * fraction of the moves times its weight.
+     */
+    public void testTally() {
+        int[][] rows = {
+            {0, 0, 1, 2, 0, 0, 0, 0, 0, 0, 0},
+            {0, 1, 0, 2, -1, 0, 0, 0, 0, 0, 0},
+        };
+        table.copyFrom(rows, 2);
+        table.rank(2);
+        table.tally(2, 1.0, 2.0, 3.0, 4.0);
+        double[] scores = table.getRankedScores();
+        assertEquals(scores[0], 1.0 + 2.0 / 2 + 3.0 + 4.0, 1e-9);
+        assertEquals(scores[1], 1.0 / 2 + 2.0 + 3.0 + 4.0 / 2, 1e-9);
+    }
+}
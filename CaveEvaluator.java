@@ -0,0 +1,140 @@
+// -------------------------------------------------------------------------
+/**
+ *  This class works out CleverBrain's cave level for every move on one
+ *  board from the pre-move column heights, without going back to the
+ *  heights of the neighbouring columns for each move.
+ *
+ *  The cave level of a move averages how far the piece's left-most column
+ *  rises above up to three columns to its left, and its right-most column
+ *  above up to three columns to its right.  Every move whose left side is
+ *  in the same column has the same three columns to its left, whatever the
+ *  piece and rotation, so load() runs a window three columns wide along the
+ *  board once and keeps, for each column, the number and the sum of the
+ *  heights of the columns beside it on each side.  Unless the nearest
+ *  column is lower than the piece, every one of them is counted, and the
+ *  score of that side is the count times the piece's height less the sum.
+ *  When the nearest column is lower, the piece is next to a cave, and only
+ *  the columns lower than the piece count, so those (at most two) are
+ *  looked at on their own.
+ *
+ *  The results are the same as CleverBrain.getCaveLevel(heights,
+ *  leftHeight, rightHeight, column, pieceWidth), including counting a side
+ *  twice when the piece is one column away from that wall.
+ *
+ *  @author stevr76
+ *  @version 2016.08.29
+ */
+public class CaveEvaluator
+{
+    //Fields
+    //the number of columns on each side of the piece that are looked at
+    private static final int REACH = 3;
+    private int[] heights = new int[0];
+    //for each column, the number and summed height of the columns up to
+    //REACH to its left, and to its right
+    private int[] leftCounts = new int[0];
+    private int[] leftSums = new int[0];
+    private int[] rightCounts = new int[0];
+    private int[] rightSums = new int[0];
+    /**
+     * This method records the pre-move heights of a board and works out the
+     * neighbour sums of every column.  The heights must not change until
+     * the next call.
+     *
+     * @param columnHeights holds the height of every column
+     */
+    public void load(int[] columnHeights) {
+        heights = columnHeights;
+        int width = columnHeights.length;
+        if (leftSums.length != width) {
+            leftCounts = new int[width];
+            leftSums = new int[width];
+            rightCounts = new int[width];
+            rightSums = new int[width];
+        }
+        //slide the window along from each wall: a column enters it as the
+        //column next to it is reached and leaves it REACH columns later
+        int sum = 0;
+        for (int i = 0; i < width; i++) {
+            leftSums[i] = sum;
+            leftCounts[i] = Math.min(i, REACH);
+            sum += columnHeights[i];
+            if (i >= REACH) {
+                sum -= columnHeights[i - REACH];
+            }
+        }
+        sum = 0;
+        for (int i = width - 1; i >= 0; i--) {
+            rightSums[i] = sum;
+            rightCounts[i] = Math.min(width - 1 - i, REACH);
+            sum += columnHeights[i];
+            if (i + REACH < width) {
+                sum -= columnHeights[i + REACH];
+            }
+        }
+    }
+    /**
+     * This method returns the cave level of a move.
+     *
+     * @param leftHeight is the post-move height of the left-most column of
+     * the piece
+     * @param rightHeight is the post-move height of the right-most column of
+     * the piece
+     * @param column is the left-most column of the piece
+     * @param pieceWidth is the width of the piece
+     * @return average depth that will be ranked against the other possible
+     * moves
+     */
+    public int getCaveLevel(int leftHeight, int rightHeight, int column,
+        int pieceWidth) {
+        int width = heights.length;
+        int right = column + pieceWidth - 1;
+        int factorL = (column == 1) ? 2 : 1;
+        int factorR = (right == width - 2) ? 2 : 1;
+        int score = 0;
+        int count = 0;
+        if (column > 0) {
+            int first = leftHeight - heights[column - 1];
+            if (first > 0) {
+                int side = first;
+                int sideCount = 1;
+                for (int i = column - 2; i >= column - REACH && i >= 0; i--) {
+                    int depth = leftHeight - heights[i];
+                    if (depth > 0) {
+                        side += depth;
+                        sideCount++;
+                    }
+                }
+                score += side * factorL;
+                count += sideCount;
+            }
+            else {
+                score += (leftCounts[column] * leftHeight - leftSums[column])
+                    * factorL;
+                count += leftCounts[column];
+            }
+        }
+        if (right < width - 1) {
+            int first = rightHeight - heights[right + 1];
+            if (first > 0) {
+                int side = first;
+                int sideCount = 1;
+                for (int i = right + 2; i <= right + REACH && i < width; i++) {
+                    int depth = rightHeight - heights[i];
+                    if (depth > 0) {
+                        side += depth;
+                        sideCount++;
+                    }
+                }
+                score += side * factorR;
+                count += sideCount;
+            }
+            else {
+                score += (rightCounts[right] * rightHeight - rightSums[right])
+                    * factorR;
+                count += rightCounts[right];
+            }
+        }
+        return (int)Math.round(1.0 * score / count);
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.Random;
+// -------------------------------------------------------------------------
+/**
+ *  This is the test class for CaveEvaluator
+ *
+ *  @author stevr76
+ *  @version 2016.08.29
+ */
+public class CaveEvaluatorTest
+    extends student.TestCase
+{
+    private CaveEvaluator caves;
+    private CleverBrain brain;
+    /**
+     * This sets up a new evaluator and a brain to check it against.
+     */
+    public void setUp()
+        throws Exception
+    {
+        caves = new CaveEvaluator();
+        brain = new CleverBrain();
+    }
+    /**
+     * This test ensures that the evaluator gives the same cave level as
+     * CleverBrain for every column and width of many random boards,
+     * including boards narrow enough that a piece touches both walls.
+     */
+    public void testSameAsBrain() {
+        Random random = new Random(5044);
+        for (int board = 0; board < 500; board++) {
+            int[] heights = new int[1 + random.nextInt(12)];
+            for (int i = 0; i < heights.length; i++) {
+                heights[i] = random.nextInt(10);
+            }
+            caves.load(heights);
+            for (int width = 1; width <= Math.min(4, heights.length);
+                width++) {
+                for (int x = 0; x + width <= heights.length; x++) {
+                    int left = random.nextInt(14);
+                    int right = random.nextInt(14);
+                    assertEquals(caves.getCaveLevel(left, right, x, width),
+                        brain.getCaveLevel(heights, left, right, x, width));
+                }
+            }
+        }
+    }
+    /**
+     * This test ensures that only the columns lower than the piece count
+     * when the column next to it is lower, and every column counts when it
+     * is not.
+     */
+    public void testCaveSide() {
+        caves.load(new int[] {5, 1, 6, 2, 0, 0, 0, 0, 0, 0});
+        //4 - 2 and 4 - 1 count on the left but the 6 does not, and 4 - 0
+        //counts three times on the right, for 17 over 5
+        assertEquals(caves.getCaveLevel(4, 4, 4, 1), 3);
+        //6 - 6, 6 - 1 and 6 - 5 all count on the left, and 6 - 0 three
+        //times on the right, for 24 over 6
+        assertEquals(caves.getCaveLevel(6, 6, 3, 1), 4);
+    }
+}
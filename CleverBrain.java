@@ -1,4 +1,7 @@
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 import cs5044.tetris.*;
 
 // -------------------------------------------------------------------------
@@ -14,21 +17,406 @@ import cs5044.tetris.*;
  *  @version 2016.07.20
  */
 public class CleverBrain
-    implements Brain
+    implements Brain, BitBoardBrain
 {
     //Fields
-    private final double oldHolesWeight = -1.0;
-    private final double newHolesWeight = -1.8;
-    private final double caveWeight = -2.2;
-    private final double heightWeight = -1.7;
-    private final double rowWeight = -50;
+    private double oldHolesWeight;
+    private double newHolesWeight;
+    private double caveWeight;
+    private double heightWeight;
+    private double rowWeight;
+    private BrainWeights weights;
+    //mixed into every cache key, so that brains with different weights can
+    //share a cache without getting each other's results
+    private long weightsKey;
+    //the features added to every move's score as they are, or null for
+    //none
+    private FeaturePipeline pipeline = null;
+    /**
+     * The number of candidate moves at which bestMove starts trying them in
+     * parallel.  A standard 10 column board has at most 40 candidates, so it
+     * stays on the sequential path.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 128;
+    //the number of columns a single parallel task tries before it stops
+    //splitting its work
+    private static final int COLUMNS_PER_TASK = 8;
+    //the number of batch positions a single task decides before it stops
+    //splitting its work
+    private static final int POSITIONS_PER_TASK = 64;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    /**
+     * The number of best-scoring moves a lookahead search follows up unless
+     * setBeamWidth() is called.
+     */
+    public static final int DEFAULT_BEAM_WIDTH = 4;
+    /**
+     * The time in nanoseconds a lookahead search may take unless
+     * setLookaheadBudget() is called.
+     */
+    public static final long DEFAULT_LOOKAHEAD_BUDGET = 2000000L;
+    /**
+     * The number of pieces a lookahead search looks at, counting the one
+     * being placed, unless setSearchDepth() is called.
+     */
+    public static final int DEFAULT_SEARCH_DEPTH = 2;
+    /**
+     * The deepest search setSearchDepth() allows.
+     */
+    public static final int MAX_SEARCH_DEPTH = 8;
+    //no piece has more rotations than this
+    private static final int MAX_ROTATIONS = 4;
+    private boolean lookahead = false;
+    private Piece nextPiece = null;
+    private int beamWidth = DEFAULT_BEAM_WIDTH;
+    private long lookaheadBudget = DEFAULT_LOOKAHEAD_BUDGET;
+    private int searchDepth = DEFAULT_SEARCH_DEPTH;
+    //the hard limit on the time of a whole decision, and how many decisions
+    //were cut short by it or by the lookahead budget and how deep each
+    //decision's search got
+    private long decisionBudget = Long.MAX_VALUE;
+    private final LongAdder budgetHits = new LongAdder();
+    private final LongAdder[] depthCounts =
+        new LongAdder[MAX_SEARCH_DEPTH + 1];
+    //the kinds of result kept in the cache, mixed into the keys so that a
+    //decision and a follow-up score for the same board never collide. The
+    //score of a decision is kept under its decision key mixed with
+    //DECISION_SCORE
+    private static final long DECISION = 0x5DEECE66DL;
+    private static final long DECISION_SCORE = 0x9E3779B97F4A7C15L;
+    private static final long FOLLOW_UP = 0x2545F4914F6CDD1DL;
+    private EvaluationCache cache = new EvaluationCache();
+    //where the time of each phase of bestMove is recorded; nothing is
+    //timed while it is null
+    private volatile PhaseTimings timings = null;
+    //whether each thread's board copy is carried over from one move to the
+    //next instead of being scanned again; off unless asked for, since it
+    //trusts the caller to pass the boards of one game in turn
+    private boolean incremental = false;
+    //how many moves have been scored
+    private final LongAdder candidates = new LongAdder();
+    //the working arrays for bestMove, kept from one call to the next so
+    //that a steady stream of calls allocates nothing. Each thread that
+    //calls bestMove gets its own set.
+    private final ThreadLocal<BrainScratch> scratch =
+        new ThreadLocal<BrainScratch>() {
+            protected BrainScratch initialValue() {
+                return new BrainScratch();
+            }
+        };
+    //the working arrays for the follow-up moves of a lookahead search,
+    //one set for each piece after the first, kept apart so that the scores
+    //of the moves before them are not overwritten
+    private final ThreadLocal<BrainScratch[]> lookaheadScratch =
+        new ThreadLocal<BrainScratch[]>() {
+            protected BrainScratch[] initialValue() {
+                return new BrainScratch[0];
+            }
+        };
     /**
      * This is the default constructor
      */
     public CleverBrain() {
         //this is the required default constructor. All data is specific to
-        //the variables passed to bestMove(), so there was no reason to have
-        //any instance variables.
+        //the variables passed to bestMove(), so the only instance variables
+        //are the weights, the settings for parallel evaluation and
+        //lookahead, and the scratch arrays.
+        this(BrainWeights.DEFAULT);
+    }
+    /**
+     * This constructor makes a brain that tallies the ranks of each move
+     * with the given weights instead of the default ones.
+     *
+     * @param weights are the weights to score moves with
+     */
+    public CleverBrain(BrainWeights weights) {
+        this.setWeights(weights);
+        for (int i = 0; i < depthCounts.length; i++) {
+            depthCounts[i] = new LongAdder();
+        }
+    }
+    /**
+     * This method sets the weights each move's ranks are tallied with.  It
+     * must not be called while another thread is in bestMove.
+     *
+     * @param weights are the weights to score moves with
+     */
+    public void setWeights(BrainWeights weights) {
+        this.weights = weights;
+        oldHolesWeight = weights.getOldHolesWeight();
+        newHolesWeight = weights.getNewHolesWeight();
+        caveWeight = weights.getCaveWeight();
+        heightWeight = weights.getHeightWeight();
+        rowWeight = weights.getRowWeight();
+        this.updateKey();
+    }
+    /**
+     * This method returns the weights each move's ranks are tallied with.
+     *
+     * @return the weights
+     */
+    public BrainWeights getWeights() {
+        return weights;
+    }
+    /**
+     * This method sets the features whose weighted values are added to the
+     * score of every move, on top of the ranked ones.  There are none to
+     * begin with.  It must not be called while another thread is in
+     * bestMove.  The pipeline is sealed, so no more features can be added
+     * to it.
+     *
+     * @param pipeline holds the features to add, or null for none
+     */
+    public void setPipeline(FeaturePipeline pipeline) {
+        if (pipeline != null) {
+            pipeline.seal();
+        }
+        this.pipeline = pipeline;
+        this.updateKey();
+    }
+    /**
+     * This method returns the features whose weighted values are added to
+     * the score of every move.
+     *
+     * @return the pipeline, or null if there is none
+     */
+    public FeaturePipeline getPipeline() {
+        return pipeline;
+    }
+    /**
+     * This method works out the number mixed into every cache key from the
+     * weights and the pipeline.
+     */
+    private void updateKey() {
+        weightsKey = weights.getKey()
+            ^ ((pipeline == null) ? 0 : pipeline.getKey());
+    }
+    /**
+     * This method sets the number of candidate moves (rotations times
+     * columns) at which bestMove tries the candidates in parallel.  Smaller
+     * searches are tried one after another on the calling thread.
+     *
+     * @param threshold is the smallest number of candidates to try in
+     * parallel. Integer.MAX_VALUE turns parallel evaluation off.
+     */
+    public void setParallelThreshold(int threshold) {
+        parallelThreshold = threshold;
+    }
+    /**
+     * This method returns the number of candidate moves at which bestMove
+     * tries the candidates in parallel.
+     *
+     * @return the parallel threshold
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+    /**
+     * This method sets the pool that parallel evaluation runs on.  The
+     * common pool is used by default.
+     *
+     * @param pool is the pool to run candidate tasks on
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+    /**
+     * This method sets the cache that decisions and lookahead follow-up
+     * scores are kept in.  Each brain has a cache of its own to begin with;
+     * several brains may share one, even if their weights differ.
+     *
+     * @param cache is the cache to use, or null to turn caching off
+     */
+    public void setCache(EvaluationCache cache) {
+        this.cache = cache;
+    }
+    /**
+     * This method returns the cache the brain is using, so that its hit,
+     * miss and eviction counts can be read.
+     *
+     * @return the cache, or null if caching is off
+     */
+    public EvaluationCache getCache() {
+        return cache;
+    }
+    /**
+     * This method sets where the time taken by each phase of bestMove is
+     * recorded.  Timing is off to begin with, and costs one check per phase
+     * while it is off.
+     *
+     * @param timings holds a histogram per phase, or null to stop timing
+     */
+    public void setPhaseTimings(PhaseTimings timings) {
+        this.timings = timings;
+    }
+    /**
+     * This method returns where the time taken by each phase of bestMove is
+     * recorded.
+     *
+     * @return the phase timings, or null if timing is off
+     */
+    public PhaseTimings getPhaseTimings() {
+        return timings;
+    }
+    /**
+     * This method turns incremental board tracking on or off.  It is off to
+     * begin with.  With it on, bestMove plays its chosen move on its own
+     * copy of the board, and on the next call only checks the given board
+     * against that copy instead of scanning every cell; see FeatureTracker.
+     * The check compares the column heights and the rows the move changed,
+     * so a board that differs only below its surface is taken for the copy
+     * and scored with the copy's holes and caves.  Only turn it on when
+     * every call passes the board the game made from the last move; a brain
+     * asked about unrelated boards must leave it off to stay a pure
+     * function of its arguments.
+     *
+     * @param incremental is true to carry the board over between moves
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+    /**
+     * This method returns whether incremental board tracking is on.
+     *
+     * @return true if the board is carried over between moves
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+    /**
+     * This method returns the number of moves scored since the brain was
+     * made, including the follow-up moves of lookahead searches.
+     *
+     * @return the number of candidate moves
+     */
+    public long getCandidateCount() {
+        return candidates.sum();
+    }
+    /**
+     * This method turns lookahead on or off.  With lookahead on, bestMove
+     * follows up the most promising moves with the best move for the next
+     * piece, as set by setNextPiece(), or with the average of the best moves
+     * for each of the seven pieces when the next piece is not known.  The
+     * move whose score plus follow-up score is lowest is chosen.
+     *
+     * @param lookahead is true to look one piece ahead
+     */
+    public void setLookahead(boolean lookahead) {
+        this.lookahead = lookahead;
+    }
+    /**
+     * This method returns whether lookahead is turned on.
+     *
+     * @return true if bestMove looks one piece ahead
+     */
+    public boolean isLookahead() {
+        return lookahead;
+    }
+    /**
+     * This method tells the brain which piece will come after the one passed
+     * to the next call of bestMove, for games that show the next piece.  It
+     * only applies to that one call, which forgets it, so it has to be set
+     * again before every move.  bestMoves() ignores it, since the positions
+     * of a batch do not follow on from each other.
+     *
+     * @param nextPiece is the next piece, or null if it is not known
+     */
+    public void setNextPiece(Piece nextPiece) {
+        this.nextPiece = nextPiece;
+    }
+    /**
+     * This method sets how many of the best-scoring moves a lookahead search
+     * follows up.  The rest are not looked at any further.
+     *
+     * @param beamWidth is the number of moves to follow up
+     */
+    public void setBeamWidth(int beamWidth) {
+        this.beamWidth = beamWidth;
+    }
+    /**
+     * This method sets how long a lookahead search may run, counted from the
+     * start of the call to bestMove.  Once the time is up no more moves are
+     * followed up, and the best move found so far is used.
+     *
+     * @param nanos is the time budget in nanoseconds
+     */
+    public void setLookaheadBudget(long nanos) {
+        lookaheadBudget = nanos;
+    }
+    /**
+     * This method sets the number of pieces a lookahead search looks at,
+     * counting the one being placed.  A search of depth 2, the default,
+     * follows up the best first moves with the next piece; each further
+     * level follows up the best moves of every piece of the level before
+     * with the piece after it, the pieces after the next one being unknown.
+     * The search is deepened one level at a time, each level starting with
+     * the move the level before chose, so when the time runs out the moves
+     * the deepest level got to are still compared fairly.
+     *
+     * @param depth is the number of pieces, from 1 to MAX_SEARCH_DEPTH
+     */
+    public void setSearchDepth(int depth) {
+        if (depth < 1 || depth > MAX_SEARCH_DEPTH) {
+            throw new IllegalArgumentException("The search depth must be"
+                + " from 1 to " + MAX_SEARCH_DEPTH + ", not " + depth);
+        }
+        searchDepth = depth;
+    }
+    /**
+     * This method returns the number of pieces a lookahead search looks at.
+     *
+     * @return the search depth
+     */
+    public int getSearchDepth() {
+        return searchDepth;
+    }
+    /**
+     * This method sets a hard limit on the time bestMove may spend on a
+     * decision, counted from the start of the call.  Every move of the
+     * piece being placed is always scored, so the greedy answer is always
+     * ready; a lookahead search then goes on only until the limit or the
+     * lookahead budget, whichever is sooner, and the best move found by
+     * then is used.  There is no limit to begin with.
+     *
+     * @param nanos is the time budget in nanoseconds, or Long.MAX_VALUE for
+     * none
+     */
+    public void setDecisionBudget(long nanos) {
+        decisionBudget = nanos;
+    }
+    /**
+     * This method returns the hard limit on the time of a decision.
+     *
+     * @return the time budget in nanoseconds
+     */
+    public long getDecisionBudget() {
+        return decisionBudget;
+    }
+    /**
+     * This method returns the number of decisions that ran out of time:
+     * those whose lookahead search was cut short by the decision budget or
+     * the lookahead budget, and those that took longer than the decision
+     * budget just to score the piece being placed.  Decisions found in the
+     * cache are not counted.
+     *
+     * @return the number of decisions that hit the budget
+     */
+    public long getBudgetHits() {
+        return budgetHits.sum();
+    }
+    /**
+     * This method returns the number of decisions whose deepest finished
+     * search looked at the given number of pieces.  A decision without
+     * lookahead has a depth of 1, as does one whose lookahead search could
+     * not finish a single level.  Decisions found in the cache are not
+     * counted.
+     *
+     * @param depth is the number of pieces, from 1 to MAX_SEARCH_DEPTH
+     * @return the number of decisions
+     */
+    public long getDepthCount(int depth) {
+        return depthCounts[depth].sum();
     }
     /**
      * This method attempts to determine the best move available. It takes the
@@ -40,7 +428,9 @@ public class CleverBrain
      * The move with the minimum score is determined. After using some algebra
      * to turn the ordinal number of the move into a rotation number and a
      * column number, those numbers are applied to the move variable, and the
-     * method ends.
+     * method ends.  The score of the move is its tally, whether or not the
+     * move came from the cache.  A board more than BitBoard.MAX_SIZE cells on
+     * a side is scored on the Board itself instead; see bestMoveOnBoard().
      *
      *  @param board is the current board
      *  @param piece is the current piece
@@ -51,84 +441,714 @@ public class CleverBrain
     public void bestMove(
         Board board, Piece piece, int heightLimit, Move move)
     {
-        //set up the data regarding the current board
+        PieceShape[] next = this.takeNextPiece();
+        if (!BitBoard.fits(board.getWidth(), board.getHeight())) {
+            this.bestMoveOnBoard(board, piece, heightLimit, move);
+            return;
+        }
+        long start = System.nanoTime();
+        PhaseTimings timings = this.timings;
+        //set up the data regarding the current board. The board is copied
+        //into a BitBoard once, and every candidate move is simulated from
+        //the pre-move heights without placing anything. All of the arrays
+        //come from this thread's scratch object, which keeps them between
+        //calls. With incremental tracking, the copy is the one the last
+        //call played its move on, if the board still matches it
+        BrainScratch buffers = scratch.get();
+        PieceShape[] shapes = PieceShape.rotations(piece);
+        if (incremental) {
+            buffers.track(board, shapes.length);
+        }
+        else {
+            buffers.prepare(board, shapes.length);
+        }
+        long decision = this.decide(buffers, shapes, next, heightLimit, start,
+            timings);
+        int finalRotations = (int)(decision >>> 32);
+        int finalColumns = (int)decision;
+        //the landing row comes from the pre-move heights the simulator
+        //already holds, rather than from dropping the piece on the board
+        PieceShape shape = shapes[finalRotations];
+        int landing = buffers.getSimulator().getLandingRow(shape,
+            finalColumns);
+        if (incremental) {
+            buffers.getTracker().expect(shape, finalColumns, landing);
+        }
+        //set the move
+        move.setPiece(shape.getPiece());
+        move.setX(finalColumns);
+        move.setY(landing);
+        move.setScore(buffers.getLastScore());
+    }
+    /**
+     * This method chooses a move on a board too large for a BitBoard the way
+     * bestMove did before boards were packed: each move is placed on the
+     * board itself, its features are read, and it is taken back off.  The
+     * moves are ranked and tallied with this brain's weights, so the move is
+     * the one bestMove would choose on a smaller board with the same blocks,
+     * but the pipeline, the cache, lookahead and incremental
+     * tracking all work on BitBoards and are left out.
+     *
+     * @param board is the current board, which is left as it was found
+     * @param piece is the current piece
+     * @param heightLimit is the height limit of the board
+     * @param move is the current move
+     */
+    private void bestMoveOnBoard(Board board, Piece piece, int heightLimit,
+        Move move) {
         int[] preHoles = this.getPreMoveHoles(board);
         int[] preHeights = this.getPreMoveHeights(board);
-        int maxPreHeight = 0;
-        for (int i = 0; i < preHeights.length; i++ ) {
-            if (preHeights[i] > maxPreHeight) {
-                maxPreHeight = preHeights[i];
+        int rotations = piece.numRotations();
+        Piece[] rotated = new Piece[rotations];
+        int[] rotationHolder = new int[rotations];
+        int entries = rotations * board.getWidth();
+        int[][] scoreArray = new int[entries][11];
+        int totalMoves = 0;
+        for (int i = 0; i < rotations; i++) {
+            rotated[i] = piece;
+            rotationHolder[i] = this.tryAllColumns(board, piece, heightLimit,
+                preHoles, preHeights, totalMoves, scoreArray) - totalMoves;
+            totalMoves += rotationHolder[i];
+            piece = piece.nextRotation();
+        }
+        candidates.add(totalMoves);
+        CandidateTable table = new CandidateTable();
+        table.copyFrom(scoreArray, entries);
+        table.rank(entries);
+        table.tally(totalMoves, newHolesWeight, oldHolesWeight, caveWeight,
+            heightWeight);
+        double[] ranked = table.getRankedScores();
+        double[] scores = new double[totalMoves];
+        for (int i = 0; i < totalMoves; i++) {
+            int height = scoreArray[i][5];
+            scores[i] = (height >= heightLimit)
+                ? (3 - (heightLimit - height)) * 100
+                : ranked[i] + rowWeight * scoreArray[i][10];
+        }
+        int moveNumber = this.pickMove(scores, totalMoves);
+        int column = moveNumber;
+        int rotation = 0;
+        while (rotation < rotations - 1
+            && column >= rotationHolder[rotation]) {
+            column -= rotationHolder[rotation];
+            rotation++;
+        }
+        move.setPiece(rotated[rotation]);
+        move.setX(column);
+        move.setY(board.rowAfterDrop(rotated[rotation], column));
+        move.setScore((totalMoves > 0) ? scores[moveNumber] : Double.NaN);
+    }
+    /**
+     * This method chooses a move the same way bestMove(Board, ...) does,
+     * reading the board straight from a BitBoard.  The board is used in
+     * place rather than copied, and its heights and holes are read from
+     * its column masks, so nothing is scanned cell by cell.  The board copy
+     * bestMove(Board, ...) carries over between moves is left alone.
+     *
+     * @param board is the current board, which is only read
+     * @param piece is the current piece
+     * @param heightLimit is the height limit of the board
+     * @param move is the current move
+     */
+    public void bestMove(BitBoard board, Piece piece, int heightLimit,
+        Move move) {
+        PieceShape[] next = this.takeNextPiece();
+        long start = System.nanoTime();
+        PhaseTimings timings = this.timings;
+        BrainScratch buffers = scratch.get();
+        PieceShape[] shapes = PieceShape.rotations(piece);
+        buffers.prepare(board, shapes.length);
+        long decision = this.decide(buffers, shapes, next, heightLimit, start,
+            timings);
+        int finalRotations = (int)(decision >>> 32);
+        int finalColumns = (int)decision;
+        PieceShape shape = shapes[finalRotations];
+        move.setPiece(shape.getPiece());
+        move.setX(finalColumns);
+        move.setY(buffers.getSimulator().getLandingRow(shape, finalColumns));
+        move.setScore(buffers.getLastScore());
+    }
+    /**
+     * This method finds moves for every position of a batch, filling in one
+     * Move per position.  The positions are read straight from the batch's
+     * packed arrays, and each is decided the same way bestMove() decides a
+     * board, using the calling thread's scratch arrays and the cache.  The
+     * positions are not thought to follow on from each other, so the board
+     * copy bestMove() carries over between moves is left alone.
+     *
+     * @param batch holds the positions
+     * @param moves receives the move for each position, and must be at
+     * least as long as the batch
+     */
+    public void bestMoves(BoardBatch batch, Move[] moves) {
+        this.decideRange(batch, moves, 0, batch.size());
+    }
+    /**
+     * This method finds moves for every position of a batch, the same as
+     * bestMoves(batch, moves), but splits the positions between the threads
+     * of the given pool, waiting until every move is found.
+     *
+     * @param batch holds the positions
+     * @param moves receives the move for each position, and must be at
+     * least as long as the batch
+     * @param workers is the pool to split the positions between
+     */
+    public void bestMoves(BoardBatch batch, Move[] moves,
+        ForkJoinPool workers) {
+        workers.invoke(new BatchTask(batch, moves, 0, batch.size()));
+    }
+    /**
+     * This method finds moves for the given boards, one per board, by
+     * packing them into a batch and calling bestMoves(batch, moves).
+     *
+     * @param boards holds the board of each position
+     * @param pieces holds the piece to play on each board
+     * @param heightLimits holds the height limit of each board
+     * @param moves receives the move for each board
+     */
+    public void bestMoves(Board[] boards, Piece[] pieces, int[] heightLimits,
+        Move[] moves) {
+        this.bestMoves(new BoardBatch(boards, pieces, heightLimits), moves);
+    }
+    /**
+     * This method finds moves for a range of the positions of a batch on
+     * the calling thread.
+     *
+     * @param batch holds the positions
+     * @param moves receives the move for each position
+     * @param from is the first position to decide
+     * @param to is one past the last position to decide
+     */
+    private void decideRange(BoardBatch batch, Move[] moves, int from,
+        int to) {
+        BrainScratch buffers = scratch.get();
+        for (int n = from; n < to; n++) {
+            long start = System.nanoTime();
+            PhaseTimings timings = this.timings;
+            PieceShape[] shapes = PieceShape.rotations(batch.getPiece(n));
+            buffers.prepare(batch, n, shapes.length);
+            long decision = this.decide(buffers, shapes, null,
+                batch.getHeightLimit(n), start, timings);
+            int finalRotations = (int)(decision >>> 32);
+            int finalColumns = (int)decision;
+            moves[n].setPiece(shapes[finalRotations].getPiece());
+            moves[n].setX(finalColumns);
+            moves[n].setY(buffers.getSimulator().getLandingRow(
+                shapes[finalRotations], finalColumns));
+            moves[n].setScore(buffers.getLastScore());
+        }
+    }
+    /**
+     * This method returns the rotations of the piece set by setNextPiece()
+     * and forgets it, so that it only applies to the call that takes it.
+     *
+     * @return the shape of each rotation of the next piece, or null if it
+     * is not known
+     */
+    private PieceShape[] takeNextPiece() {
+        Piece next = nextPiece;
+        nextPiece = null;
+        return (next == null) ? null : PieceShape.rotations(next);
+    }
+    /**
+     * This method decides which move to make on the board the scratch
+     * object was prepared with.  A board and piece already in the cache get
+     * the move and score stored there; otherwise every move is scored,
+     * followed up when lookahead is on, and the best one is stored in the
+     * cache with its score.
+     *
+     * @param buffers is the prepared scratch object
+     * @param shapes holds the shape of each rotation of the piece
+     * @param next holds the shape of each rotation of the next piece, or is
+     * null if it is not known
+     * @param heightLimit is the height limit of the board
+     * @param start is the System.nanoTime() the decision started at
+     * @param timings receives the time of each phase, or is null
+     * @return the rotation number in the high 32 bits and the column in the
+     * low 32 bits
+     */
+    private long decide(BrainScratch buffers, PieceShape[] shapes,
+        PieceShape[] next, int heightLimit, long start,
+        PhaseTimings timings) {
+        //a board and piece seen before get the same move as last time.
+        //Decisions made with lookahead depend on the time budget, so only
+        //the greedy ones are kept
+        boolean useCache = cache != null && !lookahead;
+        long key = 0;
+        long cached = EvaluationCache.MISSING;
+        double cachedScore = Double.NaN;
+        if (useCache) {
+            key = this.cacheKey(buffers.getBits(), shapes, heightLimit,
+                DECISION);
+            cached = cache.get(key);
+            if (cached != EvaluationCache.MISSING) {
+                cachedScore = cache.getScore(
+                    EvaluationCache.mix(key ^ DECISION_SCORE));
+            }
+        }
+        if (timings != null) {
+            timings.record(PhaseTimings.PREPARE, System.nanoTime() - start);
+        }
+        int finalRotations = 0;
+        int finalColumns = 0;
+        //the move and its score are separate entries, so a move whose score
+        //has been evicted is worked out again
+        if (cached != EvaluationCache.MISSING
+            && !Double.isNaN(cachedScore)) {
+            finalRotations = (int)(cached >>> 32);
+            finalColumns = (int)cached;
+            buffers.setLastScore(cachedScore);
+        }
+        else {
+            int totalMoves = this.scoreMoves(buffers, shapes, heightLimit,
+                timings);
+            int moveNumber = this.pickMove(buffers.getScores(), totalMoves);
+            if (lookahead && totalMoves > 0 && searchDepth > 1) {
+                long lookaheadStart = (timings != null) ? System.nanoTime()
+                    : 0;
+                moveNumber = this.lookAhead(buffers, shapes, next,
+                    totalMoves, heightLimit, moveNumber, start);
+                if (timings != null) {
+                    timings.record(PhaseTimings.LOOKAHEAD,
+                        System.nanoTime() - lookaheadStart);
+                }
+            }
+            else {
+                if (System.nanoTime() - start > decisionBudget) {
+                    budgetHits.increment();
+                }
+                depthCounts[1].increment();
+            }
+            buffers.setLastScore((totalMoves > 0)
+                ? buffers.getScores()[moveNumber] : Double.NaN);
+            //extract the rotation count and column number from the ordinal
+            //value of the move number using the rotationHolder array that
+            //kept track of the number of columns tested in each rotation
+            int[] rotationHolder = buffers.getRotationHolder();
+            boolean done = false;
+            int count = 0;
+            while (!done) {
+                if (moveNumber - rotationHolder[count] < 0) {
+                    finalRotations = count;
+                    finalColumns = moveNumber;
+                    done = true;
+                }
+                else {
+                    moveNumber -= rotationHolder[count];
+                    count++;
+                }
+            }
+            if (useCache) {
+                cache.put(key, ((long)finalRotations << 32) | finalColumns);
+                cache.putScore(EvaluationCache.mix(key ^ DECISION_SCORE),
+                    buffers.getLastScore());
             }
         }
+        return ((long)finalRotations << 32) | finalColumns;
+    }
+    /**
+     * This method scores every move of the given piece on the board the
+     * scratch object was prepared with.  The features of each move are
+     * recorded in the candidate table, ranked, and tallied into a final score
+     * for each move, which is kept in the scratch object's scores array.
+     * Lower scores are better.
+     *
+     * @param buffers is the prepared scratch object
+     * @param shapes holds the shape of each rotation of the piece
+     * @param heightLimit is the height limit of the board
+     * @param timings receives the time of each phase, or is null
+     * @return the number of moves scored
+     */
+    private int scoreMoves(BrainScratch buffers, PieceShape[] shapes,
+        int heightLimit, PhaseTimings timings) {
+        long mark = (timings != null) ? System.nanoTime() : 0;
+        MoveSimulator simulator = buffers.getSimulator();
+        int width = simulator.getWidth();
         //this holds the number of columns tested for the piece during
         //the given rotation
-        int[] rotationHolder = new int[piece.numRotations()];
-        //this declares the array that will hold the scores
-        //with one entry per column that will be tested
-        int[][] scoreArray = new int[piece.numRotations()
-            * board.getWidth()][11];
-        int rotationCount = 0;
+        int[] rotationHolder = buffers.getRotationHolder();
+        //this holds the features of each move, with one entry per column
+        //that will be tested. Only the first shapes.length * width entries
+        //are used
+        CandidateTable table = buffers.getCandidates();
+        int entries = shapes.length * width;
+        //the ordinal number of the first move of each rotation is worked
+        //out up front, so every candidate has a fixed place in the table no
+        //matter which thread scores it
         int totalMoves = 0;
-        //the main while loop
-        while (rotationCount < piece.numRotations()) {
-            rotationHolder[rotationCount] = this.tryAllColumns(board, piece,
-                heightLimit, preHoles, preHeights, totalMoves, scoreArray) -
-                totalMoves;
+        for (int i = 0; i < shapes.length; i++) {
+            rotationHolder[i] = Math.max(0, width - shapes[i].getWidth() + 1);
             //totalMoves keeps track of columns tested
-            totalMoves += rotationHolder[rotationCount];
-            piece = piece.nextRotation();
-            rotationCount++;
+            totalMoves += rotationHolder[i];
+        }
+        //the entries past the last move are still ranked, so they have to
+        //hold zeros the way a new table would
+        table.clear(totalMoves, entries);
+        //the row kill count only matters to moves under the height limit
+        if (totalMoves >= parallelThreshold) {
+            pool.invoke(new RotationsTask(simulator, shapes, rotationHolder,
+                table, heightLimit));
+        }
+        else {
+            int moveCount = 0;
+            for (int i = 0; i < shapes.length; i++) {
+                moveCount = this.tryColumns(buffers.getPass(), shapes[i], 0,
+                    rotationHolder[i], moveCount, table, heightLimit);
+            }
+        }
+        candidates.add(totalMoves);
+        if (timings != null) {
+            mark = this.recordPhase(timings, PhaseTimings.SCORE, mark);
+        }
+        //rank the new holes, old holes, caves and height score of every
+        //move against the other moves
+        table.rank(entries);
+        if (timings != null) {
+            mark = this.recordPhase(timings, PhaseTimings.RANK, mark);
+        }
+        //tally each score and keep it in the scores array
+        table.tally(totalMoves, newHolesWeight, oldHolesWeight, caveWeight,
+            heightWeight);
+        double[] scores = buffers.getScores();
+        double[] ranked = table.getRankedScores();
+        double[] extras = table.getExtras();
+        int[] heights = table.getHeights();
+        int[] rowKills = table.getRowKills();
+        for (int i = 0; i < totalMoves; i++) {
+            if (heights[i] >= heightLimit) {
+                scores[i] = (3 - (heightLimit - heights[i])) * 100;
+            }
+            else {
+                scores[i] = ranked[i] + rowWeight * rowKills[i]
+                    + extras[i];
+            }
         }
+        if (timings != null) {
+            this.recordPhase(timings, PhaseTimings.TALLY, mark);
+        }
+        return totalMoves;
+    }
+    /**
+     * This method records the time since the given mark as the time of a
+     * phase.
+     *
+     * @param timings receives the time
+     * @param phase is the phase that just ended
+     * @param mark is the System.nanoTime() the phase started at
+     * @return the System.nanoTime() the next phase starts at
+     */
+    private long recordPhase(PhaseTimings timings, int phase, long mark) {
+        long now = System.nanoTime();
+        timings.record(phase, now - mark);
+        return now;
+    }
+    /**
+     * This method returns the ordinal number of the move with the lowest
+     * score.  When moves tie, the first one wins.
+     *
+     * @param scores holds the score of each move
+     * @param totalMoves is the number of moves
+     * @return the ordinal number of the best move
+     */
+    private int pickMove(double[] scores, int totalMoves) {
         //start with a large min score
         double min = 10000;
         int moveNumber = 0;
-        double score = 0;
-        //rank the scores that were added to indices 1-4 of the scores array
-        //for that move and put the rankings in indices 5-9 for each move
-        this.rankScores(scoreArray);
-        //tally each score and put it in index 10 of the array for each
-        //move
         for (int i = 0; i < totalMoves; i++) {
-            score = newHolesWeight *
-                (totalMoves - scoreArray[i][6]) / totalMoves +
-                oldHolesWeight *
-                (totalMoves - scoreArray[i][7]) / totalMoves +
-                caveWeight *
-                (totalMoves - scoreArray[i][8]) / totalMoves +
-                heightWeight *
-                (totalMoves - scoreArray[i][9]) / totalMoves +
-                rowWeight * scoreArray[i][10];
-            if (scoreArray[i][5] >= heightLimit) {
-                score  = (3 - (heightLimit - scoreArray[i][5])) * 100;
-            }
-            if (score < min) {
-                min = score;
+            if (scores[i] < min) {
+                min = scores[i];
                 moveNumber = i;
             }
         }
-        //extract the rotation count and column number from the ordinal
-        //value of the move number using the rotationHolder array that kept
-        //track of the number of columns tested in each rotation
-        boolean done = false;
-        int count = 0;
-        int finalRotations = 0;
-        int finalColumns = 0;
-        while (!done) {
-            if (moveNumber - rotationHolder[count] < 0) {
-                finalRotations = count;
-                finalColumns = moveNumber;
-                done = true;
+        return moveNumber;
+    }
+    /**
+     * This method returns the lowest score of any move of the given piece on
+     * the board the scratch object was prepared with, or the starting min
+     * score of 10000 if the piece does not fit anywhere.
+     *
+     * @param buffers is the prepared scratch object
+     * @param shapes holds the shape of each rotation of the piece
+     * @param heightLimit is the height limit of the board
+     * @return the best score
+     */
+    private double bestScore(BrainScratch buffers, PieceShape[] shapes,
+        int heightLimit) {
+        int totalMoves = this.scoreMoves(buffers, shapes, heightLimit, null);
+        if (totalMoves == 0) {
+            return 10000;
+        }
+        return buffers.getScores()[this.pickMove(buffers.getScores(),
+            totalMoves)];
+    }
+    /**
+     * This method follows up the best-scoring moves with the pieces after
+     * them, one level deeper at a time up to the search depth.  At each
+     * level the beamWidth moves with the lowest scores are played out on
+     * boards of their own, with full rows cleared, and each of those boards
+     * is given a follow-up score by followUpScore().  The move with the
+     * lowest score plus follow-up score at the deepest level reached is
+     * returned.  Moves are followed up best first, the move chosen by the
+     * level before going first of all, and if the time budget runs out the
+     * moves not yet followed up at that level are dropped.
+     *
+     * @param buffers is the scratch object holding the scored first moves
+     * @param shapes holds the shape of each rotation of the first piece
+     * @param next holds the shape of each rotation of the second piece, or
+     * is null if it is not known
+     * @param totalMoves is the number of first moves
+     * @param heightLimit is the height limit of the board
+     * @param moveNumber is the best first move without lookahead
+     * @param start is the System.nanoTime() bestMove started at
+     * @return the ordinal number of the move to make
+     */
+    private int lookAhead(BrainScratch buffers, PieceShape[] shapes,
+        PieceShape[] next, int totalMoves, int heightLimit, int moveNumber,
+        long start) {
+        long budget = Math.min(lookaheadBudget, decisionBudget);
+        double[] scores = buffers.getScores();
+        int[] beam = buffers.getBeam(beamWidth);
+        int beamSize = this.selectBeam(scores, totalMoves, beam);
+        int best = moveNumber;
+        int reached = 1;
+        boolean expired = false;
+        for (int depth = 2; depth <= searchDepth && !expired; depth++) {
+            //the move chosen so far is followed up first, so that it is
+            //always among the moves compared if time runs out
+            for (int k = 1; k < beamSize; k++) {
+                if (beam[k] == best) {
+                    System.arraycopy(beam, 0, beam, 1, k);
+                    beam[0] = best;
+                    break;
+                }
             }
-            else {
-                moveNumber -= rotationHolder[count];
-                count++;
+            double min = Double.MAX_VALUE;
+            int found = -1;
+            for (int k = 0; k < beamSize; k++) {
+                if (System.nanoTime() - start > budget) {
+                    expired = true;
+                    break;
+                }
+                BitBoard child = buffers.getChild(k);
+                this.playMove(buffers, shapes, beam[k], child);
+                double followUpScore = this.followUpScore(child, heightLimit,
+                    depth - 1, next, 0, start, budget);
+                if (Double.isNaN(followUpScore)) {
+                    expired = true;
+                    break;
+                }
+                double total = scores[beam[k]] + followUpScore;
+                if (total < min) {
+                    min = total;
+                    found = beam[k];
+                }
+            }
+            if (found >= 0) {
+                best = found;
+            }
+            if (!expired) {
+                reached = depth;
             }
         }
-        //set the move
-        piece = piece.nthRotation(finalRotations);
-        move.setPiece(piece);
-        move.setX(finalColumns);
-        move.setY(board.rowAfterDrop(piece, finalColumns));
+        if (expired) {
+            budgetHits.increment();
+        }
+        depthCounts[reached].increment();
+        return best;
+    }
+    /**
+     * This method returns the follow-up score of a board: the score of the
+     * best line of play for the given number of pieces, averaged over the
+     * pieces that could come first (or for the next piece alone, when it is
+     * known and these are the first follow-up moves).  For a single piece
+     * this is the lowest score of any of its moves.  For more, the beamWidth
+     * best moves of each piece are played out, and each is scored by its
+     * own score plus the follow-up score of the board it leaves.  The board
+     * is examined once and shared by all of the pieces, and follow-up
+     * scores already in the cache are not worked out again.
+     *
+     * @param board is the board to score
+     * @param heightLimit is the height limit of the board
+     * @param pieces is the number of pieces to look at
+     * @param known holds the shape of each rotation of the piece that comes
+     * first, or is null if it could be any of them
+     * @param level is the number of follow-up levels above this one
+     * @param start is the System.nanoTime() bestMove started at
+     * @param budget is the time in nanoseconds the search may take
+     * @return the follow-up score, or NaN if the time ran out first
+     */
+    private double followUpScore(BitBoard board, int heightLimit, int pieces,
+        PieceShape[] known, int level, long start, long budget) {
+        BrainScratch followUp = this.followUpScratch(level);
+        //the board is only examined if one of its follow-up scores is not in
+        //the cache
+        boolean prepared = false;
+        Piece[] types = PieceShape.getPieceTypes();
+        int count = (known != null) ? 1 : types.length;
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            PieceShape[] next = (known != null) ? known
+                : PieceShape.rotationsOfType(i);
+            long key = 0;
+            double score = Double.NaN;
+            if (cache != null) {
+                key = this.cacheKey(board, next, heightLimit,
+                    FOLLOW_UP * pieces);
+                score = cache.getScore(key);
+            }
+            if (Double.isNaN(score)) {
+                if (!prepared) {
+                    followUp.prepare(board, MAX_ROTATIONS);
+                    prepared = true;
+                }
+                if (pieces == 1) {
+                    score = this.bestScore(followUp, next, heightLimit);
+                }
+                else {
+                    score = this.bestLine(followUp, next, heightLimit, pieces,
+                        level, start, budget);
+                    if (Double.isNaN(score)) {
+                        return score;
+                    }
+                }
+                if (cache != null) {
+                    cache.putScore(key, score);
+                }
+            }
+            total += score;
+        }
+        return total / count;
+    }
+    /**
+     * This method returns the score of the best line of play for the given
+     * number of pieces, the first of which is given, on the board the
+     * scratch object was prepared with.
+     *
+     * @param buffers is the prepared scratch object
+     * @param shapes holds the shape of each rotation of the first piece
+     * @param heightLimit is the height limit of the board
+     * @param pieces is the number of pieces to look at, at least 2
+     * @param level is the number of follow-up levels above this one
+     * @param start is the System.nanoTime() bestMove started at
+     * @param budget is the time in nanoseconds the search may take
+     * @return the lowest score plus follow-up score of the beamWidth best
+     * moves, the starting min score of 10000 if the piece does not fit
+     * anywhere, or NaN if the time ran out first
+     */
+    private double bestLine(BrainScratch buffers, PieceShape[] shapes,
+        int heightLimit, int pieces, int level, long start, long budget) {
+        int totalMoves = this.scoreMoves(buffers, shapes, heightLimit, null);
+        if (totalMoves == 0) {
+            return 10000;
+        }
+        double[] scores = buffers.getScores();
+        int[] beam = buffers.getBeam(beamWidth);
+        int beamSize = this.selectBeam(scores, totalMoves, beam);
+        double min = Double.MAX_VALUE;
+        for (int k = 0; k < beamSize; k++) {
+            if (System.nanoTime() - start > budget) {
+                return Double.NaN;
+            }
+            BitBoard child = buffers.getChild(k);
+            this.playMove(buffers, shapes, beam[k], child);
+            double followUpScore = this.followUpScore(child, heightLimit,
+                pieces - 1, null, level + 1, start, budget);
+            if (Double.isNaN(followUpScore)) {
+                return followUpScore;
+            }
+            min = Math.min(min, scores[beam[k]] + followUpScore);
+        }
+        return min;
+    }
+    /**
+     * This method returns this thread's scratch object for one level of
+     * follow-up moves.
+     *
+     * @param level is the number of follow-up levels above it
+     * @return the scratch object
+     */
+    private BrainScratch followUpScratch(int level) {
+        BrainScratch[] levels = lookaheadScratch.get();
+        if (level >= levels.length) {
+            levels = Arrays.copyOf(levels, level + 1);
+            lookaheadScratch.set(levels);
+        }
+        if (levels[level] == null) {
+            levels[level] = new BrainScratch();
+        }
+        return levels[level];
+    }
+    /**
+     * This method builds the cache key for a question about a board: the
+     * board's Zobrist hash mixed with its size, the piece, the height limit,
+     * the weights and the kind of result wanted.
+     *
+     * @param board is the board in question
+     * @param shapes holds the rotations of the piece in question
+     * @param heightLimit is the height limit of the board
+     * @param kind is DECISION, or FOLLOW_UP times the number of pieces a
+     * follow-up score looks at
+     * @return the key
+     */
+    private long cacheKey(BitBoard board, PieceShape[] shapes,
+        int heightLimit, long kind) {
+        return EvaluationCache.mix(board.getHash()
+            ^ EvaluationCache.mix(shapes[0].getKey() ^ kind ^ weightsKey
+            ^ ((long)heightLimit << 40) ^ ((long)board.getWidth() << 48)
+            ^ ((long)board.getHeight() << 56)));
+    }
+    /**
+     * This method finds the moves with the lowest scores, best first, with
+     * ties going to the lower ordinal number.
+     *
+     * @param scores holds the score of each move
+     * @param totalMoves is the number of moves
+     * @param beam receives the ordinal numbers of the chosen moves
+     * @return the number of moves chosen, which is at most beamWidth
+     */
+    private int selectBeam(double[] scores, int totalMoves, int[] beam) {
+        int size = 0;
+        for (int i = 0; i < totalMoves; i++) {
+            //insert the move after every move that scores as well or better
+            int position = size;
+            while (position > 0 && scores[i] < scores[beam[position - 1]]) {
+                position--;
+            }
+            if (position < beamWidth) {
+                int last = Math.min(size, beamWidth - 1);
+                for (int j = last; j > position; j--) {
+                    beam[j] = beam[j - 1];
+                }
+                beam[position] = i;
+                if (size < beamWidth) {
+                    size++;
+                }
+            }
+        }
+        return size;
+    }
+    /**
+     * This method plays the given move out on a copy of the prepared board,
+     * clearing any rows it fills.
+     *
+     * @param buffers is the scratch object holding the board
+     * @param shapes holds the shape of each rotation of the piece
+     * @param moveNumber is the ordinal number of the move
+     * @param child receives the board after the move
+     */
+    private void playMove(BrainScratch buffers, PieceShape[] shapes,
+        int moveNumber, BitBoard child) {
+        int[] rotationHolder = buffers.getRotationHolder();
+        int rotation = 0;
+        while (moveNumber - rotationHolder[rotation] >= 0) {
+            moveNumber -= rotationHolder[rotation];
+            rotation++;
+        }
+        PieceShape shape = shapes[rotation];
+        child.copyFrom(buffers.getBits());
+        child.place(shape, moveNumber,
+            buffers.getSimulator().getLandingRow(shape, moveNumber));
+        child.clearRows();
     }
     /**
      * This method gathers the number of holes in the board before the move and
@@ -143,6 +1163,9 @@ public class CleverBrain
      */
     public int[] getPreMoveHoles(Board board)
     {
+        if (BitBoard.fits(board.getWidth(), board.getHeight())) {
+            return this.getPreMoveHoles(new BitBoard(board));
+        }
         int[] preHoles = new int[board.getWidth()];
         for (int i = 0; i < board.getWidth(); i++) {
             int countPerColumn = 0;
@@ -155,6 +1178,23 @@ public class CleverBrain
         }
         return preHoles;
     }
+    /**
+     * This method gathers the number of holes in each column of a BitBoard.
+     * The holes in a column are the column height minus the number of blocks
+     * in the column, so no cells need to be visited.
+     *
+     * @param board is the packed copy of the board
+     * @return int[] holds the number of holes in each column. The size of the
+     * array is the board width.
+     */
+    public int[] getPreMoveHoles(BitBoard board)
+    {
+        int[] preHoles = new int[board.getWidth()];
+        for (int i = 0; i < board.getWidth(); i++) {
+            preHoles[i] = board.getColumnHoles(i);
+        }
+        return preHoles;
+    }
     /**
      * This method captures the height of each column pre-move in an array.
      *
@@ -169,6 +1209,20 @@ public class CleverBrain
         }
         return preHeights;
     }
+    /**
+     * This method captures the height of each column of a BitBoard.
+     *
+     * @param board is the packed copy of the board
+     * @return value is the int[] with 1 entry per column. The entry is the
+     * height of that column.
+     */
+    public int[] getPreMoveHeights(BitBoard board) {
+        int[] preHeights = new int[board.getWidth()];
+        for (int i = 0; i < board.getWidth(); i++) {
+            preHeights[i]  = board.getColumnHeight(i);
+        }
+        return preHeights;
+    }
     /**
      * This method returns the number of new holes created by a move. It uses
      * the data created in getPreMoveHoles and compares the columns under the
@@ -201,6 +1255,26 @@ public class CleverBrain
         }
         return newHoles;
     }
+    /**
+     * This method returns the number of new holes created by a move that has
+     * been placed on a BitBoard.  The holes of each column under the piece
+     * are found with a population count instead of a scan.
+     *
+     * @param board is the packed board after the move has been placed.
+     * @param preHoles contains the data about the board pre-move
+     * @param column is the left-most columns of the piece in the move
+     * @param pieceWidth is the number of columns in the current piece
+     * @return newHoles is the number of new holes created during this
+     * move.
+     */
+    public int getNewHoleCount(BitBoard board, int[] preHoles, int column,
+        int pieceWidth) {
+        int newHoles = 0;
+        for (int i = column; i < column + pieceWidth; i++) {
+            newHoles += board.getColumnHoles(i) - preHoles[i];
+        }
+        return newHoles;
+    }
     /**
      * This method returns the number of pre-move holes that remain covered
      * during the current move. A negative value of new holes means this data
@@ -232,6 +1306,15 @@ public class CleverBrain
     public int getMaxHeight(Board board) {
         return board.getLargestHeight();
     }
+    /**
+     * This method returns the max height of a BitBoard.
+     *
+     * @param board is the packed board in question
+     * @return value that is the max column height of the board
+     */
+    public int getMaxHeight(BitBoard board) {
+        return board.getLargestHeight();
+    }
     /**
      * This method returns the average depth(or height) of up to 4 columns
      * surrounding the piece at its current placement.
@@ -243,6 +1326,56 @@ public class CleverBrain
      * moves and that rank will be a factor in the score of the move
      */
     public int getCaveLevel(Board board, int column, int pieceWidth) {
+        return this.getCaveLevel(this.getPreMoveHeights(board), column,
+            pieceWidth);
+    }
+    /**
+     * This method returns the cave level of a move that has been placed on
+     * a BitBoard.
+     *
+     * @param board is the packed board in question
+     * @param column is the left-most column of the current piece
+     * @param pieceWidth is the width of the piece
+     * @return average depth that will be ranked against the other possible
+     * moves and that rank will be a factor in the score of the move
+     */
+    public int getCaveLevel(BitBoard board, int column, int pieceWidth) {
+        return this.getCaveLevel(this.getPreMoveHeights(board), column,
+            pieceWidth);
+    }
+    /**
+     * This method returns the average depth(or height) of up to 4 columns
+     * surrounding the piece, given the height of every column after the
+     * piece has been placed.
+     *
+     * @param heights holds the post-move height of every column
+     * @param column is the left-most column of the current piece
+     * @param pieceWidth is the width of the piece
+     * @return average depth that will be ranked against the other possible
+     * moves and that rank will be a factor in the score of the move
+     */
+    public int getCaveLevel(int[] heights, int column, int pieceWidth) {
+        return this.getCaveLevel(heights, heights[column],
+            heights[column + pieceWidth - 1], column, pieceWidth);
+    }
+    /**
+     * This method returns the average depth(or height) of up to 4 columns
+     * surrounding the piece.  The heights of the piece's own left and right
+     * columns are passed in separately, so the heights array can hold the
+     * pre-move heights and nothing has to be placed to find the score.
+     *
+     * @param heights holds the height of every column outside the piece
+     * @param leftHeight is the post-move height of the left-most column of
+     * the piece
+     * @param rightHeight is the post-move height of the right-most column of
+     * the piece
+     * @param column is the left-most column of the current piece
+     * @param pieceWidth is the width of the piece
+     * @return average depth that will be ranked against the other possible
+     * moves and that rank will be a factor in the score of the move
+     */
+    public int getCaveLevel(int[] heights, int leftHeight, int rightHeight,
+        int column, int pieceWidth) {
         int score = 0;
         int count = 0;
         boolean firstLGreaterThan0 = false;
@@ -251,7 +1384,7 @@ public class CleverBrain
         //make up for the lack of surrounding columns due to the boundary
         int factorL = (column == 1) ? 2 : 1;
         int factorR =
-            (column + pieceWidth - 1 == board.getWidth() - 2) ? 2 : 1;
+            (column + pieceWidth - 1 == heights.length - 2) ? 2 : 1;
         //to avoid caves of width 1, if the first column to the left or right
         //that is checked is a cave, set the flag so that the next columns
         //are ignored. That way, those columns can't cancel the cave score of
@@ -260,8 +1393,7 @@ public class CleverBrain
         //the next 2 columns are 3 and 4 above the piece
         for (int i = 1; i < 4; i++) {
             if (column - i >= 0) {
-                int tempL = (board.getColumnHeight(column) -
-                    board.getColumnHeight(column - i));
+                int tempL = (leftHeight - heights[column - i]);
                 if (i == 1 && tempL > 0) {
                     score += tempL * factorL;
                     count += 1;
@@ -284,9 +1416,9 @@ public class CleverBrain
                     }
                 }
             }
-            if (column + pieceWidth - 1 + i < board.getWidth()) {
-                int tempR = (board.getColumnHeight(column + pieceWidth - 1) -
-                    board.getColumnHeight(column + pieceWidth - 1 + i));
+            if (column + pieceWidth - 1 + i < heights.length) {
+                int tempR = (rightHeight -
+                    heights[column + pieceWidth - 1 + i]);
                 if (i == 1 && tempR > 0) {
                     score += tempR * factorR;
                     count += 1;
@@ -325,21 +1457,36 @@ public class CleverBrain
     public int getHeightScore(Board board, int preMoveHeight) {
         return preMoveHeight - board.getLargestHeight();
     }
+    /**
+     * This method returns the strict change in max height of a BitBoard in a
+     * given move.
+     *
+     * @param board is the packed board in question
+     * @param preMoveHeight is the height prior to calling the clearRows method
+     * @return int value of how many rows were cleared by this move
+     */
+    public int getHeightScore(BitBoard board, int preMoveHeight) {
+        return preMoveHeight - board.getLargestHeight();
+    }
     /**
      * This method returns the number of rows eliminated by a move. It scans
-     * each row with nested for loops.  Every row that does not contain a hole
-     * counts as a row eliminated by the move in question.
+     * each row with nested for loops, moving on to the next row as soon as
+     * it finds a hole.  Every row that does not contain a hole counts as a
+     * row eliminated by the move in question.
      *
      * @param board is the board in question
      * @return int value of the number of rows eliminated by the move
      */
     public int getRowKillCount(Board board) {
         int rowKill = 0;
-        for (int i = 0; i < board.getLargestHeight(); i++) {
+        int largestHeight = board.getLargestHeight();
+        int width = board.getWidth();
+        for (int i = 0; i < largestHeight; i++) {
             boolean rowHasHoles = false;
-            for (int j = 0; j < board.getWidth(); j++) {
+            for (int j = 0; j < width; j++) {
                 if (!board.hasBlockAt(j, i)) {
                     rowHasHoles = true;
+                    break;
                 }
             }
             if (!rowHasHoles) {
@@ -348,6 +1495,18 @@ public class CleverBrain
         }
         return rowKill;
     }
+    /**
+     * This method returns the number of rows eliminated by a move that has
+     * been placed on a BitBoard.  The board keeps its count of full rows up
+     * to date as pieces are placed, looking only at the rows each piece
+     * covers, so nothing is scanned here.
+     *
+     * @param board is the packed board in question
+     * @return int value of the number of rows eliminated by the move
+     */
+    public int getRowKillCount(BitBoard board) {
+        return board.getFullRowCount();
+    }
     /**
      * This method ranks the moves against each other on the basis of cave
      * depth, new holes, and old holes.  The data is kept in a 2d array.  The
@@ -355,11 +1514,11 @@ public class CleverBrain
      * second entry is and array that should contain the scores for each move
      * for 1. new holes 2. old holes 3. cave score 4. height score 5. max height
      * (that score will be the greater than the worst score possible if the
-     *  max height of a move is out of bounds).  This method will store entries
-     *  for (1),(2),(3), and (4) in a separate array and then sort that holder.
-     *  The scores will then be compared to each element in the sorted array
-     *  until a match is found. The counter at that time will be the rank of
-     *  that score for that move, and those ranks will be saved in elements(6),
+     *  max height of a move is out of bounds).  For each of (1),(2),(3), and
+     *  (4), the moves are ranked by a CandidateTable.  The rank of a move is
+     *  the number of moves with a strictly better score, so moves with equal
+     *  scores share the lowest rank of their group.  Those ranks will be
+     *  saved in elements(6),
      *  (7),(8) and (9) of the 2d array.  Array element (10) will be save for
      *  the row score, which will be absolute, not relative to the other moves
      *  available on the current board.
@@ -369,49 +1528,10 @@ public class CleverBrain
      *  scores in cols 1-4 in the array cols 5-9.
      */
     public void rankScores(int[][] scoreArray) {
-        //the score in the 4th column is the height score, which is better as
-        //it gets larger. To make up for this, I multiplied the array elements
-        //for the column by -1 and sorted them lowest to highest. Then I
-        //multiplied by -1 again after sorting, so that the ranking is
-        //consistent with the other rankings. The lowest rank number is still
-        //the best score.
-        int entries = scoreArray.length;
-        int[][] holder = new int[5][entries];
-        for (int i = 1; i < 5; i++) {
-            for (int j = 0; j < entries; j++) {
-                if (i != 4) {
-                    holder[i][j] = scoreArray[j][i];
-                }
-                else {
-                    holder[i][j] = (-1) * scoreArray[j][i];
-                }
-            }
-        }
-        for ( int i = 1; i < 5; i++) {
-            Arrays.sort(holder[i]);
-        }
-        for (int i = 1; i < 5; i++) {
-            for (int j = 0; j < entries; j++) {
-                boolean done = false;
-                int count = 0;
-                while ( !done ) {
-
-                    if (i != 4) {
-                        if (scoreArray[j][i]  <= holder[i][count]) {
-                            scoreArray[j][i + 5] = count;
-                            done = true;
-                        }
-                    }
-                    else {
-                        if (scoreArray[j][i]  >= (-1) * holder[i][count]) {
-                            scoreArray[j][i + 5] = count;
-                            done = true;
-                        }
-                    }
-                    count++;
-                }
-            }
-        }
+        CandidateTable table = new CandidateTable();
+        table.copyFrom(scoreArray, scoreArray.length);
+        table.rank(scoreArray.length);
+        table.copyRanksTo(0, scoreArray.length, scoreArray);
     }
     /**
      * This method records the scores of a given move for a given roation
@@ -438,12 +1558,18 @@ public class CleverBrain
      */
     public int tryAllColumns(Board board, Piece piece, int heightLimit,
         int[] preHoles, int[] preHeights, int moveCount, int[][] scoreArray) {
+        if (BitBoard.fits(board.getWidth(), board.getHeight())) {
+            return this.tryAllColumns(new MoveSimulator(new BitBoard(board),
+                preHoles, preHeights), PieceShape.of(piece), heightLimit,
+                moveCount, scoreArray);
+        }
+        //a board too large to pack has each move placed on it, read, and
+        //taken back off
         int column = 0;
         int pieceWidth = piece.getWidth();
+        int oldHeight = board.getLargestHeight();
         while (column < board.getWidth() - pieceWidth + 1) {
-            int destRow = board.rowAfterDrop(piece, column);
-            int oldHeight = board.getLargestHeight();
-            board.place(piece, column, destRow);
+            board.place(piece, column, board.rowAfterDrop(piece, column));
             scoreArray[moveCount][1] = this.getNewHoleCount(board, preHoles,
                 column, pieceWidth);
             scoreArray[moveCount][2] = this.getOldHoleCount(preHoles, column,
@@ -459,4 +1585,221 @@ public class CleverBrain
         }
         return moveCount;
     }
+    /**
+     * This method records the scores of a given move for a given rotation in
+     * each column, using a MoveSimulator to work out what each move would do.
+     * Nothing is placed on any board, so the scores for different rotations
+     * can be found at the same time.
+     *
+     * @param simulator holds the pre-move state of the board
+     * @param shape is the shape of the piece in question
+     * @param heightLimit is the heightlimit of the board
+     * @param moveCount tracks the ordinal value of each move.
+     * @param scoreArray is a 2d array for recording the scores of each move
+     * @return moveCount is returned to bestMove for tabulating how many moves
+     * there were in each rotation.
+     */
+    public int tryAllColumns(MoveSimulator simulator, PieceShape shape,
+        int heightLimit, int moveCount, int[][] scoreArray) {
+        CandidateTable table = new CandidateTable();
+        int end = moveCount + simulator.getWidth() - shape.getWidth() + 1;
+        table.ensureCapacity(end);
+        this.tryColumns(new FeaturePass(simulator), shape, 0,
+            simulator.getWidth() - shape.getWidth() + 1, moveCount, table,
+            Integer.MAX_VALUE);
+        table.copyFeaturesTo(moveCount, end, scoreArray);
+        return end;
+    }
+    /**
+     * This method records the scores of a piece dropped in each column from
+     * firstColumn up to, but not including, endColumn.  Every feature of a
+     * move, the ranked ones and those of the pipeline, is read from one
+     * FeaturePass over the move.  It only reads the simulator and only
+     * writes the entries of the table for its own columns, so several calls
+     * with passes of their own can run at once.
+     *
+     * @param pass reads the pre-move state of the board
+     * @param shape is the shape of the piece in question
+     * @param firstColumn is the first column to try
+     * @param endColumn is one past the last column to try
+     * @param moveCount is the ordinal value of the move in firstColumn
+     * @param table is the table for recording the features of each move
+     * @param killLimit is the max height below which the row kill count is
+     * recorded. Moves that reach it are scored by their height alone, so
+     * their row kill count is left at 0
+     * @return the ordinal value of the move after the last one recorded
+     */
+    private int tryColumns(FeaturePass pass, PieceShape shape,
+        int firstColumn, int endColumn, int moveCount, CandidateTable table,
+        int killLimit) {
+        int column = firstColumn;
+        int pieceWidth = shape.getWidth();
+        MoveSimulator simulator = pass.getSimulator();
+        FeaturePipeline features = pipeline;
+        int needs = MoveFeature.COLUMNS
+            | ((killLimit > 0) ? MoveFeature.ROWS : 0)
+            | ((features != null) ? features.getNeeds() : 0);
+        while (column < endColumn) {
+            pass.extract(shape, column, needs);
+            int newHeight = pass.getMaxHeight();
+            table.set(moveCount, pass.getNewHoles(), pass.getOldHoles(),
+                simulator.getCaveLevel(pass.getNewHeight(0),
+                    pass.getNewHeight(pieceWidth - 1), column, pieceWidth),
+                simulator.getPreMaxHeight() - newHeight, newHeight);
+            table.setRowKills(moveCount,
+                (newHeight < killLimit) ? pass.getFullRows() : 0);
+            table.setExtra(moveCount,
+                (features != null) ? features.evaluate(pass) : 0);
+            column++;
+            moveCount++;
+        }
+        return moveCount;
+    }
+    // -------------------------------------------------------------------------
+    /**
+     *  This task scores every rotation of a piece in parallel by starting one
+     *  ColumnsTask per rotation.
+     */
+    private class RotationsTask
+        extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private final MoveSimulator simulator;
+        private final PieceShape[] shapes;
+        private final int[] rotationHolder;
+        private final CandidateTable table;
+        private final int killLimit;
+        /**
+         * This constructor records the work to be split up.
+         *
+         * @param simulator holds the pre-move state of the board
+         * @param shapes holds the shape of each rotation
+         * @param rotationHolder holds the number of columns in each rotation
+         * @param table is the table the features are recorded in
+         * @param killLimit is the max height below which row kills are
+         * counted
+         */
+        RotationsTask(MoveSimulator simulator, PieceShape[] shapes,
+            int[] rotationHolder, CandidateTable table, int killLimit) {
+            this.simulator = simulator;
+            this.shapes = shapes;
+            this.rotationHolder = rotationHolder;
+            this.table = table;
+            this.killLimit = killLimit;
+        }
+        /**
+         * This method starts one task for each rotation and waits for them.
+         */
+        protected void compute() {
+            ColumnsTask[] tasks = new ColumnsTask[shapes.length];
+            int moveCount = 0;
+            for (int i = 0; i < shapes.length; i++) {
+                tasks[i] = new ColumnsTask(simulator, shapes[i], 0,
+                    rotationHolder[i], moveCount, table, killLimit);
+                moveCount += rotationHolder[i];
+            }
+            invokeAll(tasks);
+        }
+    }
+    // -------------------------------------------------------------------------
+    /**
+     *  This task scores a range of columns for one rotation, splitting the
+     *  range in half until it is no more than COLUMNS_PER_TASK wide.
+     */
+    private class ColumnsTask
+        extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private final MoveSimulator simulator;
+        private final PieceShape shape;
+        private final int firstColumn;
+        private final int endColumn;
+        private final int moveCount;
+        private final CandidateTable table;
+        private final int killLimit;
+        /**
+         * This constructor records the range of columns to try.
+         *
+         * @param simulator holds the pre-move state of the board
+         * @param shape is the shape of the piece in question
+         * @param firstColumn is the first column to try
+         * @param endColumn is one past the last column to try
+         * @param moveCount is the ordinal value of the move in firstColumn
+         * @param table is the table the features are recorded in
+         * @param killLimit is the max height below which row kills are
+         * counted
+         */
+        ColumnsTask(MoveSimulator simulator, PieceShape shape,
+            int firstColumn, int endColumn, int moveCount,
+            CandidateTable table, int killLimit) {
+            this.simulator = simulator;
+            this.shape = shape;
+            this.firstColumn = firstColumn;
+            this.endColumn = endColumn;
+            this.moveCount = moveCount;
+            this.table = table;
+            this.killLimit = killLimit;
+        }
+        /**
+         * This method tries the columns itself if there are few enough of
+         * them, and otherwise splits them between two new tasks.
+         */
+        protected void compute() {
+            if (endColumn - firstColumn <= COLUMNS_PER_TASK) {
+                tryColumns(new FeaturePass(simulator), shape, firstColumn,
+                    endColumn, moveCount, table, killLimit);
+            }
+            else {
+                int middle = (firstColumn + endColumn) / 2;
+                invokeAll(
+                    new ColumnsTask(simulator, shape, firstColumn, middle,
+                        moveCount, table, killLimit),
+                    new ColumnsTask(simulator, shape, middle, endColumn,
+                        moveCount + middle - firstColumn, table,
+                        killLimit));
+            }
+        }
+    }
+    // -------------------------------------------------------------------------
+    /**
+     *  This task decides a range of the positions of a batch, splitting the
+     *  range in half until it is no more than POSITIONS_PER_TASK long.
+     */
+    private class BatchTask
+        extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private final BoardBatch batch;
+        private final Move[] moves;
+        private final int from;
+        private final int to;
+        /**
+         * This constructor records the range of positions to decide.
+         *
+         * @param batch holds the positions
+         * @param moves receives the move for each position
+         * @param from is the first position to decide
+         * @param to is one past the last position to decide
+         */
+        BatchTask(BoardBatch batch, Move[] moves, int from, int to) {
+            this.batch = batch;
+            this.moves = moves;
+            this.from = from;
+            this.to = to;
+        }
+        /**
+         * This method decides the positions itself if there are few enough
+         * of them, and otherwise splits them between two new tasks.
+         */
+        protected void compute() {
+            if (to - from <= POSITIONS_PER_TASK) {
+                decideRange(batch, moves, from, to);
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BatchTask(batch, moves, from, middle),
+                    new BatchTask(batch, moves, middle, to));
+            }
+        }
+    }
 }
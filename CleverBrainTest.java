@@ -1,5 +1,6 @@
 import static org.junit.Assert.*;
 import cs5044.tetris.*;
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
 // -------------------------------------------------------------------------
 /**
@@ -231,6 +232,33 @@ public class CleverBrainTest
         assertTrue(Arrays.equals(testArray[4], test2));
         assertTrue(Arrays.equals(testArray[0], test3));
     }
+    /**
+     * This test ensures that ranking a large number of moves, including
+     * negative scores and many ties, gives each move the number of moves
+     * with a strictly better score as its rank.
+     */
+    public void testRankScoresManyMoves() {
+        java.util.Random random = new java.util.Random(5044);
+        int[][] testArray = new int[400][11];
+        for (int j = 0; j < testArray.length; j++) {
+            for (int i = 1; i < 5; i++) {
+                testArray[j][i] = random.nextInt(21) - 10;
+            }
+        }
+        cleverBrain.rankScores(testArray);
+        for (int j = 0; j < testArray.length; j++) {
+            for (int i = 1; i < 5; i++) {
+                int better = 0;
+                for (int k = 0; k < testArray.length; k++) {
+                    if ((i != 4 && testArray[k][i] < testArray[j][i])
+                        || (i == 4 && testArray[k][i] > testArray[j][i])) {
+                        better++;
+                    }
+                }
+                assertEquals(testArray[j][i + 5], better);
+            }
+        }
+    }
     /**
      * This test ensures that the correct moveNumber is recored by
      *tryAllColumns.
@@ -250,6 +278,31 @@ public class CleverBrainTest
             preHeights, 0, scoreArray);
         assertEquals(testAnswer, 5);
     }
+    /**
+     * This test ensures that the simulated scores match the ones read off a
+     * board with the piece placed on it, and that the board is not changed.
+     */
+    public void testTryAllColumnsSimulated() {
+        start1 = new Board(10, 24,
+            "    #     ",
+            "#### #####"
+        );
+        int[] preHoles = cleverBrain.getPreMoveHoles(start1);
+        int[] preHeights = cleverBrain.getPreMoveHeights(start1);
+        int[][] scoreArray = new int[20][11];
+        Piece piece = Piece.getPiece(Piece.STICK, 1);
+        cleverBrain.tryAllColumns(start1, piece, 24, preHoles, preHeights, 0,
+            scoreArray);
+        start1.place(piece, 1, 2);
+        assertEquals(scoreArray[1][1],
+            cleverBrain.getNewHoleCount(start1, preHoles, 1, 4));
+        assertEquals(scoreArray[1][3], cleverBrain.getCaveLevel(start1, 1, 4));
+        assertEquals(scoreArray[1][5], cleverBrain.getMaxHeight(start1));
+        assertEquals(scoreArray[1][10], cleverBrain.getRowKillCount(start1));
+        start1.undo();
+        assertTrue(Arrays.equals(preHeights,
+            cleverBrain.getPreMoveHeights(start1)));
+    }
     /**
      * This test ensures that the best move is found in a very basic situation.
      */
@@ -285,6 +338,305 @@ public class CleverBrainTest
         assertEquals(move.x(), 3);
         assertEquals(move.y(), 1);
     }
+    /**
+     * This test ensures that trying the candidates in parallel picks the
+     * same move as trying them one after another on a wide board.
+     */
+    public void testBestMoveParallel() {
+        start1 = new Board(48, 24,
+            "  ##  #### ######     #####  ### ###  # ####    ",
+            "######## ############## ######## ###### ########",
+            "#### ###############  ############ ##############"
+        );
+        CleverBrain parallel = new CleverBrain();
+        parallel.setParallelThreshold(1);
+        cleverBrain.setParallelThreshold(Integer.MAX_VALUE);
+        Piece thePiece = Piece.getPiece(Piece.T, 0);
+        for (int i = 0; i < thePiece.numRotations(); i++) {
+            Move expected = new Move();
+            Move move = new Move();
+            cleverBrain.bestMove(start1, thePiece, 24, expected);
+            parallel.bestMove(start1, thePiece, 24, move);
+            assertEquals(move.piece(), expected.piece());
+            assertEquals(move.x(), expected.x());
+            assertEquals(move.y(), expected.y());
+            thePiece = thePiece.nextRotation();
+        }
+    }
+    /**
+     * This test ensures that once the scratch arrays have been sized, calls
+     * to bestMove do not allocate anything.  The cache is turned off, since
+     * otherwise every measured call would be answered from it without
+     * scoring anything.  The test is skipped on JVMs that cannot report the
+     * bytes allocated by a thread.
+     */
+    public void testBestMoveAllocation() {
+        if (!(ManagementFactory.getThreadMXBean()
+            instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        cleverBrain.setCache(null);
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        start1 = new Board(10, 24,
+            "  ##      ",
+            "######## #",
+            "#### #####"
+        );
+        Piece[] pieces = new Piece[7];
+        pieces[0] = Piece.getPiece(Piece.STICK, 0);
+        pieces[1] = Piece.getPiece(Piece.LEFT_L, 0);
+        pieces[2] = Piece.getPiece(Piece.RIGHT_L, 0);
+        pieces[3] = Piece.getPiece(Piece.LEFT_DOG, 0);
+        pieces[4] = Piece.getPiece(Piece.RIGHT_DOG, 0);
+        pieces[5] = Piece.getPiece(Piece.SQUARE, 0);
+        pieces[6] = Piece.getPiece(Piece.T, 0);
+        Move move = new Move();
+        for (int i = 0; i < 20000; i++) {
+            cleverBrain.bestMove(start1, pieces[i % 7], 20, move);
+        }
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 1000; i++) {
+            cleverBrain.bestMove(start1, pieces[i % 7], 20, move);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        //leave a little room for the allocation counter itself
+        assertTrue("bestMove allocated " + allocated + " bytes",
+            allocated < 1024);
+    }
+    /**
+     * This test ensures that a lookahead search that may only follow up one
+     * move, or that has no time to follow up any, makes the same move as the
+     * search without lookahead, and that a full lookahead search still
+     * makes a legal move.
+     */
+    public void testBestMoveLookahead() {
+        start1 = new Board(10, 24,
+            "          ",
+            "#   ####  ",
+            "## #######"
+        );
+        Piece thePiece = Piece.getPiece(Piece.LEFT_L, 0);
+        Move expected = new Move();
+        cleverBrain.bestMove(start1, thePiece, 20, expected);
+        CleverBrain lookahead = new CleverBrain();
+        lookahead.setLookahead(true);
+        lookahead.setBeamWidth(1);
+        Move move = new Move();
+        lookahead.bestMove(start1, thePiece, 20, move);
+        assertEquals(move.x(), expected.x());
+        assertEquals(move.y(), expected.y());
+        lookahead.setBeamWidth(CleverBrain.DEFAULT_BEAM_WIDTH);
+        lookahead.setLookaheadBudget(0);
+        lookahead.bestMove(start1, thePiece, 20, move);
+        assertEquals(move.x(), expected.x());
+        assertEquals(move.y(), expected.y());
+        lookahead.setLookaheadBudget(Long.MAX_VALUE);
+        lookahead.setNextPiece(Piece.getPiece(Piece.STICK, 0));
+        lookahead.bestMove(start1, thePiece, 20, move);
+        assertEquals(move.y(), start1.rowAfterDrop(move.piece(), move.x()));
+        lookahead.setNextPiece(null);
+        lookahead.bestMove(start1, thePiece, 20, move);
+        assertEquals(move.y(), start1.rowAfterDrop(move.piece(), move.x()));
+    }
+    /**
+     * This test ensures that the next piece only applies to the call of
+     * bestMove after it is set.
+     */
+    public void testNextPieceForgotten() {
+        start1 = new Board(10, 24,
+            "    #     ",
+            "## #######"
+        );
+        Piece stick = Piece.getPiece(Piece.STICK, 0);
+        CleverBrain unknown = new CleverBrain();
+        unknown.setLookahead(true);
+        unknown.setLookaheadBudget(Long.MAX_VALUE);
+        Move expected = new Move();
+        unknown.bestMove(start1, stick, 20, expected);
+        CleverBrain known = new CleverBrain();
+        known.setLookahead(true);
+        known.setLookaheadBudget(Long.MAX_VALUE);
+        known.setNextPiece(Piece.getPiece(Piece.LEFT_L, 0));
+        Move move = new Move();
+        known.bestMove(start1, stick, 20, move);
+        assertFalse(move.x() == expected.x());
+        known.bestMove(start1, stick, 20, move);
+        assertEquals(move.x(), expected.x());
+        assertEquals(move.y(), expected.y());
+    }
+    /**
+     * This test ensures that a deeper search finishes every level when it
+     * has the time, that a decision with no time left still makes the
+     * greedy move, and that the decisions that run out of time are counted.
+     */
+    public void testBestMoveAnytime() {
+        start1 = new Board(10, 24,
+            "          ",
+            "#   ####  ",
+            "## #######"
+        );
+        Piece thePiece = Piece.getPiece(Piece.LEFT_L, 0);
+        Move expected = new Move();
+        cleverBrain.bestMove(start1, thePiece, 20, expected);
+        CleverBrain anytime = new CleverBrain();
+        anytime.setLookahead(true);
+        anytime.setLookaheadBudget(Long.MAX_VALUE);
+        anytime.setBeamWidth(2);
+        anytime.setSearchDepth(3);
+        assertEquals(anytime.getSearchDepth(), 3);
+        Move move = new Move();
+        anytime.bestMove(start1, thePiece, 20, move);
+        assertEquals(move.y(), start1.rowAfterDrop(move.piece(), move.x()));
+        assertEquals(anytime.getDepthCount(3), 1);
+        assertEquals(anytime.getBudgetHits(), 0);
+        anytime.setDecisionBudget(0);
+        assertEquals(anytime.getDecisionBudget(), 0);
+        anytime.bestMove(start1, thePiece, 20, move);
+        assertEquals(move.x(), expected.x());
+        assertEquals(move.y(), expected.y());
+        assertEquals(anytime.getDepthCount(1), 1);
+        assertEquals(anytime.getBudgetHits(), 1);
+        //without lookahead, the greedy answer is still given, and the time
+        //it took beyond the budget is counted
+        anytime.setLookahead(false);
+        anytime.setCache(null);
+        anytime.bestMove(start1, thePiece, 20, move);
+        assertEquals(move.x(), expected.x());
+        assertEquals(anytime.getDepthCount(1), 2);
+        assertEquals(anytime.getBudgetHits(), 2);
+        try {
+            anytime.setSearchDepth(CleverBrain.MAX_SEARCH_DEPTH + 1);
+            fail("A search deeper than the most allowed was accepted");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals(anytime.getSearchDepth(), 3);
+        }
+    }
+    /**
+     * This test ensures that a board seen a second time is answered from
+     * the cache with the same move, and that a brain without a cache makes
+     * the same move too.
+     */
+    public void testBestMoveCache() {
+        start1 = new Board(10, 24,
+            "   #      ",
+            "## ### ###"
+        );
+        Piece thePiece = Piece.getPiece(Piece.T, 0);
+        Move first = new Move();
+        cleverBrain.bestMove(start1, thePiece, 20, first);
+        assertEquals(cleverBrain.getCache().getHits(), 0);
+        Move second = new Move();
+        cleverBrain.bestMove(start1, thePiece, 20, second);
+        //the move and its score are both found
+        assertEquals(cleverBrain.getCache().getHits(), 2);
+        assertEquals(second.piece(), first.piece());
+        assertEquals(second.x(), first.x());
+        assertEquals(second.y(), first.y());
+        assertEquals(second.score(), first.score(), 0.0);
+        CleverBrain uncached = new CleverBrain();
+        uncached.setCache(null);
+        Move third = new Move();
+        uncached.bestMove(start1, thePiece, 20, third);
+        assertEquals(third.piece(), first.piece());
+        assertEquals(third.x(), first.x());
+        assertEquals(third.y(), first.y());
+        assertEquals(third.score(), first.score(), 0.0);
+    }
+    /**
+     * This test ensures that the brain counts every move it scores.
+     */
+    public void testCandidateCount() {
+        cleverBrain.setCache(null);
+        Piece thePiece = Piece.getPiece(Piece.T, 0);
+        int expected = 0;
+        for (int i = 0; i < thePiece.numRotations(); i++) {
+            expected += start1.getWidth() - thePiece.getWidth() + 1;
+            thePiece = thePiece.nextRotation();
+        }
+        cleverBrain.bestMove(start1, thePiece, 20, new Move());
+        assertEquals(cleverBrain.getCandidateCount(), expected);
+        cleverBrain.bestMove(start1, thePiece, 20, new Move());
+        assertEquals(cleverBrain.getCandidateCount(), 2 * expected);
+    }
+    /**
+     * This test ensures that finding moves for a batch of positions, on the
+     * calling thread or split between the threads of a pool, makes the same
+     * moves as calling bestMove for each position.
+     */
+    public void testBestMoves() {
+        java.util.Random random = new java.util.Random(5044);
+        int size = 300;
+        Board[] boards = new Board[size];
+        Piece[] pieces = new Piece[size];
+        int[] heightLimits = new int[size];
+        Move[] expected = new Move[size];
+        for (int n = 0; n < size; n++) {
+            String[] rows = new String[1 + random.nextInt(12)];
+            for (int j = 0; j < rows.length; j++) {
+                char[] row = new char[10];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = (random.nextInt(10) < 6) ? '#' : ' ';
+                }
+                rows[j] = new String(row);
+            }
+            boards[n] = new Board(10, 24, rows);
+            pieces[n] = Piece.getPiece(random.nextInt(7), 0);
+            heightLimits[n] = 20;
+            expected[n] = new Move();
+            cleverBrain.bestMove(boards[n], pieces[n], 20, expected[n]);
+        }
+        BoardBatch batch = new BoardBatch(boards, pieces, heightLimits);
+        CleverBrain batched = new CleverBrain();
+        Move[] moves = new Move[size];
+        Move[] pooled = new Move[size];
+        for (int n = 0; n < size; n++) {
+            moves[n] = new Move();
+            pooled[n] = new Move();
+        }
+        batched.bestMoves(batch, moves);
+        java.util.concurrent.ForkJoinPool workers =
+            new java.util.concurrent.ForkJoinPool(4);
+        try {
+            new CleverBrain().bestMoves(batch, pooled, workers);
+        }
+        finally {
+            workers.shutdown();
+        }
+        for (int n = 0; n < size; n++) {
+            assertEquals(moves[n].piece(), expected[n].piece());
+            assertEquals(moves[n].x(), expected[n].x());
+            assertEquals(moves[n].y(), expected[n].y());
+            assertEquals(pooled[n].piece(), expected[n].piece());
+            assertEquals(pooled[n].x(), expected[n].x());
+            assertEquals(pooled[n].y(), expected[n].y());
+        }
+    }
+    /**
+     * This test ensures that a full cache evicts entries to make room and
+     * counts what it does.
+     */
+    public void testEvaluationCache() {
+        EvaluationCache cache = new EvaluationCache(4);
+        assertEquals(cache.getCapacity(), 4);
+        //nothing has been stored yet, so nothing is found
+        assertEquals(cache.get(2L << 32), EvaluationCache.MISSING);
+        cache.clear();
+        for (long i = 0; i < 4; i++) {
+            cache.put(i << 32, i);
+        }
+        assertEquals(cache.get(2L << 32), 2);
+        cache.put(9L << 32, 9);
+        assertEquals(cache.getEvictions(), 1);
+        assertEquals(cache.getSize(), 4);
+        assertEquals(cache.get(9L << 32), 9);
+        assertEquals(cache.get(5L << 32), EvaluationCache.MISSING);
+        assertEquals(cache.getMisses(), 1);
+        cache.putScore(7L << 32, -0.0);
+        assertEquals(cache.getScore(7L << 32), 0.0, 0.0);
+    }
     /**
      * This contains the suggested test cases for board 1
      */
@@ -412,4 +764,71 @@ public class CleverBrainTest
         assertEquals(move.x(), 3);
         assertEquals(move.y(), 0);
     }
+    /**
+     * This test ensures that a brain handed a BitBoard makes the same move
+     * as one handed the same board as a Board, for every position of a
+     * game, and that LameBrain does as well.
+     */
+    public void testBitBoardBrain() {
+        HeadlessGame game = new HeadlessGame(new CleverBrain(), 10, 24, 11);
+        CleverBrain viaBoard = new CleverBrain();
+        CleverBrain viaBits = new CleverBrain();
+        LameBrain lame = new LameBrain();
+        Piece[] types = PieceShape.getPieceTypes();
+        Move boardMove = new Move();
+        Move bitsMove = new Move();
+        for (int n = 0; n < 60 && game.step(); n++) {
+            BitBoard bits = game.getBoard();
+            Board board = bits.toBoard();
+            long hash = bits.getHash();
+            Piece piece = types[n % types.length];
+            viaBoard.bestMove(board, piece, 20, boardMove);
+            viaBits.bestMove(bits, piece, 20, bitsMove);
+            assertEquals(bits.getHash(), hash);
+            assertEquals(bitsMove.piece(), boardMove.piece());
+            assertEquals(bitsMove.x(), boardMove.x());
+            assertEquals(bitsMove.y(), boardMove.y());
+            lame.bestMove(board, piece, 20, boardMove);
+            lame.bestMove(bits, piece, 20, bitsMove);
+            assertEquals(bitsMove.x(), boardMove.x());
+        }
+    }
+    /**
+     * This test ensures that a board too tall for a BitBoard gets the same
+     * move as a board of the usual size with the same blocks, for every
+     * position of a game, and is left as it was.
+     */
+    public void testTallBoard() {
+        HeadlessGame game = new HeadlessGame(new CleverBrain(), 10, 24, 5);
+        CleverBrain brain = new CleverBrain();
+        Piece[] types = PieceShape.getPieceTypes();
+        Move expected = new Move();
+        Move move = new Move();
+        for (int n = 0; n < 40 && game.step(); n++) {
+            BitBoard bits = game.getBoard();
+            String[] rows = new String[bits.getHeight()];
+            for (int j = 0; j < rows.length; j++) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 0; i < bits.getWidth(); i++) {
+                    row.append(bits.hasBlockAt(i, j) ? '#' : ' ');
+                }
+                //the rows are listed from the top of the board down
+                rows[rows.length - 1 - j] = row.toString();
+            }
+            Board tall = new Board(10, 100, rows);
+            Piece piece = types[n % types.length];
+            brain.bestMove(bits.toBoard(), piece, 20, expected);
+            brain.bestMove(tall, piece, 20, move);
+            assertEquals(move.piece(), expected.piece());
+            assertEquals(move.x(), expected.x());
+            assertEquals(move.y(), expected.y());
+            assertEquals(move.score(), expected.score(), 1e-9);
+            for (int j = 0; j < rows.length; j++) {
+                for (int i = 0; i < 10; i++) {
+                    assertEquals(tall.hasBlockAt(i, j), bits.hasBlockAt(i, j));
+                }
+            }
+        }
+        assertEquals(game.getPieces(), 40);
+    }
 }
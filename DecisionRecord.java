@@ -0,0 +1,270 @@
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class holds one decision of a brain, as GameRecorder writes it and
+ *  RecordingReader reads it back: the board and piece the brain was given,
+ *  the height limit, the move it made, the score it gave the move and how
+ *  long it took.  The board is kept as one row mask per row, with bit x set
+ *  when column x is filled.
+ *
+ *  RecordingReader fills in the same record for every decision it reads, so
+ *  a record from a reader is only good until the reader moves on.
+ *
+ *  @author stevr76
+ *  @version 2016.08.25
+ */
+public class DecisionRecord
+{
+    //Fields
+    private static final Piece[] PIECES = new Piece[28];
+    static {
+        for (int type = 0; type < 7; type++) {
+            Piece piece = Piece.getPiece(type, 0);
+            for (int r = 0; r < piece.numRotations(); r++) {
+                PIECES[type * 4 + r] = piece.nthRotation(r);
+            }
+        }
+    }
+    private int width;
+    private int height;
+    private int heightLimit;
+    private long[] rows = new long[0];
+    private int pieceCode;
+    private int movePieceCode;
+    private int x;
+    private int y;
+    private double score;
+    private long nanos;
+    /**
+     * This constructor makes an empty record, to be filled in by set() or a
+     * RecordingReader.
+     */
+    public DecisionRecord() {
+        //nothing to set up
+    }
+    /**
+     * This method fills in the record from a decision.
+     *
+     * @param board is the board the brain was given
+     * @param piece is the piece the brain was given
+     * @param limit is the height limit the brain was given
+     * @param move is the move the brain made
+     * @param decisionNanos is how long the brain took
+     */
+    public void set(Board board, Piece piece, int limit, Move move,
+        long decisionNanos) {
+        this.setSize(board.getWidth(), board.getHeight());
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < board.getColumnHeight(i); j++) {
+                if (board.hasBlockAt(i, j)) {
+                    rows[j] |= 1L << i;
+                }
+            }
+        }
+        heightLimit = limit;
+        pieceCode = DecisionRecord.codeOf(piece);
+        movePieceCode = DecisionRecord.codeOf(move.piece());
+        x = move.x();
+        y = move.y();
+        score = move.score();
+        nanos = decisionNanos;
+    }
+    /**
+     * This method sets the size of the board and empties it.
+     *
+     * @param boardWidth is the number of columns
+     * @param boardHeight is the number of rows
+     */
+    void setSize(int boardWidth, int boardHeight) {
+        if (boardWidth < 1 || boardWidth > BitBoard.MAX_SIZE
+            || boardHeight < 1 || boardHeight > BitBoard.MAX_SIZE) {
+            throw new IllegalArgumentException("A recorded board must be"
+                + " between 1 and " + BitBoard.MAX_SIZE + " cells on each"
+                + " side, not " + boardWidth + " by " + boardHeight);
+        }
+        width = boardWidth;
+        height = boardHeight;
+        if (rows.length < height) {
+            rows = new long[BitBoard.MAX_SIZE];
+        }
+        for (int j = 0; j < height; j++) {
+            rows[j] = 0;
+        }
+    }
+    /**
+     * This method sets the fields that are not part of the board.
+     *
+     * @param limit is the height limit
+     * @param piece is the code of the piece given
+     * @param movePiece is the code of the piece played
+     * @param moveX is the column of the move
+     * @param moveY is the row of the move
+     * @param moveScore is the score of the move
+     * @param decisionNanos is how long the decision took
+     */
+    void setDecision(int limit, int piece, int movePiece, int moveX,
+        int moveY, double moveScore, long decisionNanos) {
+        heightLimit = limit;
+        pieceCode = piece;
+        movePieceCode = movePiece;
+        x = moveX;
+        y = moveY;
+        score = moveScore;
+        nanos = decisionNanos;
+    }
+    /**
+     * This method returns the code a recording keeps a piece as: four times
+     * its type, plus the number of rotations it is from the first rotation
+     * of its type.
+     *
+     * @param piece is the piece
+     * @return its code, from 0 to 27
+     */
+    public static int codeOf(Piece piece) {
+        for (int i = 0; i < PIECES.length; i++) {
+            if (PIECES[i] == piece) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a standard piece: " + piece);
+    }
+    /**
+     * This method returns the piece with the given code.
+     *
+     * @param code is a code returned by codeOf()
+     * @return the piece
+     */
+    public static Piece pieceOf(int code) {
+        if (code < 0 || code >= PIECES.length || PIECES[code] == null) {
+            throw new IllegalArgumentException("Not a piece code: " + code);
+        }
+        return PIECES[code];
+    }
+    /**
+     * This method returns the row masks of the board.  The array may be
+     * longer than the board is tall, and must not be changed.
+     *
+     * @return one mask per row
+     */
+    long[] getRows() {
+        return rows;
+    }
+    /**
+     * This method returns the row mask of one row of the board.
+     *
+     * @param row is the row, counting from the bottom
+     * @return the mask, with bit x set when column x is filled
+     */
+    public long getRow(int row) {
+        return rows[row];
+    }
+    /**
+     * This method returns a new BitBoard with the blocks of the board.
+     *
+     * @return the board
+     */
+    public BitBoard toBitBoard() {
+        BitBoard board = new BitBoard(width, height);
+        board.load(rows, 0);
+        return board;
+    }
+    /**
+     * This method returns a new Board with the blocks of the board, for
+     * handing back to a brain.
+     *
+     * @return the board
+     */
+    public Board toBoard() {
+        return this.toBitBoard().toBoard();
+    }
+    /**
+     * This method returns the number of columns of the board.
+     *
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+    /**
+     * This method returns the number of rows of the board.
+     *
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+    /**
+     * This method returns the height limit the brain was given.
+     *
+     * @return the height limit
+     */
+    public int getHeightLimit() {
+        return heightLimit;
+    }
+    /**
+     * This method returns the code of the piece the brain was given.
+     *
+     * @return the piece code
+     */
+    int getPieceCode() {
+        return pieceCode;
+    }
+    /**
+     * This method returns the code of the piece the brain played.
+     *
+     * @return the piece code
+     */
+    int getMovePieceCode() {
+        return movePieceCode;
+    }
+    /**
+     * This method returns the piece the brain was given.
+     *
+     * @return the piece
+     */
+    public Piece getPiece() {
+        return PIECES[pieceCode];
+    }
+    /**
+     * This method returns the piece the brain played, in the rotation it
+     * chose.
+     *
+     * @return the piece
+     */
+    public Piece getMovePiece() {
+        return PIECES[movePieceCode];
+    }
+    /**
+     * This method returns the column of the left side of the move.
+     *
+     * @return the column
+     */
+    public int getX() {
+        return x;
+    }
+    /**
+     * This method returns the row the bottom of the move landed on.
+     *
+     * @return the row
+     */
+    public int getY() {
+        return y;
+    }
+    /**
+     * This method returns the score the brain gave the move.
+     *
+     * @return the score, or NaN if the brain did not score it
+     */
+    public double getScore() {
+        return score;
+    }
+    /**
+     * This method returns how long the brain took to decide.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+}
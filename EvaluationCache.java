@@ -0,0 +1,250 @@
+import java.util.Arrays;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class is a fixed-size cache of brain results, keyed by 64-bit
+ *  numbers made from the Zobrist hash of a board and a description of the
+ *  question asked about it.  It lets CleverBrain skip scoring a board it has
+ *  already scored, which happens all the time with the low, flat stacks of a
+ *  long game.
+ *
+ *  The entries are kept in buckets of four.  A key can only live in the
+ *  bucket its bits pick, and when that bucket is full one of its entries is
+ *  evicted by the CLOCK rule: each entry has a reference bit that is set
+ *  when it is used, and the bucket's hand passes over (and clears) set bits
+ *  until it finds an entry that has not been used since the last pass.  All
+ *  of the storage is allocated by the first store, so a cache that is
+ *  made and never used costs next to nothing, and after that lookups and
+ *  stores allocate nothing.
+ *
+ *  Values are longs.  Long.MIN_VALUE is used to mean "not found", so it
+ *  cannot be stored; scores stored with putScore() have -0.0 turned into
+ *  0.0 so that their bits never match it.
+ *
+ *  @author stevr76
+ *  @version 2016.08.16
+ */
+public class EvaluationCache
+{
+    //Fields
+    /**
+     * The value get() returns when the key is not in the cache.
+     */
+    public static final long MISSING = Long.MIN_VALUE;
+    /**
+     * The number of entries a cache holds unless another size is given.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final int WAYS = 4;
+    //the entries, which stay null until the first store
+    private long[] keys;
+    private long[] values;
+    private boolean[] used;
+    private boolean[] referenced;
+    private int[] hands;
+    private final int bucketMask;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private int size;
+    /**
+     * This constructor makes a cache that holds DEFAULT_CAPACITY entries.
+     */
+    public EvaluationCache() {
+        this(DEFAULT_CAPACITY);
+    }
+    /**
+     * This constructor makes a cache that holds at least the given number
+     * of entries.  The number is rounded up to a power of two, and is never
+     * less than four.
+     *
+     * @param capacity is the smallest number of entries to hold
+     */
+    public EvaluationCache(int capacity) {
+        int buckets = 1;
+        while (buckets * WAYS < capacity) {
+            buckets *= 2;
+        }
+        bucketMask = buckets - 1;
+    }
+    /**
+     * This method mixes the bits of a number so that every input bit affects
+     * every output bit.  It is used to combine a board hash with the other
+     * parts of a key.
+     *
+     * @param value is the number to mix
+     * @return the mixed number
+     */
+    public static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+    /**
+     * This method returns the value stored for the given key, and marks the
+     * entry as recently used.
+     *
+     * @param key is the key to look up
+     * @return the stored value, or MISSING if there is none
+     */
+    public synchronized long get(long key) {
+        if (keys == null) {
+            misses++;
+            return MISSING;
+        }
+        int first = this.bucketOf(key) * WAYS;
+        for (int i = first; i < first + WAYS; i++) {
+            if (used[i] && keys[i] == key) {
+                referenced[i] = true;
+                hits++;
+                return values[i];
+            }
+        }
+        misses++;
+        return MISSING;
+    }
+    /**
+     * This method returns the score stored for the given key.
+     *
+     * @param key is the key to look up
+     * @return the stored score, or NaN if there is none
+     */
+    public double getScore(long key) {
+        long bits = this.get(key);
+        return (bits == MISSING) ? Double.NaN : Double.longBitsToDouble(bits);
+    }
+    /**
+     * This method stores a value for the given key, replacing any value it
+     * already has.  If the key's bucket is full, an entry is evicted.
+     *
+     * @param key is the key to store the value under
+     * @param value is the value to store; it must not be MISSING
+     */
+    public synchronized void put(long key, long value) {
+        if (keys == null) {
+            int entries = this.getCapacity();
+            keys = new long[entries];
+            values = new long[entries];
+            used = new boolean[entries];
+            referenced = new boolean[entries];
+            hands = new int[entries / WAYS];
+        }
+        int bucket = this.bucketOf(key);
+        int first = bucket * WAYS;
+        int free = -1;
+        for (int i = first; i < first + WAYS; i++) {
+            if (used[i] && keys[i] == key) {
+                values[i] = value;
+                referenced[i] = true;
+                return;
+            }
+            if (!used[i] && free < 0) {
+                free = i;
+            }
+        }
+        if (free < 0) {
+            //sweep the hand around the bucket, giving each entry that has
+            //been used since the last sweep another chance
+            while (referenced[first + hands[bucket]]) {
+                referenced[first + hands[bucket]] = false;
+                hands[bucket] = (hands[bucket] + 1) % WAYS;
+            }
+            free = first + hands[bucket];
+            hands[bucket] = (hands[bucket] + 1) % WAYS;
+            evictions++;
+        }
+        else {
+            size++;
+        }
+        used[free] = true;
+        keys[free] = key;
+        values[free] = value;
+        referenced[free] = true;
+    }
+    /**
+     * This method stores a score for the given key.
+     *
+     * @param key is the key to store the score under
+     * @param score is the score to store
+     */
+    public void putScore(long key, double score) {
+        //adding 0.0 turns -0.0, whose bits are MISSING, into 0.0
+        this.put(key, Double.doubleToLongBits(score + 0.0));
+    }
+    /**
+     * This method removes every entry and resets the counters.
+     */
+    public synchronized void clear() {
+        if (keys != null) {
+            Arrays.fill(used, false);
+            Arrays.fill(referenced, false);
+            Arrays.fill(hands, 0);
+        }
+        size = 0;
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+    /**
+     * This method returns the number of lookups that found their key.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+    /**
+     * This method returns the number of lookups that did not find their key.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+    /**
+     * This method returns the number of entries that have been evicted to
+     * make room for new ones.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+    /**
+     * This method returns the number of entries in the cache.
+     *
+     * @return the size of the cache
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+    /**
+     * This method returns the most entries the cache can hold.
+     *
+     * @return the capacity of the cache
+     */
+    public int getCapacity() {
+        return (bucketMask + 1) * WAYS;
+    }
+    /**
+     * This method returns a summary of the cache's counters.
+     *
+     * @return the counters as text
+     */
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return "EvaluationCache[size=" + size + "/" + this.getCapacity()
+            + ", hits=" + hits + ", misses=" + misses + ", evictions="
+            + evictions + ", hit rate="
+            + ((lookups == 0) ? 0 : (100 * hits / lookups)) + "%]";
+    }
+    /**
+     * This method returns the bucket the given key belongs in.
+     *
+     * @param key is the key in question
+     * @return the bucket number
+     */
+    private int bucketOf(long key) {
+        return (int)(key ^ (key >>> 32)) & bucketMask;
+    }
+}
@@ -0,0 +1,205 @@
+// -------------------------------------------------------------------------
+/**
+ *  This class works out the parts of a candidate move that MoveFeatures
+ *  read, in one pass over the columns and rows the piece lands in.  It
+ *  reads the pre-move state from a MoveSimulator, so nothing is placed on
+ *  any board and the rest of the board is not looked at, except for the
+ *  SURFACE part, which copies the pre-move height of every column.
+ *
+ *  extract() only works out the parts it is asked for.  The landing row and
+ *  the max height of the stack are always worked out.
+ *
+ *  One pass is used by one thread at a time; threads trying moves at once
+ *  each need a pass of their own, though they may share the simulator.
+ *
+ *  @author stevr76
+ *  @version 2016.08.28
+ */
+public class FeaturePass
+{
+    //Fields
+    //no piece is wider or taller than this
+    private static final int MAX_PIECE_SIZE = 4;
+    private final MoveSimulator simulator;
+    private final int[] newHeights = new int[MAX_PIECE_SIZE];
+    private final long[] rowMasks = new long[MAX_PIECE_SIZE];
+    private int[] surface = new int[0];
+    private PieceShape shape;
+    private int column;
+    private int row;
+    private int maxHeight;
+    private int newHoles;
+    private int oldHoles;
+    private int rowCount;
+    private int fullRows;
+    /**
+     * This constructor makes a pass that reads the board the given
+     * simulator is loaded with.
+     *
+     * @param simulator holds the pre-move state of the board
+     */
+    public FeaturePass(MoveSimulator simulator) {
+        this.simulator = simulator;
+    }
+    /**
+     * This method works out the given parts of a move.
+     *
+     * @param piece is the shape of the piece
+     * @param left is the column of the left side of the piece
+     * @param needs are the MoveFeature parts to work out, or'ed together
+     */
+    public void extract(PieceShape piece, int left, int needs) {
+        shape = piece;
+        column = left;
+        int pieceWidth = piece.getWidth();
+        int[] preHeights = simulator.getPreHeights();
+        int landing = piece.getLandingRow(preHeights, left);
+        row = landing;
+        maxHeight = Math.max(simulator.getPreMaxHeight(),
+            landing + piece.getHeight());
+        if ((needs & MoveFeature.COLUMNS) != 0) {
+            int[] preHoles = simulator.getPreHoles();
+            int made = 0;
+            int covered = 0;
+            for (int i = 0; i < pieceWidth; i++) {
+                made += landing + piece.getSkirt(i) - preHeights[left + i]
+                    + piece.getGaps(i);
+                covered += preHoles[left + i];
+                newHeights[i] = landing + piece.getTop(i);
+            }
+            newHoles = made;
+            oldHoles = covered;
+        }
+        if ((needs & MoveFeature.ROWS) != 0) {
+            BitBoard board = simulator.getBoard();
+            int top = Math.min(landing + piece.getHeight(), board.getHeight());
+            int full = simulator.getPreFullRows();
+            for (int j = landing; j < top; j++) {
+                long mask = board.getRow(j)
+                    | (piece.getRowMask(j - landing) << left);
+                rowMasks[j - landing] = mask;
+                if (!board.isRowFull(j) && mask == board.getFullRow()) {
+                    full++;
+                }
+            }
+            rowCount = Math.max(0, top - landing);
+            fullRows = full;
+        }
+        if ((needs & MoveFeature.SURFACE) != 0) {
+            if (surface.length != preHeights.length) {
+                surface = new int[preHeights.length];
+            }
+            System.arraycopy(preHeights, 0, surface, 0, preHeights.length);
+            for (int i = 0; i < pieceWidth; i++) {
+                surface[left + i] = landing + piece.getTop(i);
+            }
+        }
+    }
+    /**
+     * This method returns the simulator the pass reads the board from.
+     *
+     * @return the simulator
+     */
+    public MoveSimulator getSimulator() {
+        return simulator;
+    }
+    /**
+     * This method returns the shape of the piece of the last move.
+     *
+     * @return the shape
+     */
+    public PieceShape getShape() {
+        return shape;
+    }
+    /**
+     * This method returns the column of the left side of the piece.
+     *
+     * @return the column
+     */
+    public int getColumn() {
+        return column;
+    }
+    /**
+     * This method returns the row the bottom of the piece lands on.
+     *
+     * @return the landing row
+     */
+    public int getRow() {
+        return row;
+    }
+    /**
+     * This method returns the height of the tallest column after the move,
+     * before any rows are cleared.
+     *
+     * @return the max height
+     */
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+    /**
+     * This method returns the height one of the piece's columns has after
+     * the move.  It needs the COLUMNS part.
+     *
+     * @param pieceColumn is the column of the piece, counted from its left
+     * @return the new height of that board column
+     */
+    public int getNewHeight(int pieceColumn) {
+        return newHeights[pieceColumn];
+    }
+    /**
+     * This method returns the number of holes the move makes under the
+     * piece and inside it.  It needs the COLUMNS part.
+     *
+     * @return the number of new holes
+     */
+    public int getNewHoles() {
+        return newHoles;
+    }
+    /**
+     * This method returns the number of holes already in the columns the
+     * piece covers.  It needs the COLUMNS part.
+     *
+     * @return the number of old holes
+     */
+    public int getOldHoles() {
+        return oldHoles;
+    }
+    /**
+     * This method returns the number of rows the piece lands in that are on
+     * the board.  It needs the ROWS part.
+     *
+     * @return the number of rows
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+    /**
+     * This method returns one of the rows the piece lands in, as it looks
+     * after the move.  It needs the ROWS part.
+     *
+     * @param pieceRow is the row of the piece, counted from its bottom
+     * @return the cells of the row, one bit per column
+     */
+    public long getRowMask(int pieceRow) {
+        return rowMasks[pieceRow];
+    }
+    /**
+     * This method returns the number of full rows after the move, counting
+     * rows that were full before it.  It needs the ROWS part.
+     *
+     * @return the number of rows the move clears
+     */
+    public int getFullRows() {
+        return fullRows;
+    }
+    /**
+     * This method returns the height of every column after the move, before
+     * any rows are cleared.  It needs the SURFACE part.  The array must not
+     * be changed.
+     *
+     * @return one entry per column
+     */
+    public int[] getSurface() {
+        return surface;
+    }
+}
@@ -0,0 +1,450 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class holds a list of MoveFeatures, each with a weight, that
+ *  CleverBrain adds to the score of every move on top of its ranked
+ *  features.  A feature's weighted value counts for the move as it is, the
+ *  way the row kill count does, rather than being ranked against the other
+ *  moves.  Lower scores are better, so a feature that should be avoided
+ *  gets a positive weight.
+ *
+ *  The parts of a move every feature needs are worked out once, by one
+ *  FeaturePass over the columns and rows the piece lands in, and then each
+ *  feature reads what it needs from the pass.  Adding a feature therefore
+ *  adds no scan of the board, only the work of the feature itself, and
+ *  that of any part no other feature needed.
+ *
+ *  When the pipeline is timed, the time each feature takes is added up, so
+ *  that its cost can be read with getNanos() or report().  Timing costs two
+ *  calls to System.nanoTime() per feature per move, so it is off to begin
+ *  with.
+ *
+ *  A pipeline is sealed once it is given to a brain, and add() then throws
+ *  an IllegalStateException: the brain keeps its decisions apart from those
+ *  of other pipelines by a key made when it is given, and scores moves on
+ *  several threads at once.  The features, weights and costs are kept
+ *  together in one object that add() replaces as a whole, so a thread
+ *  never sees the features of one version with the weights of another.
+ *
+ *  @author stevr76
+ *  @version 2016.08.28
+ */
+public class FeaturePipeline
+{
+    //Fields
+    /**
+     * The number of holes the move makes under the piece and inside it.
+     */
+    public static final MoveFeature NEW_HOLES = new MoveFeature() {
+        public String getName() {
+            return "new holes";
+        }
+        public int getNeeds() {
+            return COLUMNS;
+        }
+        public int evaluate(FeaturePass pass) {
+            return pass.getNewHoles();
+        }
+    };
+    /**
+     * The number of holes already in the columns the piece covers.
+     */
+    public static final MoveFeature OLD_HOLES = new MoveFeature() {
+        public String getName() {
+            return "old holes";
+        }
+        public int getNeeds() {
+            return COLUMNS;
+        }
+        public int evaluate(FeaturePass pass) {
+            return pass.getOldHoles();
+        }
+    };
+    /**
+     * The height of the tallest column after the move.
+     */
+    public static final MoveFeature MAX_HEIGHT = new MoveFeature() {
+        public String getName() {
+            return "max height";
+        }
+        public int getNeeds() {
+            return 0;
+        }
+        public int evaluate(FeaturePass pass) {
+            return pass.getMaxHeight();
+        }
+    };
+    /**
+     * The row the bottom of the piece lands on.
+     */
+    public static final MoveFeature LANDING_HEIGHT = new MoveFeature() {
+        public String getName() {
+            return "landing height";
+        }
+        public int getNeeds() {
+            return 0;
+        }
+        public int evaluate(FeaturePass pass) {
+            return pass.getRow();
+        }
+    };
+    /**
+     * The number of rows the move clears.
+     */
+    public static final MoveFeature CLEARED_ROWS = new MoveFeature() {
+        public String getName() {
+            return "cleared rows";
+        }
+        public int getNeeds() {
+            return ROWS;
+        }
+        public int evaluate(FeaturePass pass) {
+            return pass.getFullRows();
+        }
+    };
+    /**
+     * The change the move makes to the number of places along the rows
+     * where a filled cell is next to an empty one, the walls counting as
+     * filled.  Only the rows the piece lands in change, so only they are
+     * looked at.  A full row has no transitions, so clearing it changes
+     * nothing.
+     */
+    public static final MoveFeature ROW_TRANSITIONS = new MoveFeature() {
+        public String getName() {
+            return "row transitions";
+        }
+        public int getNeeds() {
+            return ROWS;
+        }
+        public int evaluate(FeaturePass pass) {
+            BitBoard board = pass.getSimulator().getBoard();
+            long full = board.getFullRow();
+            int change = 0;
+            for (int j = 0; j < pass.getRowCount(); j++) {
+                change += FeaturePipeline.transitions(pass.getRowMask(j), full)
+                    - FeaturePipeline.transitions(
+                        board.getRow(pass.getRow() + j), full);
+            }
+            return change;
+        }
+    };
+    /**
+     * The sum of the differences in height between each pair of columns
+     * next to each other after the move.
+     */
+    public static final MoveFeature BUMPINESS = new MoveFeature() {
+        public String getName() {
+            return "bumpiness";
+        }
+        public int getNeeds() {
+            return SURFACE;
+        }
+        public int evaluate(FeaturePass pass) {
+            int[] surface = pass.getSurface();
+            int bumps = 0;
+            for (int i = 1; i < surface.length; i++) {
+                bumps += Math.abs(surface[i] - surface[i - 1]);
+            }
+            return bumps;
+        }
+    };
+    /**
+     * The sum of the depths of the wells after the move.  A well is a
+     * column with taller columns on both sides, and its depth is how far
+     * the shorter of them rises above it; the walls count as columns as
+     * tall as the board.
+     */
+    public static final MoveFeature WELLS = new MoveFeature() {
+        public String getName() {
+            return "wells";
+        }
+        public int getNeeds() {
+            return SURFACE;
+        }
+        public int evaluate(FeaturePass pass) {
+            int[] surface = pass.getSurface();
+            int wall = pass.getSimulator().getBoard().getHeight();
+            int depth = 0;
+            for (int i = 0; i < surface.length; i++) {
+                int left = (i == 0) ? wall : surface[i - 1];
+                int right = (i == surface.length - 1) ? wall : surface[i + 1];
+                depth += Math.max(0, Math.min(left, right) - surface[i]);
+            }
+            return depth;
+        }
+    };
+    //the number given to each feature the first time it is added to any
+    //pipeline, so that features are told apart by identity, not by name
+    private static final Map<MoveFeature, Long> IDS =
+        new IdentityHashMap<MoveFeature, Long>();
+    private volatile Stages stages = new Stages(new MoveFeature[0],
+        new long[0], new double[0], new LongAdder[0], new LongAdder[0], 0);
+    private boolean sealed = false;
+    private volatile boolean timed = false;
+    /**
+     * This method adds a feature to the end of the pipeline.
+     *
+     * @param feature is the feature to add
+     * @param weight multiplies the value of the feature before it is added
+     * to a move's score
+     * @throws IllegalStateException if the pipeline has been given to a
+     * brain
+     */
+    public synchronized void add(MoveFeature feature, double weight) {
+        if (sealed) {
+            throw new IllegalStateException("The pipeline is already in a"
+                + " brain");
+        }
+        Stages old = stages;
+        int count = old.features.length;
+        MoveFeature[] features = Arrays.copyOf(old.features, count + 1);
+        long[] ids = Arrays.copyOf(old.ids, count + 1);
+        double[] weights = Arrays.copyOf(old.weights, count + 1);
+        LongAdder[] nanos = Arrays.copyOf(old.nanos, count + 1);
+        LongAdder[] calls = Arrays.copyOf(old.calls, count + 1);
+        features[count] = feature;
+        ids[count] = FeaturePipeline.idOf(feature);
+        weights[count] = weight;
+        nanos[count] = new LongAdder();
+        calls[count] = new LongAdder();
+        stages = new Stages(features, ids, weights, nanos, calls,
+            old.needs | feature.getNeeds());
+    }
+    /**
+     * This method stops any more features being added.  CleverBrain calls it
+     * when it is given the pipeline.
+     */
+    synchronized void seal() {
+        sealed = true;
+    }
+    /**
+     * This method returns whether the pipeline has been given to a brain,
+     * so that no more features can be added.
+     *
+     * @return true if the pipeline is sealed
+     */
+    public synchronized boolean isSealed() {
+        return sealed;
+    }
+    /**
+     * This method returns the number given to a feature, giving it the next
+     * one if it has none yet.
+     *
+     * @param feature is the feature
+     * @return the feature's number
+     */
+    private static long idOf(MoveFeature feature) {
+        synchronized (IDS) {
+            Long id = IDS.get(feature);
+            if (id == null) {
+                id = Long.valueOf(IDS.size() + 1);
+                IDS.put(feature, id);
+            }
+            return id.longValue();
+        }
+    }
+    /**
+     * This method returns the number of features in the pipeline.
+     *
+     * @return the number of features
+     */
+    public int size() {
+        return stages.features.length;
+    }
+    /**
+     * This method returns one of the features.
+     *
+     * @param index is the position of the feature, counted from 0
+     * @return the feature
+     */
+    public MoveFeature getFeature(int index) {
+        return stages.features[index];
+    }
+    /**
+     * This method returns the weight of one of the features.
+     *
+     * @param index is the position of the feature, counted from 0
+     * @return the weight
+     */
+    public double getWeight(int index) {
+        return stages.weights[index];
+    }
+    /**
+     * This method returns every part of a move that any of the features
+     * reads.
+     *
+     * @return the MoveFeature parts or'ed together
+     */
+    public int getNeeds() {
+        return stages.needs;
+    }
+    /**
+     * This method returns a number made from the identity and weight of
+     * every feature, so that brains with different pipelines can keep their
+     * results apart in a shared cache.  Two features with the same name are
+     * still told apart.
+     *
+     * @return the key of the pipeline
+     */
+    public long getKey() {
+        Stages current = stages;
+        long key = 0;
+        for (int i = 0; i < current.ids.length; i++) {
+            key = EvaluationCache.mix(key ^ current.ids[i]);
+            key = EvaluationCache.mix(key
+                ^ Double.doubleToLongBits(current.weights[i] + 0.0));
+        }
+        return key;
+    }
+    /**
+     * This method adds up the weighted value of every feature for the move
+     * the given pass was last extracted for.  The pass must have been given
+     * every part getNeeds() returns.
+     *
+     * @param pass holds the parts of the move
+     * @return the sum of the weighted values
+     */
+    public double evaluate(FeaturePass pass) {
+        Stages current = stages;
+        MoveFeature[] features = current.features;
+        double[] weights = current.weights;
+        double total = 0;
+        if (timed) {
+            LongAdder[] nanos = current.nanos;
+            LongAdder[] calls = current.calls;
+            for (int i = 0; i < features.length; i++) {
+                long start = System.nanoTime();
+                int value = features[i].evaluate(pass);
+                nanos[i].add(System.nanoTime() - start);
+                calls[i].increment();
+                total += weights[i] * value;
+            }
+        }
+        else {
+            for (int i = 0; i < features.length; i++) {
+                total += weights[i] * features[i].evaluate(pass);
+            }
+        }
+        return total;
+    }
+    /**
+     * This method turns the timing of each feature on or off.
+     *
+     * @param timed is true to time the features
+     */
+    public void setTimed(boolean timed) {
+        this.timed = timed;
+    }
+    /**
+     * This method returns whether the features are being timed.
+     *
+     * @return true if timing is on
+     */
+    public boolean isTimed() {
+        return timed;
+    }
+    /**
+     * This method returns the time one of the features has taken while the
+     * pipeline was timed.
+     *
+     * @param index is the position of the feature, counted from 0
+     * @return the time in nanoseconds
+     */
+    public long getNanos(int index) {
+        return stages.nanos[index].sum();
+    }
+    /**
+     * This method returns the number of moves one of the features has been
+     * worked out for while the pipeline was timed.
+     *
+     * @param index is the position of the feature, counted from 0
+     * @return the number of moves
+     */
+    public long getCalls(int index) {
+        return stages.calls[index].sum();
+    }
+    /**
+     * This method forgets the times and counts of every feature.
+     */
+    public void resetCosts() {
+        Stages current = stages;
+        for (int i = 0; i < current.features.length; i++) {
+            current.nanos[i].reset();
+            current.calls[i].reset();
+        }
+    }
+    /**
+     * This method returns the weight and cost of every feature as text, one
+     * line per feature.
+     *
+     * @return the report
+     */
+    public String report() {
+        Stages current = stages;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < current.features.length; i++) {
+            if (i > 0) {
+                text.append(System.lineSeparator());
+            }
+            long count = current.calls[i].sum();
+            text.append(String.format("%-16s weight %8.3f  %d moves"
+                + "  %.1f ns/move", current.features[i].getName(),
+                current.weights[i], count, (count == 0) ? 0.0
+                : (double)current.nanos[i].sum() / count));
+        }
+        return text.toString();
+    }
+    /**
+     * This method counts the places along a row where a filled cell is next
+     * to an empty one, the walls on both sides counting as filled.
+     *
+     * @param row holds the cells of the row, one bit per column
+     * @param full is the row with every cell filled
+     * @return the number of transitions
+     */
+    static int transitions(long row, long full) {
+        //each bit of the first term is set where a cell differs from the
+        //one to its left, the left wall counting as filled; the second term
+        //is the step from the right-most cell to the right wall
+        return Long.bitCount((row ^ ((row << 1) | 1)) & full)
+            + (((row & (full ^ (full >>> 1))) == 0) ? 1 : 0);
+    }
+    // -------------------------------------------------------------------------
+    /**
+     *  This class holds one version of the pipeline's features, with the
+     *  number, weight and costs of each and the parts they need.  It is never
+     *  changed once made.
+     */
+    private static class Stages
+    {
+        private final MoveFeature[] features;
+        private final long[] ids;
+        private final double[] weights;
+        private final LongAdder[] nanos;
+        private final LongAdder[] calls;
+        private final int needs;
+        /**
+         * This constructor records one version of the pipeline.
+         *
+         * @param features holds the features
+         * @param ids holds the number of each feature
+         * @param weights holds the weight of each feature
+         * @param nanos holds the time taken by each feature
+         * @param calls holds the number of moves each feature was timed for
+         * @param needs holds the parts of a move the features read
+         */
+        Stages(MoveFeature[] features, long[] ids, double[] weights,
+            LongAdder[] nanos, LongAdder[] calls, int needs) {
+            this.features = features;
+            this.ids = ids;
+            this.weights = weights;
+            this.nanos = nanos;
+            this.calls = calls;
+            this.needs = needs;
+        }
+    }
+}
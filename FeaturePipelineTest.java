@@ -0,0 +1,215 @@
+import cs5044.tetris.*;
+// -------------------------------------------------------------------------
+/**
+ *  This is the test class for FeaturePipeline and FeaturePass
+ *
+ *  @author stevr76
+ *  @version 2016.08.28
+ */
+public class FeaturePipelineTest
+    extends student.TestCase
+{
+    private BitBoard bits;
+    private MoveSimulator simulator;
+    private FeaturePipeline pipeline;
+    /**
+     * This sets up a board with holes, a well and a row that a stick can
+     * finish, and a pipeline of every built-in feature.
+     */
+    public void setUp()
+        throws Exception
+    {
+        bits = new BitBoard(new Board(10, 24,
+            "#         ",
+            "##   #  # ",
+            "### ##### ",
+            "#### #### "
+        ));
+        int[] heights = new int[bits.getWidth()];
+        int[] holes = new int[bits.getWidth()];
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = bits.getColumnHeight(i);
+            holes[i] = bits.getColumnHoles(i);
+        }
+        simulator = new MoveSimulator(bits, holes, heights);
+        pipeline = new FeaturePipeline();
+        pipeline.add(FeaturePipeline.NEW_HOLES, 1);
+        pipeline.add(FeaturePipeline.OLD_HOLES, 1);
+        pipeline.add(FeaturePipeline.MAX_HEIGHT, 1);
+        pipeline.add(FeaturePipeline.LANDING_HEIGHT, 1);
+        pipeline.add(FeaturePipeline.CLEARED_ROWS, 1);
+        pipeline.add(FeaturePipeline.ROW_TRANSITIONS, 1);
+        pipeline.add(FeaturePipeline.BUMPINESS, 1);
+        pipeline.add(FeaturePipeline.WELLS, 1);
+    }
+    /**
+     * This method counts the row transitions of a whole board the slow way.
+     *
+     * @param board is the board
+     * @return the number of transitions
+     */
+    private int transitions(BitBoard board) {
+        int count = 0;
+        for (int j = 0; j < board.getHeight(); j++) {
+            for (int i = 0; i <= board.getWidth(); i++) {
+                if (board.hasBlockAt(i - 1, j) != board.hasBlockAt(i, j)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    /**
+     * This test ensures that every feature of every move read from one pass
+     * is the same as what is found by placing the piece on the board.
+     */
+    public void testFeaturesMatchPlacedBoard() {
+        FeaturePass pass = new FeaturePass(simulator);
+        int[] values = new int[pipeline.size()];
+        int before = this.transitions(bits);
+        for (PieceShape shape : PieceShape.rotations(
+            Piece.getPiece(Piece.T, 0))) {
+            this.checkShape(pass, values, shape, before);
+        }
+        for (PieceShape shape : PieceShape.rotations(
+            Piece.getPiece(Piece.STICK, 0))) {
+            this.checkShape(pass, values, shape, before);
+        }
+    }
+    /**
+     * This method checks every column of one shape.
+     *
+     * @param pass is the pass to extract with
+     * @param values receives the value of each feature
+     * @param shape is the shape to try
+     * @param before is the number of row transitions before the move
+     */
+    private void checkShape(FeaturePass pass, int[] values, PieceShape shape,
+        int before) {
+        for (int x = 0; x + shape.getWidth() <= bits.getWidth(); x++) {
+            pass.extract(shape, x, pipeline.getNeeds());
+            for (int f = 0; f < values.length; f++) {
+                values[f] = pipeline.getFeature(f).evaluate(pass);
+            }
+            int y = simulator.getLandingRow(shape, x);
+            assertEquals(pass.getRow(), y);
+            assertEquals(values[0], simulator.getNewHoleCount(shape, x, y));
+            assertEquals(values[1], simulator.getOldHoleCount(shape, x));
+            assertEquals(values[2], simulator.getMaxHeight(shape, y));
+            assertEquals(values[3], y);
+            assertEquals(values[4], simulator.getRowKillCount(shape, x, y));
+            bits.place(shape, x, y);
+            assertEquals(values[5], this.transitions(bits) - before);
+            int bumps = 0;
+            int wells = 0;
+            for (int i = 0; i < bits.getWidth(); i++) {
+                int height = bits.getColumnHeight(i);
+                assertEquals(pass.getSurface()[i], height);
+                if (i > 0) {
+                    bumps += Math.abs(height - bits.getColumnHeight(i - 1));
+                }
+                int left = (i == 0) ? 24 : bits.getColumnHeight(i - 1);
+                int right = (i == bits.getWidth() - 1) ? 24
+                    : bits.getColumnHeight(i + 1);
+                wells += Math.max(0, Math.min(left, right) - height);
+            }
+            assertEquals(values[6], bumps);
+            assertEquals(values[7], wells);
+            bits.undo();
+        }
+    }
+    /**
+     * This test ensures that an empty pipeline leaves a brain's moves as
+     * they were, that a pipeline can change them, and that the cost of each
+     * feature is counted while the pipeline is timed.
+     */
+    public void testPipelineInBrain() {
+        Board board = new Board(10, 24,
+            "#         ",
+            "##   #  # ",
+            "### ##### ",
+            "#### #### "
+        );
+        Piece piece = Piece.getPiece(Piece.T, 0);
+        Move plain = new Move();
+        new CleverBrain().bestMove(board, piece, 20, plain);
+        CleverBrain brain = new CleverBrain();
+        brain.setPipeline(new FeaturePipeline());
+        Move move = new Move();
+        brain.bestMove(board, piece, 20, move);
+        assertEquals(move.x(), plain.x());
+        assertEquals(move.piece(), plain.piece());
+        //a heavy enough bumpiness weight makes the brain flatten the top
+        FeaturePipeline bumps = new FeaturePipeline();
+        bumps.add(FeaturePipeline.BUMPINESS, 100);
+        bumps.setTimed(true);
+        brain.setPipeline(bumps);
+        assertEquals(brain.getPipeline(), bumps);
+        brain.bestMove(board, piece, 20, move);
+        assertTrue(bumps.getCalls(0) > 0);
+        assertTrue(bumps.getNanos(0) >= 0);
+        assertTrue(bumps.report().startsWith("bumpiness"));
+        FeaturePass pass = new FeaturePass(simulator);
+        int best = Integer.MAX_VALUE;
+        int chosen = -1;
+        for (PieceShape shape : PieceShape.rotations(piece)) {
+            for (int x = 0; x + shape.getWidth() <= 10; x++) {
+                pass.extract(shape, x, MoveFeature.SURFACE);
+                int value = FeaturePipeline.BUMPINESS.evaluate(pass);
+                best = Math.min(best, value);
+                if (shape.getPiece().equals(move.piece())
+                    && x == move.x()) {
+                    chosen = value;
+                }
+            }
+        }
+        assertEquals(chosen, best);
+        bumps.resetCosts();
+        assertEquals(bumps.getCalls(0), 0);
+    }
+    /**
+     * This test ensures that pipelines with different weights have
+     * different keys.
+     */
+    public void testKey() {
+        FeaturePipeline other = new FeaturePipeline();
+        other.add(FeaturePipeline.NEW_HOLES, 2);
+        FeaturePipeline same = new FeaturePipeline();
+        same.add(FeaturePipeline.NEW_HOLES, 2);
+        assertEquals(other.getKey(), same.getKey());
+        same.add(FeaturePipeline.WELLS, 1);
+        assertFalse(other.getKey() == same.getKey());
+        //a feature with the name of another is still a different feature
+        FeaturePipeline namesake = new FeaturePipeline();
+        namesake.add(new MoveFeature() {
+            public String getName() {
+                return FeaturePipeline.NEW_HOLES.getName();
+            }
+            public int getNeeds() {
+                return COLUMNS;
+            }
+            public int evaluate(FeaturePass pass) {
+                return -pass.getNewHoles();
+            }
+        }, 2);
+        assertFalse(other.getKey() == namesake.getKey());
+    }
+    /**
+     * This test ensures that a pipeline cannot be changed once a brain has
+     * it, since the brain's cache key would no longer match its features.
+     */
+    public void testSealed() {
+        FeaturePipeline sealed = new FeaturePipeline();
+        sealed.add(FeaturePipeline.BUMPINESS, 1);
+        assertFalse(sealed.isSealed());
+        new CleverBrain().setPipeline(sealed);
+        assertTrue(sealed.isSealed());
+        try {
+            sealed.add(FeaturePipeline.WELLS, 1);
+            fail("A pipeline in a brain should not take new features");
+        }
+        catch (IllegalStateException e) {
+            assertEquals(sealed.size(), 1);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class keeps a BitBoard copy of a game's board, together with the
+ *  height and holes of every column, the number of blocks in every row and
+ *  the depth of the well in every column, from one move to the next without
+ *  scanning the whole Board each time.
+ *
+ *  After the brain chooses a move, expect() plays the move on the tracked
+ *  board, updating only the columns and rows the piece touches, plus every
+ *  row above the lowest one cleared.  When the brain is next asked for a
+ *  move, sync() checks the Board it is given against that prediction: the
+ *  height of every column, and every cell of the rows the move changed.  If
+ *  they all match, the tracked board is used as it is.  If anything differs
+ *  (the game put the piece somewhere else, a new game started, or the
+ *  Board is a different size) the Board is scanned again in full, so the
+ *  tracked board never stays wrong for long.  The check does not look at
+ *  rows the move did not change, so a Board that is changed below its
+ *  surface by something other than the game, or a different Board with
+ *  the same heights and surface, would not be noticed; a complete check
+ *  would cost as much as the scan it saves.  The tracker is only meant for
+ *  the boards of one game, passed in turn.
+ *
+ *  A well is an empty column with taller columns on both sides; its depth
+ *  is how far the shorter of its neighbours rises above it.  The walls of
+ *  the board count as columns as tall as the board.
+ *
+ *  @author stevr76
+ *  @version 2016.08.23
+ */
+public class FeatureTracker
+{
+    //Fields
+    private BitBoard board;
+    private int[] heights = new int[0];
+    private int[] holes = new int[0];
+    private int[] wells = new int[0];
+    private int[] rowFills = new int[0];
+    //whether expect() has made a prediction for sync() to check, and the
+    //rows the predicted move changed
+    private boolean expecting;
+    private int changedFrom;
+    private int changedTo;
+    private long rescans;
+    private long incrementalSyncs;
+    /**
+     * This method brings the tracked board up to date with the given Board.
+     * If the move given to expect() turned the last board into this one,
+     * nothing is scanned but the column heights and the changed rows;
+     * otherwise the whole Board is copied.
+     *
+     * @param current is the game's board
+     */
+    public void sync(Board current) {
+        if (expecting && this.matches(current)) {
+            incrementalSyncs++;
+        }
+        else {
+            this.rescan(current);
+        }
+        expecting = false;
+    }
+    /**
+     * This method copies the whole Board and works out every feature again.
+     *
+     * @param current is the game's board
+     */
+    public void rescan(Board current) {
+        if (board == null || board.getWidth() != current.getWidth()
+            || board.getHeight() != current.getHeight()) {
+            board = new BitBoard(current);
+            heights = new int[board.getWidth()];
+            holes = new int[board.getWidth()];
+            wells = new int[board.getWidth()];
+            rowFills = new int[board.getHeight()];
+        }
+        else {
+            board.load(current);
+        }
+        for (int j = 0; j < board.getHeight(); j++) {
+            rowFills[j] = Long.bitCount(board.getRow(j));
+        }
+        this.updateColumns(0, board.getWidth());
+        expecting = false;
+        rescans++;
+    }
+    /**
+     * This method plays a move on the tracked board: the piece is placed
+     * with its lower left corner at (x, y) and full rows are cleared.  The
+     * next sync() expects the game's board to look like the result.  A move
+     * that does not fit on the board is not played, and the next sync()
+     * scans the whole Board.
+     *
+     * @param shape is the shape of the piece, in the rotation played
+     * @param x is the column of the left side of the piece
+     * @param y is the row the bottom of the piece lands on
+     */
+    public void expect(PieceShape shape, int x, int y) {
+        expecting = false;
+        if (board == null || x < 0 || y < 0
+            || x + shape.getWidth() > board.getWidth()
+            || y + shape.getHeight() > board.getHeight()) {
+            return;
+        }
+        int oldLargest = board.getLargestHeight();
+        board.place(shape, x, y);
+        board.commit();
+        for (int j = 0; j < shape.getHeight(); j++) {
+            rowFills[y + j] += Long.bitCount(shape.getRowMask(j));
+        }
+        changedFrom = y;
+        changedTo = y + shape.getHeight();
+        int cleared = board.clearRows();
+        if (cleared == 0) {
+            this.updateColumns(x, x + shape.getWidth());
+        }
+        else {
+            //every row from the lowest cleared one up to the old top has
+            //moved, and every column has lost blocks. The lowest cleared
+            //row is normally one the piece filled, but a board can start
+            //out with full rows of its own
+            int top = Math.max(oldLargest, changedTo);
+            int width = board.getWidth();
+            changedFrom = 0;
+            while (rowFills[changedFrom] != width) {
+                changedFrom++;
+            }
+            int kept = changedFrom;
+            for (int j = changedFrom; j < top; j++) {
+                if (rowFills[j] != width) {
+                    rowFills[kept++] = rowFills[j];
+                }
+            }
+            for (int j = kept; j < top; j++) {
+                rowFills[j] = 0;
+            }
+            changedTo = top;
+            this.updateColumns(0, board.getWidth());
+        }
+        expecting = true;
+    }
+    /**
+     * This method works out the height and holes of the given columns from
+     * the tracked board, and the wells of those columns and the columns
+     * next to them.
+     *
+     * @param from is the first column to update
+     * @param to is one past the last column to update
+     */
+    private void updateColumns(int from, int to) {
+        for (int i = from; i < to; i++) {
+            heights[i] = board.getColumnHeight(i);
+            holes[i] = board.getColumnHoles(i);
+        }
+        int width = board.getWidth();
+        for (int i = Math.max(0, from - 1); i < Math.min(width, to + 1); i++) {
+            int left = (i == 0) ? board.getHeight() : heights[i - 1];
+            int right = (i == width - 1) ? board.getHeight() : heights[i + 1];
+            wells[i] = Math.max(0, Math.min(left, right) - heights[i]);
+        }
+    }
+    /**
+     * This method checks the given Board against the predicted board: the
+     * size, the height of every column, and every cell of the rows the
+     * predicted move changed.
+     *
+     * @param current is the game's board
+     * @return true if the predicted board can be used for it
+     */
+    private boolean matches(Board current) {
+        int width = board.getWidth();
+        if (current.getWidth() != width
+            || current.getHeight() != board.getHeight()) {
+            return false;
+        }
+        for (int i = 0; i < width; i++) {
+            if (current.getColumnHeight(i) != heights[i]) {
+                return false;
+            }
+        }
+        for (int j = changedFrom; j < changedTo; j++) {
+            long row = board.getRow(j);
+            for (int i = 0; i < width; i++) {
+                if (current.hasBlockAt(i, j) != ((row & (1L << i)) != 0)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    /**
+     * This method returns the tracked board.  It must not be changed except
+     * through this tracker, though a piece placed on it may be taken back
+     * off with undo().
+     *
+     * @return the tracked board, or null before the first sync
+     */
+    public BitBoard getBoard() {
+        return board;
+    }
+    /**
+     * This method returns the height of each column.  The array must not be
+     * changed.
+     *
+     * @return one entry per column
+     */
+    public int[] getHeights() {
+        return heights;
+    }
+    /**
+     * This method returns the number of holes in each column.  The array
+     * must not be changed.
+     *
+     * @return one entry per column
+     */
+    public int[] getHoles() {
+        return holes;
+    }
+    /**
+     * This method returns the depth of the well in each column.  The array
+     * must not be changed.
+     *
+     * @return one entry per column
+     */
+    public int[] getWells() {
+        return wells;
+    }
+    /**
+     * This method returns the number of blocks in each row.  The array must
+     * not be changed.
+     *
+     * @return one entry per row
+     */
+    public int[] getRowFills() {
+        return rowFills;
+    }
+    /**
+     * This method returns the number of times sync() had to copy the whole
+     * Board, including the first time.
+     *
+     * @return the number of full scans
+     */
+    public long getRescans() {
+        return rescans;
+    }
+    /**
+     * This method returns the number of times sync() could use the
+     * predicted board.
+     *
+     * @return the number of incremental updates
+     */
+    public long getIncrementalSyncs() {
+        return incrementalSyncs;
+    }
+}
@@ -0,0 +1,166 @@
+import cs5044.tetris.*;
+// -------------------------------------------------------------------------
+/**
+ *  This is the test class for FeatureTracker
+ *
+ *  @author stevr76
+ *  @version 2016.08.23
+ */
+public class FeatureTrackerTest
+    extends student.TestCase
+{
+    private FeatureTracker tracker;
+    private Board start;
+    /**
+     * This sets up a tracker on a board with holes, a full row and wells.
+     */
+    public void setUp()
+        throws Exception
+    {
+        start = new Board(10, 24,
+            "# # #     ",
+            "##########",
+            "#### #### "
+        );
+        tracker = new FeatureTracker();
+        tracker.sync(start);
+    }
+    /**
+     * This test ensures that the features are read from the board.
+     */
+    public void testRescan() {
+        assertEquals(tracker.getRescans(), 1L);
+        assertEquals(tracker.getHeights()[0], 3);
+        assertEquals(tracker.getHeights()[9], 2);
+        assertEquals(tracker.getHoles()[4], 1);
+        assertEquals(tracker.getHoles()[9], 1);
+        assertEquals(tracker.getRowFills()[0], 8);
+        assertEquals(tracker.getRowFills()[1], 10);
+        assertEquals(tracker.getRowFills()[2], 3);
+        assertEquals(tracker.getWells()[1], 1);
+        assertEquals(tracker.getWells()[3], 1);
+        assertEquals(tracker.getWells()[9], 0);
+        assertEquals(tracker.getWells()[0], 0);
+    }
+    /**
+     * This test ensures that moves played with expect() leave the same
+     * features a full scan of the resulting board finds, including moves
+     * that clear rows, and that the next sync() uses the prediction.
+     */
+    public void testExpectMatchesRescan() {
+        PieceShape[] shapes = {
+            PieceShape.of(Piece.getPiece(Piece.STICK, 0)),
+            PieceShape.of(Piece.getPiece(Piece.SQUARE, 0)),
+            PieceShape.of(Piece.getPiece(Piece.STICK, 1)),
+            PieceShape.of(Piece.getPiece(Piece.T, 0)),
+        };
+        int[] columns = {9, 1, 5, 2, 0, 6, 3, 7};
+        for (int k = 0; k < columns.length; k++) {
+            PieceShape shape = shapes[k % shapes.length];
+            int x = Math.min(columns[k], 10 - shape.getWidth());
+            BitBoard bits = tracker.getBoard();
+            tracker.expect(shape, x, bits.getLandingRow(shape, x));
+            Board next = tracker.getBoard().toBoard();
+            tracker.sync(next);
+            FeatureTracker fresh = new FeatureTracker();
+            fresh.sync(next);
+            this.assertSameFeatures(tracker, fresh);
+        }
+        assertEquals(tracker.getRescans(), 1L);
+        assertEquals(tracker.getIncrementalSyncs(), (long)columns.length);
+    }
+    /**
+     * This test ensures that a board that does not match the prediction is
+     * scanned again in full.
+     */
+    public void testDivergence() {
+        PieceShape square = PieceShape.of(Piece.getPiece(Piece.SQUARE, 0));
+        tracker.expect(square, 6, tracker.getBoard().getLandingRow(square, 6));
+        //the game dropped the square two columns to the left instead
+        start.place(square.getPiece(), 4, 3);
+        start.commit();
+        tracker.sync(start);
+        assertEquals(tracker.getRescans(), 2L);
+        assertEquals(tracker.getIncrementalSyncs(), 0L);
+        assertEquals(tracker.getHeights()[4], 5);
+        assertEquals(tracker.getHeights()[6], 2);
+        tracker.sync(new Board(8, 20));
+        assertEquals(tracker.getRescans(), 3L);
+        assertEquals(tracker.getHeights().length, 8);
+    }
+    /**
+     * This test ensures that CleverBrain plays the same game with and
+     * without incremental tracking.
+     */
+    public void testIncrementalGame() {
+        final CleverBrain tracked = new CleverBrain();
+        CleverBrain scanned = new CleverBrain();
+        assertFalse(scanned.isIncremental());
+        tracked.setIncremental(true);
+        //HeadlessGame hands a BitBoardBrain a BitBoard, which is never
+        //tracked, so the brain is hidden behind a plain Brain
+        HeadlessGame first = new HeadlessGame(new Brain() {
+            public void bestMove(Board board, Piece piece, int limit,
+                Move move) {
+                tracked.bestMove(board, piece, limit, move);
+            }
+        }, 10, 24, 11);
+        HeadlessGame second = new HeadlessGame(scanned, 10, 24, 11);
+        first.play(200);
+        second.play(200);
+        assertTrue(tracked.isIncremental());
+        assertEquals(first.getPieces(), second.getPieces());
+        assertEquals(first.getLinesCleared(), second.getLinesCleared());
+        assertEquals(first.getBoard().getHash(),
+            second.getBoard().getHash());
+    }
+    /**
+     * This test ensures that a brain left with its default settings scores
+     * a board on its own, even when it has the same heights and surface as
+     * the board its last move made.
+     */
+    public void testSurfaceTwin() {
+        Board played = new Board(10, 24,
+            "### ### ##",
+            "#### #####",
+            " #########"
+        );
+        Board twin = new Board(10, 24,
+            "### ### ##",
+            "#### #####",
+            "######## #"
+        );
+        Piece piece = Piece.getPiece(Piece.STICK, 0);
+        CleverBrain brain = new CleverBrain();
+        Move move = new Move();
+        brain.bestMove(played, piece, 20, move);
+        twin.place(move.piece(), move.x(), move.y());
+        twin.commit();
+        brain.bestMove(twin, piece, 20, move);
+        Move expected = new Move();
+        new CleverBrain().bestMove(twin, piece, 20, expected);
+        assertEquals(move.x(), expected.x());
+        assertEquals(move.y(), expected.y());
+        assertEquals(move.score(), expected.score(), 1e-9);
+    }
+    /**
+     * This method checks that two trackers hold the same board and features.
+     *
+     * @param actual is the tracker being tested
+     * @param expected is a tracker that scanned the same board
+     */
+    private void assertSameFeatures(FeatureTracker actual,
+        FeatureTracker expected) {
+        assertEquals(actual.getBoard().getHash(),
+            expected.getBoard().getHash());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(actual.getHeights()[i], expected.getHeights()[i]);
+            assertEquals(actual.getHoles()[i], expected.getHoles()[i]);
+            assertEquals(actual.getWells()[i], expected.getWells()[i]);
+        }
+        for (int j = 0; j < 24; j++) {
+            assertEquals(actual.getRowFills()[j],
+                expected.getRowFills()[j]);
+        }
+    }
+}
@@ -0,0 +1,433 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class appends brain decisions to a recording file, on a background
+ *  thread of its own, so that the thread playing the game never waits for
+ *  the disk.  record() copies the decision into one of a fixed set of
+ *  records and hands it to the writer thread; if the writer has fallen so
+ *  far behind that every record is in use, the decision is dropped and
+ *  counted instead of making the game wait.  A decision that cannot be
+ *  recorded, because its board is more than 64 cells on a side or its
+ *  piece is not one of the seven standard ones, is dropped and counted the
+ *  same way, so recording never makes the game fail.
+ *
+ *  A recording starts with the four bytes "TREC" and a version byte, and is
+ *  followed by blocks.  Each block is a header of three ints (the length of
+ *  its payload in bytes, the number of records in it, and the CRC32 of the
+ *  payload) and then the payload, so a damaged block can be told apart from
+ *  a good one.  A block holds about BLOCK_SIZE bytes of records, or fewer if
+ *  the recorder has been idle for a while or is closed.  Every record is:
+ *
+ *      the width, height and height limit of the board, each as a varint
+ *          of the difference from the record before it in the block
+ *      the code of the piece given and of the piece played, a byte each
+ *      the column and row of the move, each as a varint
+ *      the score of the move, as the eight bytes of the double
+ *      the time the decision took in nanoseconds, as a varint
+ *      the number of rows up to the top filled one, as a varint
+ *      those rows, width bits each, packed end to end into whole bytes
+ *
+ *  Varints are seven bits to a byte, low bits first, with the top bit set
+ *  on every byte but the last; signed values are zigzag encoded first so
+ *  that small differences either way take one byte.  A decision in a game
+ *  on a 10 column board takes about 30 bytes.
+ *
+ *  Opening a recorder on a file that already exists adds blocks to the end
+ *  of it.  RecordingReader reads the file back.
+ *
+ *  @author stevr76
+ *  @version 2016.08.25
+ */
+public class GameRecorder
+    implements Closeable
+{
+    //Fields
+    /**
+     * The first four bytes of every recording.
+     */
+    public static final int MAGIC = 0x54524543;
+    /**
+     * The version of the format written.
+     */
+    public static final int VERSION = 1;
+    /**
+     * The payload size at which a block is written out.
+     */
+    public static final int BLOCK_SIZE = 64 * 1024;
+    /**
+     * The number of decisions that can wait for the writer thread unless
+     * another number is given.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+    //the most bytes one record can take: the fixed fields plus a full
+    //64 by 64 board
+    private static final int MAX_RECORD = 64 + 64 * 64 / 8;
+    //how long the writer waits for a decision before writing out a block
+    //that is not full
+    private static final long IDLE_MILLIS = 200;
+    //put in the queue by close() to tell the writer thread to finish
+    private static final DecisionRecord END = new DecisionRecord();
+    private final FileChannel channel;
+    private final BlockingQueue<DecisionRecord> pending;
+    private final BlockingQueue<DecisionRecord> free;
+    private final Thread writer;
+    private final ByteBuffer header = ByteBuffer.allocate(12);
+    private final ByteBuffer payload =
+        ByteBuffer.allocate(BLOCK_SIZE + MAX_RECORD);
+    private final CRC32 crc = new CRC32();
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long blocks;
+    private volatile IOException failure = null;
+    private volatile boolean closed = false;
+    //the number of decisions being handed over right now; close() waits
+    //for them, so that none is queued behind END
+    private final AtomicInteger handing = new AtomicInteger();
+    //the state the records of the current block are encoded against
+    private int blockRecords;
+    private int lastWidth;
+    private int lastHeight;
+    private int lastLimit;
+    /**
+     * This constructor opens a recording with room for DEFAULT_CAPACITY
+     * decisions to wait for the writer.
+     *
+     * @param file is the recording to write, or to add to if it exists
+     * @throws IOException if the file cannot be opened
+     */
+    public GameRecorder(File file)
+        throws IOException
+    {
+        this(file, DEFAULT_CAPACITY);
+    }
+    /**
+     * This constructor opens a recording and starts its writer thread.
+     *
+     * @param file is the recording to write, or to add to if it exists
+     * @param capacity is the number of decisions that can wait for the
+     * writer before more are dropped
+     * @throws IOException if the file cannot be opened
+     */
+    public GameRecorder(File file, int capacity)
+        throws IOException
+    {
+        channel = new FileOutputStream(file, true).getChannel();
+        if (channel.size() == 0) {
+            ByteBuffer start = ByteBuffer.allocate(5);
+            start.putInt(MAGIC).put((byte)VERSION).flip();
+            while (start.hasRemaining()) {
+                channel.write(start);
+            }
+        }
+        pending = new ArrayBlockingQueue<DecisionRecord>(capacity + 1);
+        free = new ArrayBlockingQueue<DecisionRecord>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            free.add(new DecisionRecord());
+        }
+        writer = new Thread(new Runnable() {
+            public void run() {
+                GameRecorder.this.write();
+            }
+        }, "game recorder " + file.getName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+    /**
+     * This method hands a decision to the writer thread.  It never waits:
+     * if every record is already waiting to be written, the recorder is
+     * closed, or the decision cannot be recorded, the decision is dropped.
+     *
+     * @param board is the board the brain was given
+     * @param piece is the piece the brain was given
+     * @param heightLimit is the height limit the brain was given
+     * @param move is the move the brain made
+     * @param nanos is how long the brain took
+     * @return true if the decision will be written, false if it was dropped
+     */
+    public boolean record(Board board, Piece piece, int heightLimit,
+        Move move, long nanos) {
+        handing.incrementAndGet();
+        try {
+            DecisionRecord next = closed ? null : free.poll();
+            return this.hand(next, board, piece, heightLimit, move, nanos);
+        }
+        finally {
+            handing.decrementAndGet();
+        }
+    }
+    /**
+     * This method hands a decision to the writer thread, waiting for a
+     * record to come free if every record is already waiting to be written,
+     * so that no decision is dropped.  It is meant for tools that make
+     * recordings rather than for games.  A decision that cannot be
+     * recorded is still dropped.
+     *
+     * @param board is the board the brain was given
+     * @param piece is the piece the brain was given
+     * @param heightLimit is the height limit the brain was given
+     * @param move is the move the brain made
+     * @param nanos is how long the brain took
+     * @return true if the decision will be written, false if it was dropped
+     * @throws InterruptedException if the thread is interrupted while it
+     * waits
+     */
+    public boolean recordWaiting(Board board, Piece piece, int heightLimit,
+        Move move, long nanos)
+        throws InterruptedException
+    {
+        handing.incrementAndGet();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The recorder is closed");
+            }
+            return this.hand(free.take(), board, piece, heightLimit, move,
+                nanos);
+        }
+        finally {
+            handing.decrementAndGet();
+        }
+    }
+    /**
+     * This method fills in a free record and queues it for the writer.  A
+     * decision that cannot be recorded is counted as dropped, and its
+     * record goes back to the free ones.
+     *
+     * @param next is the free record, or null if there is none
+     * @param board is the board the brain was given
+     * @param piece is the piece the brain was given
+     * @param heightLimit is the height limit the brain was given
+     * @param move is the move the brain made
+     * @param nanos is how long the brain took
+     * @return true if the decision will be written, false if it was dropped
+     */
+    private boolean hand(DecisionRecord next, Board board, Piece piece,
+        int heightLimit, Move move, long nanos) {
+        if (next == null) {
+            dropped.increment();
+            return false;
+        }
+        try {
+            next.set(board, piece, heightLimit, move, nanos);
+        }
+        catch (RuntimeException e) {
+            free.add(next);
+            dropped.increment();
+            return false;
+        }
+        pending.add(next);
+        recorded.increment();
+        return true;
+    }
+    /**
+     * This method writes every decision recorded so far, stops the writer
+     * thread and closes the file.  Decisions recorded after this are
+     * dropped.
+     *
+     * @throws IOException if the recording could not be written
+     */
+    public synchronized void close()
+        throws IOException
+    {
+        if (!closed) {
+            closed = true;
+            //a decision handed over just before closed was set may still be
+            //on its way into the queue, so END waits until it is there
+            while (handing.get() > 0) {
+                Thread.yield();
+            }
+            boolean interrupted = false;
+            boolean ended = false;
+            while (writer.isAlive()) {
+                try {
+                    if (!ended) {
+                        pending.put(END);
+                        ended = true;
+                    }
+                    writer.join();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            channel.close();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    /**
+     * This method is run by the writer thread.  It encodes decisions as
+     * they arrive and writes out a block whenever one fills up, the queue
+     * has been empty for a while, or the recorder is closed.  After a write
+     * fails, decisions are taken off the queue and thrown away.
+     */
+    private void write() {
+        try {
+            while (true) {
+                DecisionRecord next = pending.poll(IDLE_MILLIS,
+                    TimeUnit.MILLISECONDS);
+                if (next == END) {
+                    this.writeBlock();
+                    return;
+                }
+                if (next == null) {
+                    this.writeBlock();
+                    continue;
+                }
+                if (failure == null) {
+                    this.encode(next);
+                    if (payload.position() >= BLOCK_SIZE) {
+                        this.writeBlock();
+                    }
+                }
+                free.add(next);
+            }
+        }
+        catch (InterruptedException e) {
+            failure = new IOException("The recorder was interrupted", e);
+        }
+    }
+    /**
+     * This method adds one decision to the current block.
+     *
+     * @param decision is the decision to encode
+     */
+    private void encode(DecisionRecord decision) {
+        int width = decision.getWidth();
+        GameRecorder.putSigned(payload, width - lastWidth);
+        GameRecorder.putSigned(payload, decision.getHeight() - lastHeight);
+        GameRecorder.putSigned(payload, decision.getHeightLimit() - lastLimit);
+        lastWidth = width;
+        lastHeight = decision.getHeight();
+        lastLimit = decision.getHeightLimit();
+        payload.put((byte)decision.getPieceCode());
+        payload.put((byte)decision.getMovePieceCode());
+        GameRecorder.putSigned(payload, decision.getX());
+        GameRecorder.putSigned(payload, decision.getY());
+        payload.putLong(Double.doubleToLongBits(decision.getScore()));
+        GameRecorder.putVarint(payload, decision.getNanos());
+        long[] rows = decision.getRows();
+        int used = decision.getHeight();
+        while (used > 0 && rows[used - 1] == 0) {
+            used--;
+        }
+        GameRecorder.putVarint(payload, used);
+        //the rows are shifted into an accumulator width bits at a time and
+        //taken out of the bottom of it a byte at a time
+        long bits = 0;
+        int count = 0;
+        long mask = (width == 64) ? -1L : (1L << width) - 1;
+        for (int j = 0; j < used; j++) {
+            long row = rows[j] & mask;
+            for (int shift = 0; shift < width; shift += 32) {
+                int chunk = Math.min(32, width - shift);
+                bits |= ((row >>> shift) & ((1L << chunk) - 1)) << count;
+                count += chunk;
+                while (count >= 8) {
+                    payload.put((byte)bits);
+                    bits >>>= 8;
+                    count -= 8;
+                }
+            }
+        }
+        if (count > 0) {
+            payload.put((byte)bits);
+        }
+        blockRecords++;
+    }
+    /**
+     * This method writes out the current block, if it holds any records,
+     * and starts a new one.
+     */
+    private void writeBlock() {
+        if (blockRecords == 0 || failure != null) {
+            return;
+        }
+        payload.flip();
+        crc.reset();
+        crc.update(payload.array(), 0, payload.limit());
+        header.clear();
+        header.putInt(payload.limit()).putInt(blockRecords)
+            .putInt((int)crc.getValue()).flip();
+        try {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (payload.hasRemaining()) {
+                channel.write(payload);
+            }
+            blocks++;
+        }
+        catch (IOException e) {
+            failure = e;
+        }
+        payload.clear();
+        blockRecords = 0;
+        lastWidth = 0;
+        lastHeight = 0;
+        lastLimit = 0;
+    }
+    /**
+     * This method writes a value as a varint.
+     *
+     * @param buffer receives the bytes
+     * @param value is the value, taken as unsigned
+     */
+    static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+    /**
+     * This method writes a signed value as a zigzag encoded varint.
+     *
+     * @param buffer receives the bytes
+     * @param value is the value
+     */
+    static void putSigned(ByteBuffer buffer, long value) {
+        GameRecorder.putVarint(buffer, (value << 1) ^ (value >> 63));
+    }
+    /**
+     * This method returns the number of decisions handed to the writer.
+     *
+     * @return the number of decisions recorded
+     */
+    public long getRecorded() {
+        return recorded.sum();
+    }
+    /**
+     * This method returns the number of decisions dropped because the
+     * writer had fallen behind.
+     *
+     * @return the number of decisions dropped
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+    /**
+     * This method returns the number of blocks written so far.
+     *
+     * @return the number of blocks
+     */
+    public long getBlocks() {
+        return blocks;
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import cs5044.tetris.*;
+// -------------------------------------------------------------------------
+/**
+ *  This is the test class for GameRecorder, RecordingBrain, RecordingReader
+ *  and DecisionRecord
+ *
+ *  @author stevr76
+ *  @version 2016.08.25
+ */
+public class GameRecorderTest
+    extends student.TestCase
+{
+    private File recording;
+    /**
+     * This picks a temporary file for the recording.
+     */
+    public void setUp()
+        throws Exception
+    {
+        recording = File.createTempFile("game", ".trec");
+        recording.delete();
+    }
+    /**
+     * This removes the recording.
+     */
+    public void tearDown()
+        throws Exception
+    {
+        recording.delete();
+    }
+    /**
+     * This records two games of CleverBrain, with the recorder closed and
+     * opened again between them, so that the second game is added to the
+     * end of the first.
+     *
+     * @return the boards the brain was given, in order
+     * @throws IOException if the recording cannot be written
+     */
+    private List<Board> recordGames()
+        throws IOException
+    {
+        final List<Board> boards = new ArrayList<Board>();
+        for (int game = 0; game < 2; game++) {
+            GameRecorder recorder = new GameRecorder(recording, 1000);
+            Brain brain = new RecordingBrain(new CleverBrain(), recorder) {
+                public void bestMove(Board board, Piece piece,
+                    int heightLimit, Move move) {
+                    boards.add(board);
+                    super.bestMove(board, piece, heightLimit, move);
+                }
+            };
+            int before = boards.size();
+            new HeadlessGame(brain, 10, 24, 7 + game).play(500);
+            recorder.close();
+            assertEquals(recorder.getDropped(), 0);
+            assertEquals(recorder.getRecorded(), boards.size() - before);
+            assertTrue(recorder.getBlocks() > 0);
+        }
+        return boards;
+    }
+    /**
+     * This test ensures that every decision reads back as it was recorded,
+     * and that replaying the recording with the same brain makes the same
+     * moves.
+     */
+    public void testRecordAndReplay()
+        throws Exception
+    {
+        List<Board> boards = this.recordGames();
+        RecordingReader reader = new RecordingReader(recording);
+        int count = 0;
+        int scored = 0;
+        while (reader.next()) {
+            DecisionRecord decision = reader.getRecord();
+            Board board = boards.get(count++);
+            assertEquals(decision.getWidth(), 10);
+            assertEquals(decision.getHeight(), 24);
+            assertEquals(decision.getHeightLimit(),
+                24 - HeadlessGame.TOP_SPACE);
+            assertEquals(decision.toBitBoard().getHash(),
+                new BitBoard(board).getHash());
+            assertEquals(decision.getY(), board.rowAfterDrop(
+                decision.getMovePiece(), decision.getX()));
+            assertTrue(decision.getNanos() > 0);
+            if (!Double.isNaN(decision.getScore())) {
+                scored++;
+            }
+        }
+        assertTrue(scored > 0);
+        assertEquals(count, boards.size());
+        assertTrue(reader.getBlocks() >= 2);
+        reader.close();
+        reader = new RecordingReader(recording);
+        CleverBrain brain = new CleverBrain();
+        brain.setIncremental(false);
+        LatencyHistogram latency = new LatencyHistogram();
+        assertEquals(reader.replay(brain, latency), 0);
+        assertEquals(latency.getCount(), (long)boards.size());
+        reader.close();
+    }
+    /**
+     * This test ensures that a damaged block is found by its checksum.
+     */
+    public void testDamagedBlock()
+        throws Exception
+    {
+        this.recordGames();
+        RandomAccessFile file = new RandomAccessFile(recording, "rw");
+        file.seek(file.length() - 3);
+        int value = file.read();
+        file.seek(file.length() - 3);
+        file.write(value ^ 0x10);
+        file.close();
+        RecordingReader reader = new RecordingReader(recording);
+        try {
+            while (reader.next()) {
+                reader.getRecord();
+            }
+            fail("The damaged block was read");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().endsWith("is damaged"));
+        }
+        finally {
+            reader.close();
+        }
+    }
+    /**
+     * This test ensures that a decision that cannot be recorded is dropped
+     * rather than thrown, and that its record can still be used.
+     */
+    public void testUnrecordable()
+        throws Exception
+    {
+        GameRecorder recorder = new GameRecorder(recording, 1);
+        Board small = new Board(10, 24, "#### #### ");
+        Board tall = new Board(10, 100, "#### #### ");
+        Piece piece = Piece.getPiece(Piece.T, 0);
+        Move move = new Move();
+        new CleverBrain().bestMove(small, piece, 20, move);
+        try {
+            assertFalse(recorder.record(tall, piece, 20, move, 0));
+            assertFalse(recorder.recordWaiting(tall, piece, 20, move, 0));
+            assertEquals(recorder.getDropped(), 2);
+            assertEquals(recorder.getRecorded(), 0);
+            assertTrue(recorder.recordWaiting(small, piece, 20, move, 0));
+            assertTrue(recorder.recordWaiting(small, piece, 20, move, 0));
+        }
+        finally {
+            recorder.close();
+        }
+        assertEquals(recorder.getRecorded(), 2);
+        RecordingReader reader = new RecordingReader(recording);
+        int count = 0;
+        try {
+            while (reader.next()) {
+                count++;
+            }
+        }
+        finally {
+            reader.close();
+        }
+        assertEquals(count, 2);
+    }
+    /**
+     * This test ensures that every piece has a code that leads back to it.
+     */
+    public void testPieceCodes() {
+        for (int type = 0; type < 7; type++) {
+            Piece piece = Piece.getPiece(type, 0);
+            for (int r = 0; r < piece.numRotations(); r++) {
+                Piece rotation = piece.nthRotation(r);
+                assertEquals(DecisionRecord.pieceOf(
+                    DecisionRecord.codeOf(rotation)), rotation);
+            }
+        }
+    }
+}
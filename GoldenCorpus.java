@@ -0,0 +1,387 @@
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class builds and checks a golden corpus: a large set of positions
+ *  together with the move CleverBrain makes in each, kept so that a change
+ *  to a brain can be checked for moves that come out differently.  It can
+ *  be run from the command line:
+ *
+ *      java GoldenCorpus generate directory [-positions 200000]
+ *          [-shards 16] [-seed 5044] [-threads N]
+ *      java GoldenCorpus verify directory [-brain CleverBrain]
+ *          [-threads N]
+ *
+ *  The corpus is a directory of shards, each a recording written by
+ *  GameRecorder.  The positions of a shard come from headless games played
+ *  by referenceBrain(), a CleverBrain with its decision cache and
+ *  incremental tracking turned off, so that the golden moves come from the
+ *  plain search rather than from the shortcuts the corpus is there to
+ *  check.  Game number i of shard s is played with a seed made from
+ *  -seed, s and i, so a corpus generated with the same settings holds the
+ *  same positions and moves however many threads are used.  The shards are
+ *  generated and checked in parallel, one shard per task, each with a brain
+ *  of its own.
+ *
+ *  verify replays every position of every shard with a new brain of the
+ *  named class, CleverBrain with its default settings unless another is
+ *  named, and counts the positions where it makes a different move,
+ *  comparing the rotation, column and row.
+ *
+ *  @author stevr76
+ *  @version 2016.08.26
+ */
+public class GoldenCorpus
+{
+    //Fields
+    //the number of games a shard could play, used to keep the seeds of
+    //different shards apart
+    private static final int GAMES_PER_SHARD = 1 << 20;
+    private int positions = 200000;
+    private int shards = 16;
+    private long seed = 5044;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong differences = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private long elapsed;
+    /**
+     * This method generates or verifies a corpus, as the command line
+     * says, and prints the results.  verify exits with status 1 if any move
+     * came out differently.
+     *
+     * @param args are the command and settings described above
+     * @throws Exception if the corpus cannot be written or read
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: GoldenCorpus"
+                + " generate|verify directory [options]");
+        }
+        GoldenCorpus corpus = new GoldenCorpus();
+        String brainName = "CleverBrain";
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-positions":
+                    corpus.setPositions(Integer.parseInt(value));
+                    break;
+                case "-shards":
+                    corpus.setShards(Integer.parseInt(value));
+                    break;
+                case "-seed":
+                    corpus.setSeed(Long.parseLong(value));
+                    break;
+                case "-threads":
+                    corpus.setThreads(Integer.parseInt(value));
+                    break;
+                case "-brain":
+                    brainName = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+        File directory = new File(args[1]);
+        if (args[0].equals("generate")) {
+            corpus.generate(directory);
+            System.out.println("generated " + corpus.report());
+        }
+        else if (args[0].equals("verify")) {
+            long different = corpus.verify(directory,
+                SelfPlay.brainsNamed(brainName));
+            System.out.println(brainName + ": " + corpus.report());
+            if (different > 0) {
+                System.exit(1);
+            }
+        }
+        else {
+            throw new IllegalArgumentException("Unknown command " + args[0]);
+        }
+    }
+    /**
+     * This method sets the number of positions generate() records, split
+     * as evenly as it can be between the shards.
+     *
+     * @param positions is the number of positions
+     */
+    public void setPositions(int positions) {
+        this.positions = positions;
+    }
+    /**
+     * This method sets the number of shards generate() writes.
+     *
+     * @param shards is the number of shards, at least 1
+     */
+    public void setShards(int shards) {
+        this.shards = Math.max(1, shards);
+    }
+    /**
+     * This method sets the seed the seed of every game is made from.
+     *
+     * @param seed is the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+    /**
+     * This method sets the number of shards generated or checked at once.
+     *
+     * @param threads is the number of threads, at least 1
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+    /**
+     * This method returns the file one shard of a corpus is kept in.
+     *
+     * @param directory is the directory of the corpus
+     * @param shard is the number of the shard
+     * @return the shard's recording
+     */
+    public static File shardFile(File directory, int shard) {
+        return new File(directory, String.format("shard-%03d.trec", shard));
+    }
+    /**
+     * This method writes a new corpus into the given directory, replacing
+     * any shards with the same names.  The number of positions recorded can
+     * be read with getPositions() afterwards.
+     *
+     * @param directory is the directory to write the shards in
+     * @throws Exception if a shard cannot be written
+     */
+    public void generate(final File directory)
+        throws Exception
+    {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot make " + directory);
+        }
+        this.runShards(shards, new ShardJob() {
+            public void run(int shard)
+                throws Exception
+            {
+                int quota = positions / shards
+                    + ((shard < positions % shards) ? 1 : 0);
+                GoldenCorpus.this.generateShard(
+                    GoldenCorpus.shardFile(directory, shard), shard, quota);
+            }
+        });
+    }
+    /**
+     * This method returns a brain that makes the golden moves: a
+     * CleverBrain with the default weights and none of the shortcuts that
+     * are meant to leave its moves unchanged.
+     *
+     * @return the new brain
+     */
+    public static CleverBrain referenceBrain() {
+        CleverBrain brain = new CleverBrain();
+        brain.setCache(null);
+        brain.setIncremental(false);
+        return brain;
+    }
+    /**
+     * This method plays games with referenceBrain(), recording every
+     * decision, until the given number of positions have been recorded.
+     *
+     * @param file is the recording to write
+     * @param shard is the number of the shard
+     * @param quota is the number of positions to record
+     * @throws IOException if the recording cannot be written
+     */
+    private void generateShard(File file, int shard, final int quota)
+        throws IOException
+    {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace " + file);
+        }
+        final GameRecorder recorder = new GameRecorder(file);
+        final CleverBrain clever = GoldenCorpus.referenceBrain();
+        Brain brain = new Brain() {
+            public void bestMove(Board board, Piece piece, int heightLimit,
+                Move move) {
+                clever.bestMove(board, piece, heightLimit, move);
+                //the move that ends a game is not counted as a piece, so
+                //the last game can ask for one more move than the quota
+                if (recorder.getRecorded() == quota) {
+                    return;
+                }
+                try {
+                    recorder.recordWaiting(board, piece, heightLimit, move,
+                        0);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while"
+                        + " recording", e);
+                }
+            }
+        };
+        try {
+            for (int game = 0; recorder.getRecorded() < quota; game++) {
+                HeadlessGame headless = new HeadlessGame(brain, 10, 24,
+                    SelfPlay.seedOf(seed, shard * GAMES_PER_SHARD + game));
+                headless.play(quota - (int)recorder.getRecorded());
+            }
+        }
+        finally {
+            recorder.close();
+        }
+        checked.addAndGet(recorder.getRecorded());
+    }
+    /**
+     * This method replays every shard in the given directory with brains
+     * from the given factory and counts the positions where a brain makes a
+     * different move than the one recorded.
+     *
+     * @param directory is the directory of the corpus
+     * @param brains makes a new brain for each shard
+     * @return the number of positions with a different move
+     * @throws Exception if a shard cannot be read
+     */
+    public long verify(File directory, final Supplier<Brain> brains)
+        throws Exception
+    {
+        final File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().matches("shard-\\d+\\.trec");
+            }
+        });
+        if (files == null || files.length == 0) {
+            throw new IOException("There is no corpus in " + directory);
+        }
+        Arrays.sort(files);
+        this.runShards(files.length, new ShardJob() {
+            public void run(int shard)
+                throws Exception
+            {
+                RecordingReader reader = new RecordingReader(files[shard]);
+                try {
+                    differences.addAndGet(
+                        reader.replay(brains.get(), latency));
+                }
+                finally {
+                    reader.close();
+                }
+            }
+        });
+        checked.set(latency.getCount());
+        return differences.get();
+    }
+    /**
+     * This method runs a job for every shard on a pool of threads, and
+     * waits until they are all done.  The results of any earlier run are
+     * forgotten first.
+     *
+     * @param count is the number of shards
+     * @param job is the job to run for each
+     * @throws Exception if a job fails
+     */
+    private void runShards(int count, final ShardJob job)
+        throws Exception
+    {
+        checked.set(0);
+        differences.set(0);
+        latency.reset();
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int i = 0; i < count; i++) {
+                final int shard = i;
+                results.add(executor.submit(
+                    new Callable<Object>() {
+                        public Object call()
+                            throws Exception
+                        {
+                            job.run(shard);
+                            return null;
+                        }
+                    }));
+            }
+            for (Future<Object> result : results) {
+                result.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        elapsed = System.nanoTime() - start;
+    }
+    /**
+     * This method returns the number of positions recorded or checked by
+     * the last run.
+     *
+     * @return the number of positions
+     */
+    public long getPositions() {
+        return checked.get();
+    }
+    /**
+     * This method returns the number of positions where the last verify()
+     * found a different move.
+     *
+     * @return the number of different moves
+     */
+    public long getDifferences() {
+        return differences.get();
+    }
+    /**
+     * This method returns the times the brains took to choose each move in
+     * the last verify().
+     *
+     * @return the histogram of decision times
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+    /**
+     * This method returns how long the last run took.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsed;
+    }
+    /**
+     * This method returns the results of the last run as text.
+     *
+     * @return the report
+     */
+    public String report() {
+        double seconds = Math.max(elapsed, 1) / 1e9;
+        return String.format("%d positions, %d different moves in %.2fs"
+            + " (%.0f positions/s)", this.getPositions(),
+            this.getDifferences(), seconds, this.getPositions() / seconds);
+    }
+    // -------------------------------------------------------------------------
+    /**
+     *  This is the work done for one shard.
+     */
+    private interface ShardJob
+    {
+        /**
+         * This method does the work for one shard.
+         *
+         * @param shard is the number of the shard
+         * @throws Exception if the work fails
+         */
+        void run(int shard)
+            throws Exception;
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.File;
+import java.util.function.Supplier;
+import cs5044.tetris.*;
+// -------------------------------------------------------------------------
+/**
+ *  This is the test class for GoldenCorpus
+ *
+ *  @author stevr76
+ *  @version 2016.08.26
+ */
+public class GoldenCorpusTest
+    extends student.TestCase
+{
+    private File directory;
+    private GoldenCorpus corpus;
+    /**
+     * This makes a small corpus in a temporary directory.
+     */
+    public void setUp()
+        throws Exception
+    {
+        directory = File.createTempFile("corpus", "");
+        directory.delete();
+        corpus = new GoldenCorpus();
+        corpus.setPositions(3001);
+        corpus.setShards(3);
+        corpus.setThreads(2);
+        corpus.generate(directory);
+    }
+    /**
+     * This removes the corpus.
+     */
+    public void tearDown()
+        throws Exception
+    {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+    /**
+     * This test ensures that the corpus holds the positions asked for, and
+     * that CleverBrain makes every move in it again, with or without the
+     * shortcuts it takes.
+     */
+    public void testVerifyCleverBrain()
+        throws Exception
+    {
+        assertEquals(corpus.getPositions(), 3001);
+        assertTrue(GoldenCorpus.shardFile(directory, 2).exists());
+        assertEquals(corpus.verify(directory,
+            SelfPlay.brainsNamed("CleverBrain")), 0);
+        assertEquals(corpus.getPositions(), 3001);
+        assertEquals(corpus.getLatency().getCount(), 3001);
+        corpus.setThreads(1);
+        assertEquals(corpus.verify(directory, new Supplier<Brain>() {
+            public Brain get() {
+                return GoldenCorpus.referenceBrain();
+            }
+        }), 0);
+    }
+    /**
+     * This test ensures that a brain that plays differently is caught.
+     */
+    public void testVerifyOtherBrain()
+        throws Exception
+    {
+        assertTrue(corpus.verify(directory,
+            SelfPlay.brainsNamed("LameBrain")) > 0);
+        assertEquals(corpus.getDifferences(),
+            corpus.verify(directory, SelfPlay.brainsNamed("LameBrain")));
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.Random;
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class plays one game of Tetris with a Brain and no window, as fast
+ *  as the brain can choose moves.  It follows the rules of JTetris: every
+ *  piece is one of the seven types, picked at random in its first rotation;
+ *  the brain chooses a rotation and column; the piece is dropped straight
+ *  down there; full rows are cleared; and the game ends when the stack
+ *  reaches the top rows of the board where new pieces appear.
+ *
+ *  The pieces come from a Random with the given seed, so two games with the
+ *  same seed and the same brain are the same game.  The board is kept as a
+ *  BitBoard, and the brain is handed a fresh Board copy of it for every
+ *  piece, so a brain cannot change the game by changing its board.  A brain
+ *  that is also a BitBoardBrain is handed a BitBoard copy instead, which is
+ *  only a few array copies rather than a Board built from strings.
+ *
+ *  @author stevr76
+ *  @version 2016.08.30
+ */
+public class HeadlessGame
+{
+    //Fields
+    /**
+     * The number of rows at the top of the board that are kept clear for
+     * new pieces to appear in, the same as in JTetris.
+     */
+    public static final int TOP_SPACE = 4;
+    private final Brain brain;
+    private final BitBoardBrain bitBrain;
+    private final Random random;
+    private final BitBoard board;
+    private final BitBoard bitView;
+    private final int heightLimit;
+    private final Move move = new Move();
+    private LatencyHistogram latency = null;
+    private int pieces;
+    private int linesCleared;
+    private boolean over;
+    /**
+     * This constructor starts a game on an empty board.
+     *
+     * @param brain is the brain that chooses every move
+     * @param width is the number of columns in the board
+     * @param height is the number of rows in the board, including the top
+     * rows where new pieces appear
+     * @param seed picks the order of the pieces
+     */
+    public HeadlessGame(Brain brain, int width, int height, long seed) {
+        this.brain = brain;
+        bitBrain = (brain instanceof BitBoardBrain) ? (BitBoardBrain)brain
+            : null;
+        random = new Random(seed);
+        board = new BitBoard(width, height);
+        bitView = new BitBoard(width, height);
+        heightLimit = height - TOP_SPACE;
+    }
+    /**
+     * This method sets the histogram the time of each of the brain's
+     * decisions is recorded in.  Nothing is recorded when it is null, which
+     * it is to begin with.
+     *
+     * @param latency is the histogram to record into, or null
+     */
+    public void setLatency(LatencyHistogram latency) {
+        this.latency = latency;
+    }
+    /**
+     * This method plays one piece: it picks the next piece, asks the brain
+     * where it goes, drops it there and clears any full rows.  The game is
+     * over when the brain gives a move that does not fit on the board, or
+     * when the stack grows into the top rows.
+     *
+     * @return true if the game can go on, false if it is over
+     */
+    public boolean step() {
+        if (over) {
+            return false;
+        }
+        Piece[] types = PieceShape.getPieceTypes();
+        Piece piece = types[random.nextInt(types.length)];
+        Board view = null;
+        if (bitBrain != null) {
+            bitView.copyFrom(board);
+        }
+        else {
+            view = board.toBoard();
+        }
+        long start = System.nanoTime();
+        if (bitBrain != null) {
+            bitBrain.bestMove(bitView, piece, heightLimit, move);
+        }
+        else {
+            brain.bestMove(view, piece, heightLimit, move);
+        }
+        if (latency != null) {
+            latency.record(System.nanoTime() - start);
+        }
+        Piece chosen = move.piece();
+        int x = move.x();
+        if (chosen == null || x < 0
+            || x + chosen.getWidth() > board.getWidth()) {
+            over = true;
+            return false;
+        }
+        //the piece is dropped from the top, wherever the brain said it
+        //would end up
+        PieceShape shape = PieceShape.of(chosen);
+        int y = board.getLandingRow(shape, x);
+        if (y + shape.getHeight() > board.getHeight()) {
+            over = true;
+            return false;
+        }
+        board.place(shape, x, y);
+        linesCleared += board.clearRows();
+        pieces++;
+        if (board.getLargestHeight() > heightLimit) {
+            over = true;
+        }
+        return !over;
+    }
+    /**
+     * This method plays until the game is over or the given number of
+     * pieces have been played.
+     *
+     * @param maxPieces is the most pieces to play, or 0 for no limit
+     * @return the number of pieces played in the whole game so far
+     */
+    public int play(int maxPieces) {
+        while ((maxPieces == 0 || pieces < maxPieces) && this.step()) {
+            //every step plays one piece
+        }
+        return pieces;
+    }
+    /**
+     * This method returns the number of pieces played so far.
+     *
+     * @return the number of pieces
+     */
+    public int getPieces() {
+        return pieces;
+    }
+    /**
+     * This method returns the number of rows cleared so far.
+     *
+     * @return the number of rows cleared
+     */
+    public int getLinesCleared() {
+        return linesCleared;
+    }
+    /**
+     * This method returns whether the game has ended.
+     *
+     * @return true if no more pieces can be played
+     */
+    public boolean isOver() {
+        return over;
+    }
+    /**
+     * This method returns the board the game is played on.  It must not be
+     * changed.
+     *
+     * @return the board
+     */
+    public BitBoard getBoard() {
+        return board;
+    }
+}
@@ -0,0 +1,117 @@
+import cs5044.tetris.*;
+// -------------------------------------------------------------------------
+/**
+ *  This is the test class for HeadlessGame, SelfPlay and LatencyHistogram
+ *
+ *  @author stevr76
+ *  @version 2016.08.19
+ */
+public class HeadlessGameTest
+    extends student.TestCase
+{
+    /**
+     * This sets up each test.  There is nothing shared between the tests.
+     */
+    public void setUp()
+        throws Exception
+    {
+        //nothing to set up
+    }
+    /**
+     * This test ensures that two games with the same seed are the same
+     * game, and that CleverBrain plays well enough to clear rows.
+     */
+    public void testSameSeedSameGame() {
+        HeadlessGame first = new HeadlessGame(new CleverBrain(), 10, 24, 7);
+        HeadlessGame second = new HeadlessGame(new CleverBrain(), 10, 24, 7);
+        assertEquals(first.play(100), 100);
+        assertEquals(second.play(100), 100);
+        assertEquals(first.getLinesCleared(), second.getLinesCleared());
+        assertEquals(first.getBoard().getHash(),
+            second.getBoard().getHash());
+        assertTrue(first.getLinesCleared() > 20);
+        assertFalse(first.isOver());
+    }
+    /**
+     * This test ensures that a game ends when the stack reaches the top
+     * rows, and that nothing more is played after that.
+     */
+    public void testGameOver() {
+        HeadlessGame game = new HeadlessGame(new LameBrain(), 10, 24, 7);
+        LatencyHistogram latency = new LatencyHistogram();
+        game.setLatency(latency);
+        int pieces = game.play(0);
+        assertTrue(game.isOver());
+        assertTrue(pieces > 0);
+        assertTrue(pieces < 24);
+        assertTrue(latency.getCount() >= pieces);
+        assertFalse(game.step());
+        assertEquals(game.getPieces(), pieces);
+    }
+    /**
+     * This test ensures that the totals of a self-play run do not depend on
+     * the number of threads.
+     */
+    public void testSelfPlayThreads()
+        throws Exception
+    {
+        SelfPlay single = new SelfPlay(SelfPlay.brainsNamed("CleverBrain"));
+        single.setGames(8);
+        single.setThreads(1);
+        single.setMaxPieces(100);
+        single.run();
+        SelfPlay many = new SelfPlay(SelfPlay.brainsNamed("CleverBrain"));
+        many.setGames(8);
+        many.setThreads(4);
+        many.setMaxPieces(100);
+        many.run();
+        assertEquals(many.getTotalPieces(), single.getTotalPieces());
+        assertEquals(many.getTotalLines(), single.getTotalLines());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(many.getLinesPerGame()[i],
+                single.getLinesPerGame()[i]);
+        }
+        assertEquals(single.getLatency().getCount(), 800L);
+    }
+    /**
+     * This test ensures that self-play will not take both a brain class and
+     * a weight profile, since the profile would quietly replace the brain.
+     */
+    public void testSelfPlayBrainAndWeights()
+        throws Exception
+    {
+        try {
+            SelfPlay.main(new String[] {"-brain", "CleverBrain",
+                "-weights", "best.properties"});
+            fail("-brain and -weights should not be allowed together");
+        }
+        catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("-brain"));
+        }
+    }
+    /**
+     * This test ensures that the histogram finds percentiles to within the
+     * width of its buckets.
+     */
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(histogram.getPercentile(50), 0L);
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(histogram.getCount(), 100000L);
+        assertEquals(histogram.getMax(), 100000L);
+        assertEquals(histogram.getMean(), 50000.5, 0.001);
+        long median = histogram.getPercentile(50);
+        assertTrue(median >= 50000 && median <= 51600);
+        assertEquals(histogram.getPercentile(100), 100000L);
+        histogram.record(5);
+        assertEquals(histogram.getPercentile(0.0005), 1L);
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(1000000);
+        histogram.add(other);
+        assertEquals(histogram.getMax(), 1000000L);
+        histogram.reset();
+        assertEquals(histogram.getCount(), 0L);
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class wraps any Brain and times every call to bestMove.  The times
+ *  are counted in a LatencyHistogram, so recording one is a few atomic adds
+ *  and the wrapped brain can be shared between threads the same as before.
+ *  When the wrapped brain is a CleverBrain, the time of each phase of its
+ *  bestMove is recorded as well, in a PhaseTimings.
+ *
+ *  The times can be read with the getters, watched over JMX after
+ *  register() is called, or printed every so often with startDump().  When
+ *  timing is turned off with setEnabled(false), bestMove goes straight to
+ *  the wrapped brain and CleverBrain's phase timing is turned off too, so
+ *  the wrapper costs one check per call.
+ *
+ *  Several wrappers can record into the same histograms, which is how
+ *  SelfPlay times a brain per game in one place.
+ *
+ *  @author stevr76
+ *  @version 2016.08.20
+ */
+public class InstrumentedBrain
+    implements Brain, InstrumentedBrainMBean
+{
+    //Fields
+    private final Brain brain;
+    private final LatencyHistogram decisions;
+    private final PhaseTimings phases;
+    private volatile boolean enabled;
+    private ScheduledExecutorService dumper = null;
+    /**
+     * This constructor wraps the given brain with histograms of its own,
+     * and turns timing on.
+     *
+     * @param brain is the brain to time
+     */
+    public InstrumentedBrain(Brain brain) {
+        this(brain, new LatencyHistogram(), new PhaseTimings());
+    }
+    /**
+     * This constructor wraps the given brain, recording into the given
+     * histograms, and turns timing on.
+     *
+     * @param brain is the brain to time
+     * @param decisions receives the time of every decision
+     * @param phases receives the time of every phase, if the brain is a
+     * CleverBrain
+     */
+    public InstrumentedBrain(Brain brain, LatencyHistogram decisions,
+        PhaseTimings phases) {
+        this.brain = brain;
+        this.decisions = decisions;
+        this.phases = phases;
+        this.setEnabled(true);
+    }
+    /**
+     * This method asks the wrapped brain for the best move, timing the call
+     * if timing is on.
+     *
+     * @param board is the current board
+     * @param piece is the current piece
+     * @param heightLimit is the height limit of the board
+     * @param move receives the move
+     */
+    public void bestMove(
+        Board board, Piece piece, int heightLimit, Move move)
+    {
+        if (!enabled) {
+            brain.bestMove(board, piece, heightLimit, move);
+            return;
+        }
+        long start = System.nanoTime();
+        brain.bestMove(board, piece, heightLimit, move);
+        decisions.record(System.nanoTime() - start);
+    }
+    /**
+     * This method returns the wrapped brain.
+     *
+     * @return the brain being timed
+     */
+    public Brain getBrain() {
+        return brain;
+    }
+    /**
+     * This method returns the histogram of decision times.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getLatency() {
+        return decisions;
+    }
+    /**
+     * This method returns the histograms of the phase times.  They stay
+     * empty unless the wrapped brain is a CleverBrain.
+     *
+     * @return the phase timings
+     */
+    public PhaseTimings getPhaseTimings() {
+        return phases;
+    }
+    /**
+     * This method returns whether decisions are being timed.
+     *
+     * @return true if timing is on
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    /**
+     * This method turns timing on or off.
+     *
+     * @param enabled is true to time decisions
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (brain instanceof CleverBrain) {
+            ((CleverBrain)brain).setPhaseTimings(enabled ? phases : null);
+        }
+    }
+    /**
+     * This method returns the number of decisions timed.
+     *
+     * @return the number of decisions
+     */
+    public long getDecisions() {
+        return decisions.getCount();
+    }
+    /**
+     * This method returns the mean decision time.
+     *
+     * @return the time in microseconds
+     */
+    public double getMeanMicros() {
+        return decisions.getMean() / 1000.0;
+    }
+    /**
+     * This method returns the median decision time.
+     *
+     * @return the time in microseconds
+     */
+    public double getP50Micros() {
+        return decisions.getPercentile(50) / 1000.0;
+    }
+    /**
+     * This method returns the 99th percentile decision time.
+     *
+     * @return the time in microseconds
+     */
+    public double getP99Micros() {
+        return decisions.getPercentile(99) / 1000.0;
+    }
+    /**
+     * This method returns the 99.9th percentile decision time.
+     *
+     * @return the time in microseconds
+     */
+    public double getP999Micros() {
+        return decisions.getPercentile(99.9) / 1000.0;
+    }
+    /**
+     * This method returns the longest decision time.
+     *
+     * @return the time in microseconds
+     */
+    public double getMaxMicros() {
+        return decisions.getMax() / 1000.0;
+    }
+    /**
+     * This method returns the decision and phase times as text, one line
+     * each.
+     *
+     * @return the summary
+     */
+    public String dump() {
+        String text = "decision  " + decisions;
+        String phaseText = phases.toString();
+        if (phaseText.length() > 0) {
+            text += System.lineSeparator() + phaseText;
+        }
+        return text;
+    }
+    /**
+     * This method forgets every time recorded so far.
+     */
+    public void reset() {
+        decisions.reset();
+        phases.reset();
+    }
+    /**
+     * This method registers this wrapper with the platform MBean server, so
+     * that it shows up in JMX clients under tetris:type=Brain.
+     *
+     * @param name is the name to show it under
+     * @throws JMException if the name is taken or not valid
+     */
+    public void register(String name)
+        throws JMException
+    {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+            new ObjectName("tetris:type=Brain,name=" + name));
+    }
+    /**
+     * This method starts printing dump() to the given stream every so often,
+     * on a daemon thread of its own.  Any earlier dump is stopped first.
+     *
+     * @param period is the time between dumps
+     * @param unit is the unit of the period
+     * @param out is the stream to print to
+     */
+    public synchronized void startDump(long period, TimeUnit unit,
+        final PrintStream out) {
+        this.stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "brain latency dump");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        dumper.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                out.println(InstrumentedBrain.this.dump());
+            }
+        }, period, period, unit);
+    }
+    /**
+     * This method stops the dumps started by startDump().
+     */
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+// -------------------------------------------------------------------------
+/**
+ *  This is the management interface of InstrumentedBrain, through which
+ *  its decision times can be watched with JConsole or any other JMX client.
+ *  Times are in microseconds.
+ *
+ *  @author stevr76
+ *  @version 2016.08.20
+ */
+public interface InstrumentedBrainMBean
+{
+    /**
+     * This method returns whether decisions are being timed.
+     *
+     * @return true if timing is on
+     */
+    boolean isEnabled();
+    /**
+     * This method turns timing on or off.
+     *
+     * @param enabled is true to time decisions
+     */
+    void setEnabled(boolean enabled);
+    /**
+     * This method returns the number of decisions timed.
+     *
+     * @return the number of decisions
+     */
+    long getDecisions();
+    /**
+     * This method returns the mean decision time.
+     *
+     * @return the time in microseconds
+     */
+    double getMeanMicros();
+    /**
+     * This method returns the median decision time.
+     *
+     * @return the time in microseconds
+     */
+    double getP50Micros();
+    /**
+     * This method returns the 99th percentile decision time.
+     *
+     * @return the time in microseconds
+     */
+    double getP99Micros();
+    /**
+     * This method returns the 99.9th percentile decision time.
+     *
+     * @return the time in microseconds
+     */
+    double getP999Micros();
+    /**
+     * This method returns the longest decision time.
+     *
+     * @return the time in microseconds
+     */
+    double getMaxMicros();
+    /**
+     * This method returns the decision and phase times as text.
+     *
+     * @return the summary
+     */
+    String dump();
+    /**
+     * This method forgets every time recorded so far.
+     */
+    void reset();
+}
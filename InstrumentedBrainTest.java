@@ -0,0 +1,106 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.ObjectName;
+import cs5044.tetris.*;
+// -------------------------------------------------------------------------
+/**
+ *  This is the test class for InstrumentedBrain and PhaseTimings
+ *
+ *  @author stevr76
+ *  @version 2016.08.20
+ */
+public class InstrumentedBrainTest
+    extends student.TestCase
+{
+    private Board board;
+    private Piece piece;
+    private Move move;
+    /**
+     * This sets up a board with a few blocks on it.
+     */
+    public void setUp()
+        throws Exception
+    {
+        board = new Board(10, 24,
+            "#  #   ## ",
+            "## ####  #"
+        );
+        piece = Piece.getPiece(Piece.T, 0);
+        move = new Move();
+    }
+    /**
+     * This test ensures that every decision is timed, that CleverBrain's
+     * phases are timed, and that the move is the one the brain would choose
+     * without the wrapper.
+     */
+    public void testTiming() {
+        CleverBrain cleverBrain = new CleverBrain();
+        cleverBrain.setCache(null);
+        InstrumentedBrain timed = new InstrumentedBrain(cleverBrain);
+        for (int i = 0; i < 10; i++) {
+            timed.bestMove(board, piece, 20, move);
+        }
+        Move plain = new Move();
+        new CleverBrain().bestMove(board, piece, 20, plain);
+        assertEquals(move.x(), plain.x());
+        assertEquals(move.piece(), plain.piece());
+        assertEquals(timed.getDecisions(), 10L);
+        PhaseTimings phases = timed.getPhaseTimings();
+        assertEquals(phases.getHistogram(PhaseTimings.PREPARE).getCount(),
+            10L);
+        assertEquals(phases.getHistogram(PhaseTimings.SCORE).getCount(),
+            10L);
+        assertEquals(phases.getHistogram(PhaseTimings.TALLY).getCount(),
+            10L);
+        assertEquals(
+            phases.getHistogram(PhaseTimings.LOOKAHEAD).getCount(), 0L);
+        assertTrue(timed.getMaxMicros() >= timed.getP50Micros());
+        assertTrue(timed.dump().contains("score"));
+        timed.reset();
+        assertEquals(timed.getDecisions(), 0L);
+    }
+    /**
+     * This test ensures that turning timing off records nothing and takes
+     * the phase timings off the brain.
+     */
+    public void testDisabled() {
+        CleverBrain cleverBrain = new CleverBrain();
+        InstrumentedBrain timed = new InstrumentedBrain(cleverBrain);
+        assertNotNull(cleverBrain.getPhaseTimings());
+        timed.setEnabled(false);
+        assertNull(cleverBrain.getPhaseTimings());
+        timed.bestMove(board, piece, 20, move);
+        assertEquals(timed.getDecisions(), 0L);
+        assertFalse(timed.isEnabled());
+        InstrumentedBrain lame = new InstrumentedBrain(new LameBrain());
+        lame.bestMove(board, piece, 20, move);
+        assertEquals(lame.getDecisions(), 1L);
+        assertEquals(lame.dump().indexOf("score"), -1);
+    }
+    /**
+     * This test ensures that the times can be read over JMX and are dumped
+     * on a schedule.
+     */
+    public void testJmxAndDump()
+        throws Exception
+    {
+        InstrumentedBrain timed = new InstrumentedBrain(new CleverBrain());
+        timed.bestMove(board, piece, 20, move);
+        timed.register("test");
+        ObjectName name = new ObjectName("tetris:type=Brain,name=test");
+        assertEquals(ManagementFactory.getPlatformMBeanServer()
+            .getAttribute(name, "Decisions"), 1L);
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        timed.startDump(10, TimeUnit.MILLISECONDS, out);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (bytes.size() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        timed.stopDump();
+        assertTrue(bytes.toString().contains("decision"));
+    }
+}
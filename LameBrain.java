@@ -1,7 +1,7 @@
 import cs5044.tetris.*;
 
 public class LameBrain
-    implements Brain
+    implements Brain, BitBoardBrain
 {
 
     public void bestMove(
@@ -19,4 +19,14 @@ public class LameBrain
         // Make up a score for this move (lower scores are better)
         move.setScore(100000.0);
     }
+
+    public void bestMove(
+        BitBoard board, Piece piece, int heightLimit, Move move)
+    {
+        // The same move as for a Board, which only needs the width
+        move.setPiece(piece);
+        move.setX((board.getWidth() - piece.getWidth()) / 2);
+        move.setY(0);
+        move.setScore(100000.0);
+    }
 }
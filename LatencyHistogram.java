@@ -0,0 +1,172 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class counts how long something took, in nanoseconds, so that the
+ *  percentiles of the times can be reported without keeping every time.
+ *
+ *  The times are counted in buckets the way HdrHistogram does it: every
+ *  power of two is split into 32 equal buckets, so a bucket is never wider
+ *  than about 3% of the times in it, and times from one nanosecond up to
+ *  hundreds of years fit in 1,888 counters.  Recording a time is a few
+ *  atomic adds and never takes a lock, so many threads can record into the
+ *  same histogram at once.
+ *
+ *  @author stevr76
+ *  @version 2016.08.19
+ */
+public class LatencyHistogram
+{
+    //Fields
+    //the number of bits of each time, after its leading one, that pick the
+    //bucket within its power of two
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    /**
+     * This method counts one time.  Negative times are counted as zero.
+     *
+     * @param nanos is the time in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long largest = max.get();
+        while (nanos > largest && !max.compareAndSet(largest, nanos)) {
+            largest = max.get();
+        }
+    }
+    /**
+     * This method adds every time counted by another histogram to this one.
+     *
+     * @param other is the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucket = other.counts.get(i);
+            if (bucket != 0) {
+                counts.addAndGet(i, bucket);
+            }
+        }
+        count.addAndGet(other.count.get());
+        total.addAndGet(other.total.get());
+        long largest = max.get();
+        long otherMax = other.max.get();
+        while (otherMax > largest && !max.compareAndSet(largest, otherMax)) {
+            largest = max.get();
+        }
+    }
+    /**
+     * This method forgets every time counted so far.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+    /**
+     * This method returns the number of times counted.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count.get();
+    }
+    /**
+     * This method returns the longest time counted.
+     *
+     * @return the largest time in nanoseconds, or 0 if there are none
+     */
+    public long getMax() {
+        return max.get();
+    }
+    /**
+     * This method returns the average of the times counted.
+     *
+     * @return the mean time in nanoseconds, or 0 if there are none
+     */
+    public double getMean() {
+        long n = count.get();
+        return (n == 0) ? 0 : (double)total.get() / n;
+    }
+    /**
+     * This method returns the time that the given percentage of the times
+     * are at or below.  The answer is the top of the bucket the time falls
+     * in, so it may be up to about 3% larger than the real time.
+     *
+     * @param percentile is the percentage, from 0 to 100
+     * @return the time in nanoseconds, or 0 if there are none
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long)Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= wanted) {
+                return Math.min(highestIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+    /**
+     * This method returns the usual percentiles as one line of text, in
+     * microseconds.
+     *
+     * @return the summary
+     */
+    public String toString() {
+        return String.format("n=%d mean=%.1fus p50=%.1fus p90=%.1fus"
+            + " p99=%.1fus p99.9=%.1fus max=%.1fus", this.getCount(),
+            this.getMean() / 1000.0, this.getPercentile(50) / 1000.0,
+            this.getPercentile(90) / 1000.0, this.getPercentile(99) / 1000.0,
+            this.getPercentile(99.9) / 1000.0, this.getMax() / 1000.0);
+    }
+    /**
+     * This method returns the bucket a time is counted in.
+     *
+     * @param nanos is the time, which must not be negative
+     * @return the bucket number
+     */
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int)nanos;
+        }
+        //the position of the leading one picks the power of two, and the
+        //bits after it pick the bucket within it
+        int power = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int)(nanos >>> (power - SUB_BITS)) - SUB_BUCKETS;
+        return (power - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+    /**
+     * This method returns the longest time that is counted in the given
+     * bucket.
+     *
+     * @param bucket is the bucket number
+     * @return the time in nanoseconds
+     */
+    private static long highestIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int power = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long lowest = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS)
+            << (power - SUB_BITS);
+        return lowest + (1L << (power - SUB_BITS)) - 1;
+    }
+}
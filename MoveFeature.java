@@ -0,0 +1,55 @@
+// -------------------------------------------------------------------------
+/**
+ *  This is one feature of a candidate move, such as the holes it makes or
+ *  the rows it clears, that a FeaturePipeline can add to the move's score.
+ *
+ *  A feature does not look at the board itself.  It says which parts of the
+ *  move it needs, and reads them from a FeaturePass, which works out every
+ *  part any feature of the pipeline needs in one pass over the columns and
+ *  rows the piece lands in.  However many features read a part, it is only
+ *  worked out once for each move.
+ *
+ *  A feature must not keep any state of its own, since the moves of one
+ *  piece may be scored on several threads at once.
+ *
+ *  @author stevr76
+ *  @version 2016.08.28
+ */
+public interface MoveFeature
+{
+    /**
+     * The part of a move made from the piece's own columns: the height of
+     * each after the move, the holes the piece makes and covers, and the
+     * height of the stack.
+     */
+    int COLUMNS = 1;
+    /**
+     * The part of a move made from the rows the piece lands in: each row as
+     * it would look after the move, and the number of full rows.
+     */
+    int ROWS = 2;
+    /**
+     * The height of every column of the board after the move.
+     */
+    int SURFACE = 4;
+    /**
+     * This method returns the name of the feature, which should be unique
+     * within a pipeline.
+     *
+     * @return the name
+     */
+    String getName();
+    /**
+     * This method returns the parts of a move the feature reads.
+     *
+     * @return COLUMNS, ROWS and SURFACE or'ed together
+     */
+    int getNeeds();
+    /**
+     * This method works out the feature for one move.
+     *
+     * @param pass holds the parts of the move given by getNeeds()
+     * @return the value of the feature
+     */
+    int evaluate(FeaturePass pass);
+}
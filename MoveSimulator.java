@@ -0,0 +1,221 @@
+// -------------------------------------------------------------------------
+/**
+ *  This class works out what a candidate move would do to the board without
+ *  placing it anywhere.  Everything is computed from the pre-move column
+ *  heights and holes and from the piece's skirt, so trying a move costs time
+ *  in proportion to the width of the piece rather than the size of the
+ *  board, and nothing is written while a move is tried.  Because of that,
+ *  one simulator can be shared by several threads trying different moves.
+ *
+ *  The numbers returned are the same ones CleverBrain used to read off the
+ *  board after calling place(): the landing row is the row rowAfterDrop()
+ *  gives, and a column's new height is the top of the piece in that column.
+ *
+ *  @author stevr76
+ *  @version 2016.08.29
+ */
+public class MoveSimulator
+{
+    //Fields
+    private BitBoard board;
+    private int[] preHoles;
+    private int[] preHeights;
+    private int preMaxHeight;
+    private int preFullRows;
+    private final CaveEvaluator caves = new CaveEvaluator();
+    /**
+     * This constructor makes a simulator with no board.  load() must be
+     * called before any moves are tried.
+     */
+    public MoveSimulator() {
+        //the board is given to load()
+    }
+    /**
+     * This constructor records the pre-move state of the board.
+     *
+     * @param board is the packed board before the move.  It is only read.
+     * @param preHoles contains the number of holes in each column
+     * @param preHeights contains the height of each column
+     */
+    public MoveSimulator(BitBoard board, int[] preHoles, int[] preHeights) {
+        this.load(board, preHoles, preHeights);
+    }
+    /**
+     * This method records the pre-move state of a board, replacing the board
+     * the simulator was using before.  It must not be called while moves are
+     * being tried on another thread.
+     *
+     * @param board is the packed board before the move.  It is only read.
+     * @param preHoles contains the number of holes in each column
+     * @param preHeights contains the height of each column
+     */
+    public void load(BitBoard board, int[] preHoles, int[] preHeights) {
+        this.board = board;
+        this.preHoles = preHoles;
+        this.preHeights = preHeights;
+        int max = 0;
+        for (int i = 0; i < preHeights.length; i++) {
+            if (preHeights[i] > max) {
+                max = preHeights[i];
+            }
+        }
+        preMaxHeight = max;
+        preFullRows = board.getFullRowCount();
+        caves.load(preHeights);
+    }
+    /**
+     * This method returns the packed board before the move.  It must not be
+     * changed.
+     *
+     * @return the board
+     */
+    public BitBoard getBoard() {
+        return board;
+    }
+    /**
+     * This method returns the number of columns in the board.
+     *
+     * @return the width of the board
+     */
+    public int getWidth() {
+        return preHeights.length;
+    }
+    /**
+     * This method returns the height of the tallest column before the move.
+     *
+     * @return the pre-move max height
+     */
+    public int getPreMaxHeight() {
+        return preMaxHeight;
+    }
+    /**
+     * This method returns the number of rows that were already full before
+     * the move.  Every move clears these as well as any it fills itself.
+     *
+     * @return the pre-move full row count
+     */
+    public int getPreFullRows() {
+        return preFullRows;
+    }
+    /**
+     * This method returns the pre-move column heights.
+     *
+     * @return the array of heights, one entry per column
+     */
+    public int[] getPreHeights() {
+        return preHeights;
+    }
+    /**
+     * This method returns the pre-move hole counts.
+     *
+     * @return the array of hole counts, one entry per column
+     */
+    public int[] getPreHoles() {
+        return preHoles;
+    }
+    /**
+     * This method returns the row the piece comes to rest on when it is
+     * dropped with its left side in the given column.
+     *
+     * @param shape is the piece in question
+     * @param column is the left-most column of the piece
+     * @return the landing row of the bottom of the piece
+     */
+    public int getLandingRow(PieceShape shape, int column) {
+        return shape.getLandingRow(preHeights, column);
+    }
+    /**
+     * This method returns the cave level of a move, the same as
+     * CleverBrain.getCaveLevel() gives for the pre-move heights, from the
+     * neighbour sums worked out when the board was loaded.
+     *
+     * @param leftHeight is the post-move height of the left-most column of
+     * the piece
+     * @param rightHeight is the post-move height of the right-most column of
+     * the piece
+     * @param column is the left-most column of the piece
+     * @param pieceWidth is the width of the piece
+     * @return the cave level
+     */
+    public int getCaveLevel(int leftHeight, int rightHeight, int column,
+        int pieceWidth) {
+        return caves.getCaveLevel(leftHeight, rightHeight, column,
+            pieceWidth);
+    }
+    /**
+     * This method returns the height one of the piece's columns will have
+     * after the piece lands.
+     *
+     * @param shape is the piece in question
+     * @param row is the landing row of the piece
+     * @param pieceColumn is the column of the piece, counted from its left
+     * @return the new height of that board column
+     */
+    public int getNewColumnHeight(PieceShape shape, int row, int pieceColumn) {
+        return row + shape.getTop(pieceColumn);
+    }
+    /**
+     * This method returns the number of holes the piece would cover up, which
+     * are the empty cells between each column's old height and the skirt of
+     * the piece, plus any gaps inside the piece itself.
+     *
+     * @param shape is the piece in question
+     * @param column is the left-most column of the piece
+     * @param row is the landing row of the piece
+     * @return the number of new holes
+     */
+    public int getNewHoleCount(PieceShape shape, int column, int row) {
+        int newHoles = 0;
+        for (int i = 0; i < shape.getWidth(); i++) {
+            newHoles += row + shape.getSkirt(i) - preHeights[column + i]
+                + shape.getGaps(i);
+        }
+        return newHoles;
+    }
+    /**
+     * This method returns the number of pre-move holes under the piece.
+     *
+     * @param shape is the piece in question
+     * @param column is the left-most column of the piece
+     * @return the number of old holes
+     */
+    public int getOldHoleCount(PieceShape shape, int column) {
+        int oldHoles = 0;
+        for (int i = column; i < column + shape.getWidth(); i++) {
+            oldHoles += preHoles[i];
+        }
+        return oldHoles;
+    }
+    /**
+     * This method returns the max height of the board after the move.
+     *
+     * @param shape is the piece in question
+     * @param row is the landing row of the piece
+     * @return the post-move max height
+     */
+    public int getMaxHeight(PieceShape shape, int row) {
+        return Math.max(preMaxHeight, row + shape.getHeight());
+    }
+    /**
+     * This method returns the number of full rows the board would have after
+     * the move.  Rows that were already full are counted once up front, so
+     * only the rows the piece lands in are looked at.
+     *
+     * @param shape is the piece in question
+     * @param column is the left-most column of the piece
+     * @param row is the landing row of the piece
+     * @return the number of rows eliminated by the move
+     */
+    public int getRowKillCount(PieceShape shape, int column, int row) {
+        int rowKill = preFullRows;
+        int top = Math.min(row + shape.getHeight(), board.getHeight());
+        for (int i = row; i < top; i++) {
+            if (!board.isRowFull(i) && (board.getRow(i)
+                | (shape.getRowMask(i - row) << column))
+                == board.getFullRow()) {
+                rowKill++;
+            }
+        }
+        return rowKill;
+    }
+}
@@ -0,0 +1,116 @@
+// -------------------------------------------------------------------------
+/**
+ *  This class holds one LatencyHistogram for each phase of a call to
+ *  CleverBrain.bestMove, so that it can be seen which phase the time goes
+ *  to.  The phases are:
+ *
+ *      PREPARE    copying the board and finding the pre-move heights and
+ *                 holes, and looking in the cache
+ *      SCORE      trying every rotation in every column
+ *      RANK       ranking the scores of the moves
+ *      TALLY      adding up the ranks into a final score for each move
+ *      LOOKAHEAD  following up the best moves with the next piece
+ *
+ *  A call that finds its answer in the cache only records PREPARE, and
+ *  LOOKAHEAD is only recorded when lookahead is on.  The follow-up moves
+ *  of a lookahead search are timed as part of LOOKAHEAD, not as phases of
+ *  their own.
+ *
+ *  @author stevr76
+ *  @version 2016.08.20
+ */
+public class PhaseTimings
+{
+    //Fields
+    /**
+     * The phase that prepares the board.
+     */
+    public static final int PREPARE = 0;
+    /**
+     * The phase that tries every move.
+     */
+    public static final int SCORE = 1;
+    /**
+     * The phase that ranks the scores.
+     */
+    public static final int RANK = 2;
+    /**
+     * The phase that tallies the ranks.
+     */
+    public static final int TALLY = 3;
+    /**
+     * The phase that looks one piece ahead.
+     */
+    public static final int LOOKAHEAD = 4;
+    /**
+     * The number of phases.
+     */
+    public static final int PHASES = 5;
+    private static final String[] NAMES = {
+        "prepare", "score", "rank", "tally", "lookahead"
+    };
+    private final LatencyHistogram[] histograms =
+        new LatencyHistogram[PHASES];
+    /**
+     * This constructor makes an empty histogram for every phase.
+     */
+    public PhaseTimings() {
+        for (int i = 0; i < PHASES; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+    /**
+     * This method counts one time for the given phase.
+     *
+     * @param phase is one of the phase numbers above
+     * @param nanos is the time the phase took in nanoseconds
+     */
+    public void record(int phase, long nanos) {
+        histograms[phase].record(nanos);
+    }
+    /**
+     * This method returns the histogram of the given phase.
+     *
+     * @param phase is one of the phase numbers above
+     * @return the histogram of that phase
+     */
+    public LatencyHistogram getHistogram(int phase) {
+        return histograms[phase];
+    }
+    /**
+     * This method returns the name of the given phase.
+     *
+     * @param phase is one of the phase numbers above
+     * @return the name of that phase
+     */
+    public static String getName(int phase) {
+        return NAMES[phase];
+    }
+    /**
+     * This method forgets every time counted so far.
+     */
+    public void reset() {
+        for (int i = 0; i < PHASES; i++) {
+            histograms[i].reset();
+        }
+    }
+    /**
+     * This method returns one line of percentiles for each phase that has
+     * been timed.
+     *
+     * @return the summary
+     */
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < PHASES; i++) {
+            if (histograms[i].getCount() > 0) {
+                if (text.length() > 0) {
+                    text.append(System.lineSeparator());
+                }
+                text.append(String.format("%-9s ", NAMES[i]));
+                text.append(histograms[i]);
+            }
+        }
+        return text.toString();
+    }
+}
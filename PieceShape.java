@@ -0,0 +1,268 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class holds a packed description of one rotation of a piece so that
+ *  it can be dropped onto a BitBoard without asking the Piece object for its
+ *  cells again.  Each row of the piece is kept as a bit mask, where bit x is
+ *  set when the piece has a block in its column x.  The skirt (the lowest
+ *  block in each column) and the top (one above the highest block in each
+ *  column) are kept as well, since those are what the brain needs to work
+ *  out where a piece lands and how tall the columns are afterwards.
+ *
+ *  The cells are read by placing the piece on a small scratch Board once,
+ *  and the result is cached for every later call with the same piece.  The
+ *  shapes of every rotation of the seven standard pieces are built when the
+ *  class is loaded and kept in a table by type, so finding them for one of
+ *  those pieces is a few comparisons rather than a walk around the piece's
+ *  rotations.
+ *
+ *  @author stevr76
+ *  @version 2016.08.29
+ */
+public class PieceShape
+{
+    //Fields
+    private static final ConcurrentHashMap<Piece, PieceShape> SHAPES =
+        new ConcurrentHashMap<Piece, PieceShape>();
+    private static final ConcurrentHashMap<Piece, PieceShape[]> ROTATIONS =
+        new ConcurrentHashMap<Piece, PieceShape[]>();
+    //one piece of each of the seven types, in their first rotation
+    private static final Piece[] PIECE_TYPES = {
+        Piece.getPiece(Piece.STICK, 0),
+        Piece.getPiece(Piece.LEFT_L, 0),
+        Piece.getPiece(Piece.RIGHT_L, 0),
+        Piece.getPiece(Piece.LEFT_DOG, 0),
+        Piece.getPiece(Piece.RIGHT_DOG, 0),
+        Piece.getPiece(Piece.SQUARE, 0),
+        Piece.getPiece(Piece.T, 0)
+    };
+    //counts the shapes made so far, to give each one its own key
+    private static final AtomicLong SHAPE_COUNT = new AtomicLong();
+    //the shapes of every rotation of each type, in the order of PIECE_TYPES
+    private static final PieceShape[][] TYPE_TABLE =
+        new PieceShape[PIECE_TYPES.length][];
+    static {
+        for (int i = 0; i < PIECE_TYPES.length; i++) {
+            TYPE_TABLE[i] = PieceShape.rotations(PIECE_TYPES[i]);
+        }
+    }
+    private final Piece piece;
+    private final long key;
+    private final int width;
+    private final int height;
+    private final long[] rowMasks;
+    private final int[] skirt;
+    private final int[] tops;
+    private final int[] gaps;
+    /**
+     * This constructor reads the cells of the piece from a scratch board.
+     *
+     * @param piece is the piece rotation that this shape describes
+     */
+    private PieceShape(Piece piece) {
+        this.piece = piece;
+        key = EvaluationCache.mix(SHAPE_COUNT.incrementAndGet());
+        width = piece.getWidth();
+        height = piece.getHeight();
+        rowMasks = new long[height];
+        skirt = new int[width];
+        tops = new int[width];
+        gaps = new int[width];
+        //the scratch board is built from blank rows so that it is empty
+        String[] blankRows = new String[height];
+        StringBuilder blank = new StringBuilder();
+        for (int i = 0; i < width; i++) {
+            blank.append(' ');
+        }
+        for (int i = 0; i < height; i++) {
+            blankRows[i] = blank.toString();
+        }
+        Board scratch = new Board(width, height, blankRows);
+        scratch.place(piece, 0, 0);
+        for (int i = 0; i < width; i++) {
+            skirt[i] = height;
+            int blocks = 0;
+            for (int j = 0; j < height; j++) {
+                if (scratch.hasBlockAt(i, j)) {
+                    rowMasks[j] |= 1L << i;
+                    skirt[i] = Math.min(skirt[i], j);
+                    tops[i] = j + 1;
+                    blocks++;
+                }
+            }
+            //any empty cells between the skirt and the top of a column are
+            //holes that the piece brings with it
+            gaps[i] = tops[i] - skirt[i] - blocks;
+        }
+        scratch.undo();
+    }
+    /**
+     * This method returns the shape for the given piece rotation, building
+     * it the first time the piece is seen.
+     *
+     * @param piece is the piece rotation in question
+     * @return the cached shape of that piece
+     */
+    public static PieceShape of(Piece piece) {
+        PieceShape shape = SHAPES.get(piece);
+        if (shape == null) {
+            shape = new PieceShape(piece);
+            PieceShape previous = SHAPES.putIfAbsent(piece, shape);
+            if (previous != null) {
+                shape = previous;
+            }
+        }
+        return shape;
+    }
+    /**
+     * This method returns the shapes of every rotation of the given piece,
+     * in the order nextRotation() visits them, starting with the piece
+     * itself.  The array is built the first time the piece is seen and must
+     * not be changed by the caller.
+     *
+     * @param piece is the first rotation
+     * @return an array with one shape per rotation
+     */
+    public static PieceShape[] rotations(Piece piece) {
+        //the table is still being filled while the class is loaded
+        if (TYPE_TABLE[TYPE_TABLE.length - 1] != null) {
+            for (int i = 0; i < TYPE_TABLE.length; i++) {
+                if (TYPE_TABLE[i][0].piece == piece) {
+                    return TYPE_TABLE[i];
+                }
+            }
+        }
+        PieceShape[] shapes = ROTATIONS.get(piece);
+        if (shapes == null) {
+            shapes = new PieceShape[piece.numRotations()];
+            Piece rotation = piece;
+            for (int i = 0; i < shapes.length; i++) {
+                shapes[i] = PieceShape.of(rotation);
+                rotation = rotation.nextRotation();
+            }
+            PieceShape[] previous = ROTATIONS.putIfAbsent(piece, shapes);
+            if (previous != null) {
+                shapes = previous;
+            }
+        }
+        return shapes;
+    }
+    /**
+     * This method returns the shapes of every rotation of one of the seven
+     * piece types, from the table built when the class is loaded.  The
+     * array must not be changed by the caller.
+     *
+     * @param index is the position of the type in getPieceTypes()
+     * @return an array with one shape per rotation
+     */
+    public static PieceShape[] rotationsOfType(int index) {
+        return TYPE_TABLE[index];
+    }
+    /**
+     * This method returns one piece of each of the seven types, each in its
+     * first rotation.  The array must not be changed by the caller.
+     *
+     * @return the seven piece types
+     */
+    public static Piece[] getPieceTypes() {
+        return PIECE_TYPES;
+    }
+    /**
+     * This method returns the piece rotation described by this shape.
+     *
+     * @return the piece
+     */
+    public Piece getPiece() {
+        return piece;
+    }
+    /**
+     * This method returns a random-looking number that is different for
+     * every shape, for building cache keys.
+     *
+     * @return the key of this shape
+     */
+    public long getKey() {
+        return key;
+    }
+    /**
+     * This method returns the number of columns the piece covers.
+     *
+     * @return the width of the piece
+     */
+    public int getWidth() {
+        return width;
+    }
+    /**
+     * This method returns the number of rows the piece covers.
+     *
+     * @return the height of the piece
+     */
+    public int getHeight() {
+        return height;
+    }
+    /**
+     * This method returns the cells of one row of the piece as a bit mask,
+     * with bit 0 being the left-most column of the piece.
+     *
+     * @param row is the row of the piece, counted from its bottom
+     * @return the mask of blocks in that row
+     */
+    public long getRowMask(int row) {
+        return rowMasks[row];
+    }
+    /**
+     * This method returns the lowest row that holds a block in the given
+     * column of the piece.
+     *
+     * @param column is the column of the piece, counted from its left side
+     * @return the skirt value of that column
+     */
+    public int getSkirt(int column) {
+        return skirt[column];
+    }
+    /**
+     * This method returns one more than the highest row that holds a block in
+     * the given column of the piece, which is how much the piece adds to
+     * that column when it lands on row 0.
+     *
+     * @param column is the column of the piece, counted from its left side
+     * @return the top of that column
+     */
+    public int getTop(int column) {
+        return tops[column];
+    }
+    /**
+     * This method returns the row the bottom of the piece comes to rest on
+     * when it is dropped with its left side in the given column, which is
+     * the highest of each column's height less the skirt of the piece
+     * above it.
+     *
+     * @param heights holds the height of every column of the board
+     * @param left is the column of the left side of the piece
+     * @return the landing row
+     */
+    public int getLandingRow(int[] heights, int left) {
+        int row = 0;
+        for (int i = 0; i < skirt.length; i++) {
+            int rest = heights[left + i] - skirt[i];
+            if (rest > row) {
+                row = rest;
+            }
+        }
+        return row;
+    }
+    /**
+     * This method returns the number of empty cells the piece leaves inside
+     * its own span in the given column.  This is 0 for all of the standard
+     * pieces.
+     *
+     * @param column is the column of the piece, counted from its left side
+     * @return the number of empty cells inside the piece in that column
+     */
+    public int getGaps(int column) {
+        return gaps[column];
+    }
+}
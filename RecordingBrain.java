@@ -0,0 +1,66 @@
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class wraps any Brain and records every decision it makes with a
+ *  GameRecorder: the board and piece it was given, the move it made, the
+ *  score it gave the move and how long it took.  The decision is copied and
+ *  handed to the recorder's writer thread, so the game never waits for the
+ *  recording to be written.
+ *
+ *  Several wrappers can share one recorder, which is safe to use from
+ *  several threads at once.
+ *
+ *  @author stevr76
+ *  @version 2016.08.25
+ */
+public class RecordingBrain
+    implements Brain
+{
+    //Fields
+    private final Brain brain;
+    private final GameRecorder recorder;
+    /**
+     * This constructor wraps the given brain.
+     *
+     * @param brain is the brain to record
+     * @param recorder receives every decision
+     */
+    public RecordingBrain(Brain brain, GameRecorder recorder) {
+        this.brain = brain;
+        this.recorder = recorder;
+    }
+    /**
+     * This method asks the wrapped brain for the best move and records the
+     * decision.
+     *
+     * @param board is the current board
+     * @param piece is the current piece
+     * @param heightLimit is the height limit of the board
+     * @param move receives the move
+     */
+    public void bestMove(
+        Board board, Piece piece, int heightLimit, Move move)
+    {
+        long start = System.nanoTime();
+        brain.bestMove(board, piece, heightLimit, move);
+        long nanos = System.nanoTime() - start;
+        recorder.record(board, piece, heightLimit, move, nanos);
+    }
+    /**
+     * This method returns the wrapped brain.
+     *
+     * @return the brain being recorded
+     */
+    public Brain getBrain() {
+        return brain;
+    }
+    /**
+     * This method returns the recorder decisions are handed to.
+     *
+     * @return the recorder
+     */
+    public GameRecorder getRecorder() {
+        return recorder;
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class reads back a recording written by GameRecorder.  The file is
+ *  mapped into memory, and each decision is decoded straight out of the
+ *  mapping into one DecisionRecord that is reused for every decision, so
+ *  reading allocates nothing per decision.  The checksum of each block is
+ *  checked before any of its records are read.
+ *
+ *      RecordingReader reader = new RecordingReader(file);
+ *      while (reader.next()) {
+ *          DecisionRecord decision = reader.getRecord();
+ *          ...
+ *      }
+ *
+ *  replay() hands every decision back to a brain and counts the moves that
+ *  come out differently, and main() does the same from the command line:
+ *
+ *      java RecordingReader recording [-brain CleverBrain]
+ *
+ *  Recordings up to 2GB long can be read.
+ *
+ *  @author stevr76
+ *  @version 2016.08.25
+ */
+public class RecordingReader
+    implements Closeable
+{
+    //Fields
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final DecisionRecord record = new DecisionRecord();
+    private final CRC32 crc = new CRC32();
+    private int blockEnd;
+    private int blockRecords;
+    private long blocks;
+    //the state the records of the current block were encoded against
+    private int lastWidth;
+    private int lastHeight;
+    private int lastLimit;
+    /**
+     * This constructor maps a recording and checks its header.
+     *
+     * @param recording is the file to read
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public RecordingReader(File recording)
+        throws IOException
+    {
+        file = new RandomAccessFile(recording, "r");
+        try {
+            long length = file.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(recording + " is too long to map");
+            }
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                length);
+            if (length < 5 || buffer.getInt() != GameRecorder.MAGIC) {
+                throw new IOException(recording + " is not a recording");
+            }
+            int version = buffer.get();
+            if (version != GameRecorder.VERSION) {
+                throw new IOException(recording + " is version " + version
+                    + ", not " + GameRecorder.VERSION);
+            }
+        }
+        catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        blockEnd = buffer.position();
+    }
+    /**
+     * This method moves on to the next decision.
+     *
+     * @return true if there was another decision, false at the end of the
+     * recording
+     * @throws IOException if a block is cut short or its checksum is wrong
+     */
+    public boolean next()
+        throws IOException
+    {
+        while (blockRecords == 0) {
+            if (!buffer.hasRemaining()) {
+                return false;
+            }
+            this.startBlock();
+        }
+        this.decode();
+        blockRecords--;
+        return true;
+    }
+    /**
+     * This method reads the header of the next block and checks its
+     * payload against the checksum.
+     *
+     * @throws IOException if the block is cut short or its checksum is
+     * wrong
+     */
+    private void startBlock()
+        throws IOException
+    {
+        buffer.position(blockEnd);
+        if (buffer.remaining() < 12) {
+            throw new IOException("Block " + blocks + " is cut short");
+        }
+        int length = buffer.getInt();
+        int count = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length < 0 || count < 0 || length > buffer.remaining()) {
+            throw new IOException("Block " + blocks + " is cut short");
+        }
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(payload.position() + length);
+        crc.reset();
+        crc.update(payload);
+        if ((int)crc.getValue() != checksum) {
+            throw new IOException("Block " + blocks + " is damaged");
+        }
+        blockEnd = buffer.position() + length;
+        blockRecords = count;
+        blocks++;
+        lastWidth = 0;
+        lastHeight = 0;
+        lastLimit = 0;
+    }
+    /**
+     * This method decodes the decision at the current position into the
+     * record.
+     *
+     * @throws IOException if the decision runs past the end of its block
+     */
+    private void decode()
+        throws IOException
+    {
+        try {
+            lastWidth += (int)this.getSigned();
+            lastHeight += (int)this.getSigned();
+            lastLimit += (int)this.getSigned();
+            record.setSize(lastWidth, lastHeight);
+            int piece = buffer.get();
+            int movePiece = buffer.get();
+            DecisionRecord.pieceOf(piece);
+            DecisionRecord.pieceOf(movePiece);
+            int x = (int)this.getSigned();
+            int y = (int)this.getSigned();
+            double score = Double.longBitsToDouble(buffer.getLong());
+            long nanos = this.getVarint();
+            record.setDecision(lastLimit, piece, movePiece, x, y, score,
+                nanos);
+            int used = (int)this.getVarint();
+            if (used > lastHeight) {
+                throw new IOException("A decision in block " + (blocks - 1)
+                    + " has " + used + " rows on a board " + lastHeight
+                    + " tall");
+            }
+            long[] rows = record.getRows();
+            long bits = 0;
+            int count = 0;
+            for (int j = 0; j < used; j++) {
+                long row = 0;
+                for (int shift = 0; shift < lastWidth; shift += 32) {
+                    int chunk = Math.min(32, lastWidth - shift);
+                    while (count < chunk) {
+                        bits |= (buffer.get() & 0xFFL) << count;
+                        count += 8;
+                    }
+                    row |= (bits & ((1L << chunk) - 1)) << shift;
+                    bits >>>= chunk;
+                    count -= chunk;
+                }
+                rows[j] = row;
+            }
+        }
+        catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IOException("A decision in block " + (blocks - 1)
+                + " is not valid", e);
+        }
+        if (buffer.position() > blockEnd) {
+            throw new IOException("A decision in block " + (blocks - 1)
+                + " runs past the end of the block");
+        }
+    }
+    /**
+     * This method reads a varint.
+     *
+     * @return the value, taken as unsigned
+     */
+    private long getVarint() {
+        long value = 0;
+        int shift = 0;
+        byte next;
+        do {
+            next = buffer.get();
+            value |= (next & 0x7FL) << shift;
+            shift += 7;
+        } while (next < 0 && shift < 64);
+        return value;
+    }
+    /**
+     * This method reads a zigzag encoded varint.
+     *
+     * @return the signed value
+     */
+    private long getSigned() {
+        long value = this.getVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+    /**
+     * This method returns the decision next() moved on to.  The same record
+     * is filled in by every call to next().
+     *
+     * @return the current decision
+     */
+    public DecisionRecord getRecord() {
+        return record;
+    }
+    /**
+     * This method returns the number of blocks started so far.
+     *
+     * @return the number of blocks
+     */
+    public long getBlocks() {
+        return blocks;
+    }
+    /**
+     * This method hands every decision left in the recording back to a
+     * brain, and counts the decisions where the brain makes a different
+     * move than the one recorded.
+     *
+     * @param brain is the brain to replay the decisions with
+     * @param latency receives the time each decision takes, or is null
+     * @return the number of decisions with a different move
+     * @throws IOException if the recording is damaged
+     */
+    public long replay(Brain brain, LatencyHistogram latency)
+        throws IOException
+    {
+        long differences = 0;
+        Move move = new Move();
+        while (this.next()) {
+            Board board = record.toBoard();
+            long start = System.nanoTime();
+            brain.bestMove(board, record.getPiece(), record.getHeightLimit(),
+                move);
+            if (latency != null) {
+                latency.record(System.nanoTime() - start);
+            }
+            if (move.piece() != record.getMovePiece()
+                || move.x() != record.getX() || move.y() != record.getY()) {
+                differences++;
+            }
+        }
+        return differences;
+    }
+    /**
+     * This method replays a recording with a brain and prints how many of
+     * its moves came out differently and how long they took.
+     *
+     * @param args are the recording and the settings described above
+     * @throws Exception if the brain cannot be made or the recording read
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        String brainName = "CleverBrain";
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-brain")) {
+                brainName = args[i + 1];
+            }
+            else {
+                throw new IllegalArgumentException("Unknown option "
+                    + args[i]);
+            }
+        }
+        Brain brain = SelfPlay.brainsNamed(brainName).get();
+        LatencyHistogram latency = new LatencyHistogram();
+        RecordingReader reader = new RecordingReader(new File(args[0]));
+        try {
+            long differences = reader.replay(brain, latency);
+            System.out.println(brainName + ": " + latency.getCount()
+                + " decisions, " + differences + " different moves"
+                + System.lineSeparator() + "  decision latency: " + latency);
+        }
+        finally {
+            reader.close();
+        }
+    }
+    /**
+     * This method closes the file.  The mapping stays valid until it is
+     * garbage collected, but must not be used.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public void close()
+        throws IOException
+    {
+        file.close();
+    }
+}
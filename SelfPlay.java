@@ -0,0 +1,425 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import cs5044.tetris.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class plays many headless games with a brain, spread over several
+ *  threads, and reports how well and how fast the brain played.  It can be
+ *  run from the command line:
+ *
+ *      java SelfPlay [-brain CleverBrain] [-games 100] [-threads N]
+ *          [-seed 5044] [-width 10] [-height 24] [-pieces 0]
+ *          [-phases false] [-weights profile] [-depth 1] [-budget nanos]
+ *
+ *  -brain is the name of any class with a no-argument constructor that
+ *  implements Brain.  -threads defaults to the number of processors, and
+ *  -pieces is the most pieces any one game may last, with 0 meaning no
+ *  limit.  -phases true also times each phase of every decision, when the
+ *  brain is a CleverBrain.  Game number i is played with a seed made from
+ *  -seed and i, so the games, and the totals, are the same however many
+ *  threads are used.  -weights plays CleverBrains that score moves with a
+ *  profile written by WeightTuner, so it cannot be given with -brain.
+ *  -depth above 1 turns on lookahead in every CleverBrain, looking at that
+ *  many pieces, and -budget gives every CleverBrain a hard limit on the
+ *  time of each decision in place of its lookahead budget; the report then
+ *  says how many decisions ran out of time.
+ *
+ *  Every game gets its own brain from the brain factory, so a brain does not
+ *  need to be safe to share between threads.
+ *
+ *  @author stevr76
+ *  @version 2016.08.28
+ */
+public class SelfPlay
+{
+    //Fields
+    private final Supplier<Brain> brains;
+    private int games = 100;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = 5044;
+    private int width = 10;
+    private int height = 24;
+    private int maxPieces = 0;
+    private int[] piecesPerGame = new int[0];
+    private int[] linesPerGame = new int[0];
+    private final AtomicLong totalPieces = new AtomicLong();
+    private final AtomicLong totalLines = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private PhaseTimings phases = null;
+    private int searchDepth = 1;
+    private long decisionBudget = Long.MAX_VALUE;
+    private final AtomicLong budgetHits = new AtomicLong();
+    private long elapsed;
+    /**
+     * This constructor sets up self-play with the given source of brains.
+     *
+     * @param brains makes a new brain for each game
+     */
+    public SelfPlay(Supplier<Brain> brains) {
+        this.brains = brains;
+    }
+    /**
+     * This method reads the settings from the command line, plays the games
+     * and prints the results.
+     *
+     * @param args are the settings described above
+     * @throws Exception if the brain cannot be made or a game fails
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        String brainName = null;
+        String profile = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-brain")) {
+                brainName = args[i + 1];
+            }
+            else if (args[i].equals("-weights")) {
+                profile = args[i + 1];
+            }
+        }
+        if (brainName != null && profile != null) {
+            throw new IllegalArgumentException("-weights makes CleverBrains"
+                + " and cannot be used with -brain");
+        }
+        if (brainName == null) {
+            brainName = "CleverBrain";
+        }
+        SelfPlay selfPlay = new SelfPlay((profile == null)
+            ? SelfPlay.brainsNamed(brainName)
+            : SelfPlay.cleverBrains(BrainWeights.load(new File(profile))));
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-brain":
+                case "-weights":
+                    break;
+                case "-games":
+                    selfPlay.setGames(Integer.parseInt(value));
+                    break;
+                case "-threads":
+                    selfPlay.setThreads(Integer.parseInt(value));
+                    break;
+                case "-seed":
+                    selfPlay.setSeed(Long.parseLong(value));
+                    break;
+                case "-width":
+                    selfPlay.setSize(Integer.parseInt(value),
+                        selfPlay.height);
+                    break;
+                case "-height":
+                    selfPlay.setSize(selfPlay.width,
+                        Integer.parseInt(value));
+                    break;
+                case "-pieces":
+                    selfPlay.setMaxPieces(Integer.parseInt(value));
+                    break;
+                case "-phases":
+                    selfPlay.setPhaseTimings(Boolean.parseBoolean(value)
+                        ? new PhaseTimings() : null);
+                    break;
+                case "-depth":
+                    selfPlay.setSearchDepth(Integer.parseInt(value));
+                    break;
+                case "-budget":
+                    selfPlay.setDecisionBudget(Long.parseLong(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+        selfPlay.run();
+        System.out.println(brainName + ": " + selfPlay.report());
+    }
+    /**
+     * This method returns a brain factory that makes brains of the named
+     * class with its no-argument constructor.
+     *
+     * @param name is the name of a class that implements Brain
+     * @return a factory for that class
+     * @throws ClassNotFoundException if there is no class with that name
+     */
+    public static Supplier<Brain> brainsNamed(String name)
+        throws ClassNotFoundException
+    {
+        final Class<? extends Brain> type =
+            Class.forName(name).asSubclass(Brain.class);
+        return new Supplier<Brain>() {
+            public Brain get() {
+                try {
+                    return type.getConstructor().newInstance();
+                }
+                catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Cannot make a "
+                        + type.getName(), e);
+                }
+            }
+        };
+    }
+    /**
+     * This method returns a brain factory that makes CleverBrains with the
+     * given weights.
+     *
+     * @param weights are the weights every brain scores moves with
+     * @return a factory for those brains
+     */
+    public static Supplier<Brain> cleverBrains(final BrainWeights weights) {
+        return new Supplier<Brain>() {
+            public Brain get() {
+                return new CleverBrain(weights);
+            }
+        };
+    }
+    /**
+     * This method sets the number of games to play.
+     *
+     * @param games is the number of games
+     */
+    public void setGames(int games) {
+        this.games = games;
+    }
+    /**
+     * This method sets the number of games played at once.
+     *
+     * @param threads is the number of threads, at least 1
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+    /**
+     * This method sets the seed the seed of every game is made from.
+     *
+     * @param seed is the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+    /**
+     * This method sets the size of the board every game is played on.
+     *
+     * @param width is the number of columns
+     * @param height is the number of rows, including the top rows
+     */
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+    /**
+     * This method sets the most pieces a game may last.
+     *
+     * @param maxPieces is the limit, or 0 for no limit
+     */
+    public void setMaxPieces(int maxPieces) {
+        this.maxPieces = maxPieces;
+    }
+    /**
+     * This method sets where the time of each phase of every decision is
+     * recorded, for brains that are CleverBrains.
+     *
+     * @param phases receives the phase times, or null to not time them
+     */
+    public void setPhaseTimings(PhaseTimings phases) {
+        this.phases = phases;
+    }
+    /**
+     * This method sets the number of pieces every CleverBrain looks at.
+     * Above 1, lookahead is turned on.
+     *
+     * @param depth is the number of pieces, from 1 to
+     * CleverBrain.MAX_SEARCH_DEPTH
+     */
+    public void setSearchDepth(int depth) {
+        searchDepth = depth;
+    }
+    /**
+     * This method sets a hard limit on the time of every decision a
+     * CleverBrain makes.  It takes the place of the brain's lookahead
+     * budget.
+     *
+     * @param nanos is the time budget in nanoseconds, or Long.MAX_VALUE for
+     * none, which leaves the lookahead budget as it is
+     */
+    public void setDecisionBudget(long nanos) {
+        decisionBudget = nanos;
+    }
+    /**
+     * This method plays every game, waiting until they are all over.  The
+     * results of any earlier run are forgotten.
+     *
+     * @throws Exception if a game fails
+     */
+    public void run()
+        throws Exception
+    {
+        piecesPerGame = new int[games];
+        linesPerGame = new int[games];
+        totalPieces.set(0);
+        totalLines.set(0);
+        budgetHits.set(0);
+        latency.reset();
+        if (phases != null) {
+            phases.reset();
+        }
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (int i = 0; i < games; i++) {
+                final int game = i;
+                results.add(executor.submit(new Runnable() {
+                    public void run() {
+                        SelfPlay.this.playGame(game);
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        elapsed = System.nanoTime() - start;
+    }
+    /**
+     * This method plays one game and records its results.
+     *
+     * @param game is the number of the game
+     */
+    private void playGame(int game) {
+        Brain brain = brains.get();
+        CleverBrain clever = (brain instanceof CleverBrain)
+            ? (CleverBrain)brain : null;
+        if (clever != null) {
+            if (phases != null) {
+                clever.setPhaseTimings(phases);
+            }
+            if (searchDepth > 1) {
+                clever.setLookahead(true);
+                clever.setSearchDepth(searchDepth);
+            }
+            if (decisionBudget != Long.MAX_VALUE) {
+                clever.setLookaheadBudget(Long.MAX_VALUE);
+                clever.setDecisionBudget(decisionBudget);
+            }
+        }
+        HeadlessGame headless = new HeadlessGame(brain, width, height,
+            SelfPlay.seedOf(seed, game));
+        headless.setLatency(latency);
+        headless.play(maxPieces);
+        piecesPerGame[game] = headless.getPieces();
+        linesPerGame[game] = headless.getLinesCleared();
+        totalPieces.addAndGet(headless.getPieces());
+        totalLines.addAndGet(headless.getLinesCleared());
+        if (clever != null) {
+            budgetHits.addAndGet(clever.getBudgetHits());
+        }
+    }
+    /**
+     * This method returns the seed of one game, made by mixing the bits of
+     * the base seed and the game number so that games with numbers next to
+     * each other get unrelated pieces.
+     *
+     * @param seed is the base seed
+     * @param game is the number of the game
+     * @return the seed for that game
+     */
+    public static long seedOf(long seed, int game) {
+        return EvaluationCache.mix(seed * 0x9E3779B97F4A7C15L + game);
+    }
+    /**
+     * This method returns the number of pieces played in each game of the
+     * last run.
+     *
+     * @return one entry per game
+     */
+    public int[] getPiecesPerGame() {
+        return piecesPerGame;
+    }
+    /**
+     * This method returns the number of rows cleared in each game of the
+     * last run.
+     *
+     * @return one entry per game
+     */
+    public int[] getLinesPerGame() {
+        return linesPerGame;
+    }
+    /**
+     * This method returns the number of pieces played in the last run.
+     *
+     * @return the number of pieces
+     */
+    public long getTotalPieces() {
+        return totalPieces.get();
+    }
+    /**
+     * This method returns the number of rows cleared in the last run.
+     *
+     * @return the number of rows cleared
+     */
+    public long getTotalLines() {
+        return totalLines.get();
+    }
+    /**
+     * This method returns the times the brains took to choose each move in
+     * the last run.
+     *
+     * @return the histogram of decision times
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+    /**
+     * This method returns the number of decisions in the last run that ran
+     * out of time, counted by CleverBrain.getBudgetHits().
+     *
+     * @return the number of decisions that hit the budget
+     */
+    public long getBudgetHits() {
+        return budgetHits.get();
+    }
+    /**
+     * This method returns how long the last run took.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsed;
+    }
+    /**
+     * This method returns the results of the last run as text.
+     *
+     * @return the report
+     */
+    public String report() {
+        double seconds = Math.max(elapsed, 1) / 1e9;
+        String phaseText = "";
+        if (phases != null) {
+            phaseText = System.lineSeparator() + phases.toString()
+                .replaceAll("(?m)^", "    ");
+        }
+        if (searchDepth > 1 || decisionBudget != Long.MAX_VALUE) {
+            long decisions = latency.getCount();
+            phaseText = String.format("%n  budget hits: %d of %d decisions"
+                + " (%.1f%%)", this.getBudgetHits(), decisions,
+                (decisions == 0) ? 0.0
+                : 100.0 * this.getBudgetHits() / decisions) + phaseText;
+        }
+        return String.format("%d games, %d pieces, %d lines in %.2fs%n"
+            + "  %.1f games/s, %.0f pieces/s, %.1f lines/game%n"
+            + "  decision latency: %s", games, this.getTotalPieces(),
+            this.getTotalLines(), seconds, games / seconds,
+            this.getTotalPieces() / seconds,
+            (games == 0) ? 0.0 : (double)this.getTotalLines() / games,
+            latency) + phaseText;
+    }
+}
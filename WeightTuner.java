@@ -0,0 +1,576 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class tunes CleverBrain's weights by letting it play.  It runs an
+ *  evolution strategy: every generation, a population of weight sets is
+ *  made by adding random changes to the current mean weights, each set is
+ *  scored by the average number of rows a CleverBrain with those weights
+ *  clears over a number of headless games, and the new mean is the average
+ *  of the best quarter of the population.  The size of the random changes
+ *  shrinks a little every generation.  It can be run from the command
+ *  line:
+ *
+ *      java WeightTuner [-generations 20] [-population 16] [-games 8]
+ *          [-pieces 2000] [-sigma 0.3] [-threads N] [-seed 5044]
+ *          [-width 10] [-height 24] [-start profile]
+ *          [-checkpoint tuner.properties] [-out best.properties]
+ *
+ *  Every set in a generation plays the same games, so the sets are compared
+ *  on equal terms.  All of the games of a generation are played at once on
+ *  a pool of -threads threads, so a generation takes about as long as its
+ *  games divided by the number of cores.
+ *
+ *  After every generation the state of the search is written to the
+ *  checkpoint file, if there is one, and the best weights so far are written
+ *  to the -out profile, which CleverBrain and SelfPlay can load.  If the
+ *  checkpoint file already exists when the tuner starts, the search goes on
+ *  from where it stopped, as long as the population, games, pieces, board
+ *  size and seed are the ones it was started with.  A generation's random
+ *  numbers come from the seed and the generation number only, so a search
+ *  that is stopped and started again finds the same weights as one that was
+ *  not.
+ *
+ *  @author stevr76
+ *  @version 2016.08.22
+ */
+public class WeightTuner
+{
+    //Fields
+    private int populationSize = 16;
+    private int games = 8;
+    private int maxPieces = 2000;
+    private int width = 10;
+    private int height = 24;
+    private long seed = 5044;
+    //the step size is multiplied by this after every generation
+    private static final double DECAY = 0.95;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private File checkpoint = null;
+    private File output = null;
+    private int generation = 0;
+    private double[] mean;
+    private double sigma = 0.3;
+    private double[][] population = new double[0][];
+    private double[] fitness = new double[0];
+    private double[] best;
+    private double bestFitness = Double.NEGATIVE_INFINITY;
+    /**
+     * This constructor starts a search from the given weights.
+     *
+     * @param start are the weights the first generation is made around
+     */
+    public WeightTuner(BrainWeights start) {
+        mean = start.toArray();
+        best = start.toArray();
+    }
+    /**
+     * This method reads the settings from the command line and runs the
+     * search, printing the best weights of every generation.
+     *
+     * @param args are the settings described above
+     * @throws Exception if a file cannot be read or written, or a game
+     * fails
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        BrainWeights start = BrainWeights.DEFAULT;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-start")) {
+                start = BrainWeights.load(new File(args[i + 1]));
+            }
+        }
+        WeightTuner tuner = new WeightTuner(start);
+        int generations = 20;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-start":
+                    break;
+                case "-generations":
+                    generations = Integer.parseInt(value);
+                    break;
+                case "-population":
+                    tuner.setPopulationSize(Integer.parseInt(value));
+                    break;
+                case "-games":
+                    tuner.setGames(Integer.parseInt(value));
+                    break;
+                case "-pieces":
+                    tuner.setMaxPieces(Integer.parseInt(value));
+                    break;
+                case "-sigma":
+                    tuner.setSigma(Double.parseDouble(value));
+                    break;
+                case "-threads":
+                    tuner.setThreads(Integer.parseInt(value));
+                    break;
+                case "-seed":
+                    tuner.setSeed(Long.parseLong(value));
+                    break;
+                case "-width":
+                    tuner.setSize(Integer.parseInt(value), tuner.height);
+                    break;
+                case "-height":
+                    tuner.setSize(tuner.width, Integer.parseInt(value));
+                    break;
+                case "-checkpoint":
+                    tuner.setCheckpoint(new File(value));
+                    break;
+                case "-out":
+                    tuner.setOutput(new File(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+        }
+        if (tuner.checkpoint != null && tuner.checkpoint.exists()) {
+            tuner.loadCheckpoint(tuner.checkpoint);
+            System.out.println("Resuming at generation " + tuner.generation);
+        }
+        tuner.run(generations, System.out);
+        System.out.println("Best: " + tuner.getBest());
+    }
+    /**
+     * This method sets the number of weight sets in each generation.
+     *
+     * @param populationSize is the number of sets, at least 2
+     */
+    public void setPopulationSize(int populationSize) {
+        this.populationSize = Math.max(2, populationSize);
+    }
+    /**
+     * This method sets the number of games each weight set plays.
+     *
+     * @param games is the number of games
+     */
+    public void setGames(int games) {
+        this.games = games;
+    }
+    /**
+     * This method sets the most pieces a game may last.  Good weights can
+     * play for a very long time, so a limit keeps generations short.
+     *
+     * @param maxPieces is the limit, or 0 for no limit
+     */
+    public void setMaxPieces(int maxPieces) {
+        this.maxPieces = maxPieces;
+    }
+    /**
+     * This method sets the size of the random changes, as a fraction of
+     * each weight.
+     *
+     * @param sigma is the step size
+     */
+    public void setSigma(double sigma) {
+        this.sigma = sigma;
+    }
+    /**
+     * This method sets the number of games played at once.
+     *
+     * @param threads is the number of threads, at least 1
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+    /**
+     * This method sets the seed every generation's random numbers are made
+     * from.
+     *
+     * @param seed is the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+    /**
+     * This method sets the size of the board the games are played on.
+     *
+     * @param width is the number of columns
+     * @param height is the number of rows, including the top rows
+     */
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+    /**
+     * This method sets the file the state of the search is written to after
+     * every generation.
+     *
+     * @param checkpoint is the file, or null to not write one
+     */
+    public void setCheckpoint(File checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+    /**
+     * This method sets the profile the best weights are written to after
+     * every generation.
+     *
+     * @param output is the profile, or null to not write one
+     */
+    public void setOutput(File output) {
+        this.output = output;
+    }
+    /**
+     * This method runs generations until the given number have been run in
+     * all, counting any run before a checkpoint was loaded.
+     *
+     * @param generations is the number of generations to reach
+     * @param log receives a line about each generation, or is null
+     * @throws Exception if a game fails or a file cannot be written
+     */
+    public void run(int generations, PrintStream log)
+        throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            while (generation < generations) {
+                this.step(executor);
+                if (log != null) {
+                    log.printf("generation %d: best %.2f lines/game,"
+                        + " mean %s, sigma %.3f%n", generation,
+                        fitness[0], new BrainWeights(mean), sigma);
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+    /**
+     * This method runs one generation: it makes the population, scores it,
+     * moves the mean, and writes the checkpoint and profile.
+     *
+     * @param executor runs the games
+     * @throws Exception if a game fails or a file cannot be written
+     */
+    private void step(ExecutorService executor)
+        throws Exception
+    {
+        Random random = new Random(SelfPlay.seedOf(seed, generation));
+        population = new double[populationSize][];
+        //the mean itself is always tried, so a generation can never lose
+        //track of where it started
+        population[0] = mean.clone();
+        for (int i = 1; i < populationSize; i++) {
+            population[i] = new double[BrainWeights.COUNT];
+            for (int j = 0; j < BrainWeights.COUNT; j++) {
+                //the change is relative to the size of the weight, since the
+                //row weight is much larger than the others
+                double scale = Math.max(Math.abs(mean[j]), 0.1);
+                population[i][j] = mean[j]
+                    + sigma * scale * random.nextGaussian();
+            }
+        }
+        fitness = this.evaluate(executor, population,
+            SelfPlay.seedOf(seed ^ 0x5851F42D4C957F2DL, generation));
+        //sort the population best first, keeping the order of equal sets
+        Integer[] order = new Integer[populationSize];
+        for (int i = 0; i < populationSize; i++) {
+            order[i] = i;
+        }
+        final double[] scores = fitness;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer first, Integer second) {
+                return Double.compare(scores[second], scores[first]);
+            }
+        });
+        double[][] sorted = new double[populationSize][];
+        double[] sortedFitness = new double[populationSize];
+        for (int i = 0; i < populationSize; i++) {
+            sorted[i] = population[order[i]];
+            sortedFitness[i] = fitness[order[i]];
+        }
+        population = sorted;
+        fitness = sortedFitness;
+        if (fitness[0] > bestFitness) {
+            bestFitness = fitness[0];
+            best = population[0].clone();
+        }
+        int parents = Math.max(1, populationSize / 4);
+        mean = new double[BrainWeights.COUNT];
+        for (int i = 0; i < parents; i++) {
+            for (int j = 0; j < BrainWeights.COUNT; j++) {
+                mean[j] += population[i][j] / parents;
+            }
+        }
+        sigma *= DECAY;
+        generation++;
+        if (checkpoint != null) {
+            this.saveCheckpoint(checkpoint);
+        }
+        if (output != null) {
+            this.getBest().save(output, "Best weights after generation "
+                + generation + ": " + bestFitness + " lines/game");
+        }
+    }
+    /**
+     * This method scores each set of weights by the average number of rows
+     * cleared in the same games.  Every game of every set is a task of its
+     * own, so the work spreads evenly over the threads.
+     *
+     * @param executor runs the games
+     * @param candidates holds the weight sets to score
+     * @param gameSeed is the seed the games' seeds are made from
+     * @return the average rows cleared by each set
+     * @throws Exception if a game fails
+     */
+    private double[] evaluate(ExecutorService executor, double[][] candidates,
+        long gameSeed)
+        throws Exception
+    {
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < candidates.length; i++) {
+            final BrainWeights weights = new BrainWeights(candidates[i]);
+            for (int j = 0; j < games; j++) {
+                final long game = SelfPlay.seedOf(gameSeed, j);
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        HeadlessGame headless = new HeadlessGame(
+                            new CleverBrain(weights), width, height, game);
+                        headless.play(maxPieces);
+                        return headless.getLinesCleared();
+                    }
+                }));
+            }
+        }
+        double[] scores = new double[candidates.length];
+        for (int i = 0; i < results.size(); i++) {
+            scores[i / games] += results.get(i).get();
+        }
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] /= Math.max(1, games);
+        }
+        return scores;
+    }
+    /**
+     * This method returns the number of generations run so far.
+     *
+     * @return the generation count
+     */
+    public int getGeneration() {
+        return generation;
+    }
+    /**
+     * This method returns the weights the next generation will be made
+     * around.
+     *
+     * @return the mean weights
+     */
+    public BrainWeights getMean() {
+        return new BrainWeights(mean);
+    }
+    /**
+     * This method returns the best weights found so far.  Each generation
+     * plays different games, so a set's score is only a rough guide to how
+     * it compares with sets from other generations.
+     *
+     * @return the weights with the highest score so far
+     */
+    public BrainWeights getBest() {
+        return new BrainWeights(best);
+    }
+    /**
+     * This method returns the score of the best weights found so far.
+     *
+     * @return the average rows cleared per game
+     */
+    public double getBestFitness() {
+        return bestFitness;
+    }
+    /**
+     * This method writes the state of the search to a file.  The file is
+     * written under another name and then renamed, so a run stopped while
+     * writing leaves the last checkpoint whole.
+     *
+     * @param file is the checkpoint file
+     * @throws IOException if the file cannot be written
+     */
+    public void saveCheckpoint(File file)
+        throws IOException
+    {
+        Properties state = new Properties();
+        state.setProperty("generation", Integer.toString(generation));
+        state.setProperty("populationSize", Integer.toString(populationSize));
+        state.setProperty("games", Integer.toString(games));
+        state.setProperty("pieces", Integer.toString(maxPieces));
+        state.setProperty("width", Integer.toString(width));
+        state.setProperty("height", Integer.toString(height));
+        state.setProperty("seed", Long.toString(seed));
+        state.setProperty("sigma", Double.toString(sigma));
+        state.setProperty("mean", WeightTuner.join(mean));
+        state.setProperty("best", WeightTuner.join(best));
+        state.setProperty("bestFitness", Double.toString(bestFitness));
+        state.setProperty("population", Integer.toString(population.length));
+        for (int i = 0; i < population.length; i++) {
+            state.setProperty("population." + i,
+                WeightTuner.join(population[i]));
+            state.setProperty("fitness." + i, Double.toString(fitness[i]));
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(temporary);
+        try {
+            state.store(out, "WeightTuner checkpoint");
+        }
+        finally {
+            out.close();
+        }
+        try {
+            Files.move(temporary.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    /**
+     * This method reads the state of a search from a file written by
+     * saveCheckpoint(), so that the search goes on from there.  The
+     * population size, games, pieces, board size and seed must be the ones
+     * the file was written with, since fitness scores from other games
+     * cannot be compared with new ones; the file is refused, and the tuner
+     * left as it was, if they are not, or if any part of it cannot be
+     * read.
+     *
+     * @param file is the checkpoint file
+     * @throws IOException if the file cannot be read, is not a checkpoint,
+     * or was written with other settings
+     */
+    public void loadCheckpoint(File file)
+        throws IOException
+    {
+        Properties state = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            state.load(in);
+        }
+        finally {
+            in.close();
+        }
+        WeightTuner.checkSetting(state, file, "populationSize",
+            populationSize);
+        WeightTuner.checkSetting(state, file, "games", games);
+        WeightTuner.checkSetting(state, file, "pieces", maxPieces);
+        WeightTuner.checkSetting(state, file, "width", width);
+        WeightTuner.checkSetting(state, file, "height", height);
+        WeightTuner.checkSetting(state, file, "seed", seed);
+        //everything is read before any field is set, so that a file that
+        //breaks off part of the way leaves the tuner as it was
+        int savedGeneration;
+        double savedSigma;
+        double[] savedMean;
+        double[] savedBest;
+        double savedBestFitness;
+        double[][] savedPopulation;
+        double[] savedFitness;
+        try {
+            savedGeneration =
+                Integer.parseInt(state.getProperty("generation"));
+            savedSigma = Double.parseDouble(state.getProperty("sigma"));
+            savedMean = WeightTuner.split(state.getProperty("mean"));
+            savedBest = WeightTuner.split(state.getProperty("best"));
+            savedBestFitness =
+                Double.parseDouble(state.getProperty("bestFitness"));
+            int size = Integer.parseInt(state.getProperty("population"));
+            savedPopulation = new double[size][];
+            savedFitness = new double[size];
+            for (int i = 0; i < size; i++) {
+                savedPopulation[i] =
+                    WeightTuner.split(state.getProperty("population." + i));
+                savedFitness[i] =
+                    Double.parseDouble(state.getProperty("fitness." + i));
+            }
+        }
+        catch (RuntimeException e) {
+            throw new IOException(file + " is not a WeightTuner checkpoint",
+                e);
+        }
+        generation = savedGeneration;
+        sigma = savedSigma;
+        mean = savedMean;
+        best = savedBest;
+        bestFitness = savedBestFitness;
+        population = savedPopulation;
+        fitness = savedFitness;
+    }
+    /**
+     * This method checks that a checkpoint was written with the same value
+     * of a setting as the tuner has now.
+     *
+     * @param state holds the checkpoint
+     * @param file is the checkpoint file
+     * @param name is the name of the setting
+     * @param value is the tuner's value of the setting
+     * @throws IOException if the checkpoint has another value, or none
+     */
+    private static void checkSetting(Properties state, File file,
+        String name, long value)
+        throws IOException
+    {
+        String saved = state.getProperty(name);
+        if (saved == null) {
+            throw new IOException(file + " does not record its " + name
+                + ", so it cannot be resumed");
+        }
+        if (!saved.equals(Long.toString(value))) {
+            throw new IOException(file + " was written with " + name + " "
+                + saved + ", not " + value);
+        }
+    }
+    /**
+     * This method writes an array of weights as one line of text.
+     *
+     * @param values are the weights
+     * @return the weights separated by commas
+     */
+    private static String join(double[] values) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(values[i]);
+        }
+        return text.toString();
+    }
+    /**
+     * This method reads an array of weights written by join().
+     *
+     * @param text is the weights separated by commas
+     * @return the weights
+     */
+    private static double[] split(String text) {
+        String[] parts = text.split(",");
+        if (parts.length != BrainWeights.COUNT) {
+            throw new IllegalArgumentException("Expected "
+                + BrainWeights.COUNT + " weights in " + text);
+        }
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,177 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import cs5044.tetris.*;
+// -------------------------------------------------------------------------
+/**
+ *  This is the test class for WeightTuner and BrainWeights
+ *
+ *  @author stevr76
+ *  @version 2016.08.22
+ */
+public class WeightTunerTest
+    extends student.TestCase
+{
+    private File checkpoint;
+    private File profile;
+    /**
+     * This makes the temporary files the tests write.
+     */
+    public void setUp()
+        throws Exception
+    {
+        checkpoint = File.createTempFile("tuner", ".properties");
+        checkpoint.delete();
+        profile = File.createTempFile("best", ".properties");
+        profile.delete();
+    }
+    /**
+     * This removes the temporary files.
+     */
+    public void tearDown()
+        throws Exception
+    {
+        checkpoint.delete();
+        profile.delete();
+    }
+    /**
+     * This test ensures that weights survive being written to a profile and
+     * read back, and that a brain made with the default weights makes the
+     * same move as one made without any.
+     */
+    public void testWeightsProfile()
+        throws Exception
+    {
+        BrainWeights weights = new BrainWeights(-1.5, -2, -0.25, -3, -40);
+        weights.save(profile, "test");
+        assertEquals(BrainWeights.load(profile), weights);
+        assertFalse(weights.getKey() == BrainWeights.DEFAULT.getKey());
+        assertEquals(new CleverBrain().getWeights(), BrainWeights.DEFAULT);
+        Board board = new Board(10, 24,
+            "#  #   ## ",
+            "## ####  #"
+        );
+        Piece piece = Piece.getPiece(Piece.LEFT_L, 0);
+        Move plain = new Move();
+        Move weighted = new Move();
+        new CleverBrain().bestMove(board, piece, 20, plain);
+        new CleverBrain(BrainWeights.DEFAULT).bestMove(board, piece, 20,
+            weighted);
+        assertEquals(weighted.x(), plain.x());
+        assertEquals(weighted.piece(), plain.piece());
+    }
+    /**
+     * This test ensures that a search stopped after a checkpoint and
+     * started again ends up with the same weights as one that ran straight
+     * through.
+     */
+    public void testCheckpointResume()
+        throws Exception
+    {
+        WeightTuner straight = this.smallTuner();
+        straight.run(2, null);
+        WeightTuner first = this.smallTuner();
+        first.setCheckpoint(checkpoint);
+        first.setOutput(profile);
+        first.run(1, null);
+        assertTrue(checkpoint.exists());
+        assertEquals(BrainWeights.load(profile), first.getBest());
+        WeightTuner resumed = this.smallTuner();
+        resumed.loadCheckpoint(checkpoint);
+        assertEquals(resumed.getGeneration(), 1);
+        resumed.run(2, null);
+        assertEquals(resumed.getMean(), straight.getMean());
+        assertEquals(resumed.getBest(), straight.getBest());
+        assertEquals(resumed.getBestFitness(), straight.getBestFitness(),
+            0.0);
+        assertTrue(straight.getBestFitness() > 0);
+    }
+    /**
+     * This test ensures that a checkpoint is refused by a tuner playing
+     * other games, or using another seed, than the ones it was written
+     * with, and that the tuner is left as it was.
+     */
+    public void testCheckpointSettings()
+        throws Exception
+    {
+        WeightTuner first = this.smallTuner();
+        first.setCheckpoint(checkpoint);
+        first.run(1, null);
+        WeightTuner other = this.smallTuner();
+        other.setGames(3);
+        try {
+            other.loadCheckpoint(checkpoint);
+            fail("A checkpoint with other games should be refused");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("games"));
+        }
+        assertEquals(other.getGeneration(), 0);
+        other = this.smallTuner();
+        other.setSize(12, 24);
+        try {
+            other.loadCheckpoint(checkpoint);
+            fail("A checkpoint for another board should be refused");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("width"));
+        }
+        other = this.smallTuner();
+        other.setSeed(7);
+        try {
+            other.loadCheckpoint(checkpoint);
+            fail("A checkpoint with another seed should be refused");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("seed"));
+        }
+        assertEquals(other.getGeneration(), 0);
+        other = this.smallTuner();
+        other.loadCheckpoint(checkpoint);
+        assertEquals(other.getGeneration(), 1);
+    }
+    /**
+     * This test ensures that a checkpoint that cannot be read all the way
+     * through is refused without changing any of the tuner's state.
+     */
+    public void testCheckpointBroken()
+        throws Exception
+    {
+        WeightTuner first = this.smallTuner();
+        first.setCheckpoint(checkpoint);
+        first.run(1, null);
+        //a later line wins, so this spoils the last thing that is read
+        FileWriter out = new FileWriter(checkpoint, true);
+        out.write("fitness.3=broken\n");
+        out.close();
+        WeightTuner other = this.smallTuner();
+        BrainWeights mean = other.getMean();
+        BrainWeights best = other.getBest();
+        double bestFitness = other.getBestFitness();
+        try {
+            other.loadCheckpoint(checkpoint);
+            fail("A broken checkpoint should be refused");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("not a WeightTuner"));
+        }
+        assertEquals(other.getGeneration(), 0);
+        assertEquals(other.getMean(), mean);
+        assertEquals(other.getBest(), best);
+        assertEquals(other.getBestFitness(), bestFitness, 0.0);
+        assertTrue(first.getBestFitness() > bestFitness);
+    }
+    /**
+     * This method makes a tuner small enough to run in a test.
+     *
+     * @return the tuner
+     */
+    private WeightTuner smallTuner() {
+        WeightTuner tuner = new WeightTuner(BrainWeights.DEFAULT);
+        tuner.setPopulationSize(4);
+        tuner.setGames(2);
+        tuner.setMaxPieces(40);
+        tuner.setThreads(2);
+        return tuner;
+    }
+}
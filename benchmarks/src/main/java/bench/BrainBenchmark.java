@@ -0,0 +1,295 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import cs5044.tetris.*;
+import org.openjdk.jmh.annotations.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class holds the JMH benchmarks for the brains.  It measures a whole
+ *  call to bestMove for CleverBrain and for LameBrain (as a baseline), and
+ *  each of the CleverBrain methods that bestMove spends its time in.
+ *
+ *  The boards are made at random from a fixed seed, so every run measures
+ *  the same boards.  The bottom part of each board is filled with blocks at
+ *  the given density, and every row is left with at least one empty cell so
+ *  that the board is one a game could really reach.
+ *
+ *  The brains are in the default package, which JMH cannot generate code
+ *  for and which this package cannot import, so they are loaded by name.
+ *  bestMove is called through the Brain interface, and the other methods
+ *  are called through method handles looked up once when the class loads.
+ *
+ *  Run with "-prof gc" to see how much each call allocates next to how
+ *  fast it is; see pom.xml for the commands.
+ *
+ *  @author stevr76
+ *  @version 2016.08.18
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BrainBenchmark
+{
+    //Fields
+    private static final Class<?> CLEVER_BRAIN = load("CleverBrain");
+    private static final Class<?> LAME_BRAIN = load("LameBrain");
+    private static final MethodHandle TRY_ALL_COLUMNS = find(
+        "tryAllColumns", int.class, Board.class, Piece.class, int.class,
+        int[].class, int[].class, int.class, int[][].class);
+    private static final MethodHandle RANK_SCORES = find(
+        "rankScores", void.class, int[][].class);
+    private static final MethodHandle GET_CAVE_LEVEL = find(
+        "getCaveLevel", int.class, Board.class, int.class, int.class);
+    private static final MethodHandle GET_ROW_KILL_COUNT = find(
+        "getRowKillCount", int.class, Board.class);
+    private static final MethodHandle GET_PRE_MOVE_HOLES = find(
+        "getPreMoveHoles", int[].class, Board.class);
+    private static final MethodHandle GET_PRE_MOVE_HEIGHTS = find(
+        "getPreMoveHeights", int[].class, Board.class);
+    private static final MethodHandle SET_CACHE = find(
+        "setCache", void.class, load("EvaluationCache"));
+    //the number of different boards each benchmark cycles through, a power
+    //of two so that moving on to the next one is a mask
+    private static final int BOARD_COUNT = 64;
+    /**
+     * The width of the boards.
+     */
+    @Param({"10", "24", "48"})
+    public int width;
+    /**
+     * The height of the boards.
+     */
+    @Param({"24"})
+    public int height;
+    /**
+     * The fraction of cells in the filled part of each board that hold a
+     * block.
+     */
+    @Param({"0.3", "0.7"})
+    public double density;
+    private Brain cleverBrain;
+    private Brain lameBrain;
+    private Board[] boards;
+    private Piece[] pieces;
+    private int[][] preHoles;
+    private int[][] preHeights;
+    private int[][] scoreArray;
+    private int[][] rankedArray;
+    private Move move;
+    private int next;
+    /**
+     * This method makes the brains and the boards once for each set of
+     * parameters.  CleverBrain's decision cache is turned off, since every
+     * one of the boards would otherwise be a cache hit after the warmup and
+     * cleverBestMove would time a lookup rather than the search.
+     *
+     * @throws Throwable if a brain cannot be made or called
+     */
+    @Setup(Level.Trial)
+    public void setUp()
+        throws Throwable
+    {
+        cleverBrain = (Brain)CLEVER_BRAIN.getConstructor().newInstance();
+        SET_CACHE.invoke((Object)cleverBrain, null);
+        lameBrain = (Brain)LAME_BRAIN.getConstructor().newInstance();
+        Random random = new Random(5044);
+        boards = new Board[BOARD_COUNT];
+        preHoles = new int[BOARD_COUNT][];
+        preHeights = new int[BOARD_COUNT][];
+        for (int i = 0; i < BOARD_COUNT; i++) {
+            boards[i] = randomBoard(random, width, height, density);
+            preHoles[i] = (int[])GET_PRE_MOVE_HOLES.invokeExact(
+                (Object)cleverBrain, boards[i]);
+            preHeights[i] = (int[])GET_PRE_MOVE_HEIGHTS.invokeExact(
+                (Object)cleverBrain, boards[i]);
+        }
+        Piece[] types = {
+            Piece.getPiece(Piece.STICK, 0),
+            Piece.getPiece(Piece.LEFT_L, 0),
+            Piece.getPiece(Piece.RIGHT_L, 0),
+            Piece.getPiece(Piece.LEFT_DOG, 0),
+            Piece.getPiece(Piece.RIGHT_DOG, 0),
+            Piece.getPiece(Piece.SQUARE, 0),
+            Piece.getPiece(Piece.T, 0)
+        };
+        pieces = new Piece[BOARD_COUNT];
+        for (int i = 0; i < BOARD_COUNT; i++) {
+            pieces[i] = types[random.nextInt(types.length)];
+        }
+        //four rotations of every column is the most any piece needs
+        scoreArray = new int[4 * width][11];
+        rankedArray = new int[4 * width][11];
+        for (int i = 0; i < rankedArray.length; i++) {
+            for (int j = 1; j < 5; j++) {
+                rankedArray[i][j] = random.nextInt(2 * height);
+            }
+        }
+        move = new Move();
+    }
+    /**
+     * This benchmark finds the best move with CleverBrain.
+     *
+     * @return the move found
+     */
+    @Benchmark
+    public Move cleverBestMove() {
+        int i = nextBoard();
+        cleverBrain.bestMove(boards[i], pieces[i], height - 4, move);
+        return move;
+    }
+    /**
+     * This benchmark finds a move with LameBrain, which does no work at all,
+     * to show what the benchmark itself costs.
+     *
+     * @return the move found
+     */
+    @Benchmark
+    public Move lameBestMove() {
+        int i = nextBoard();
+        lameBrain.bestMove(boards[i], pieces[i], height - 4, move);
+        return move;
+    }
+    /**
+     * This benchmark scores every column for one rotation of a piece.
+     *
+     * @return the number of moves scored
+     * @throws Throwable if the method cannot be called
+     */
+    @Benchmark
+    public int tryAllColumns()
+        throws Throwable
+    {
+        int i = nextBoard();
+        return (int)TRY_ALL_COLUMNS.invokeExact((Object)cleverBrain,
+            boards[i], pieces[i], height - 4, preHoles[i], preHeights[i], 0,
+            scoreArray);
+    }
+    /**
+     * This benchmark ranks the scores of four rotations of every column.
+     * The ranks are written over columns that are not read again, so the
+     * same raw scores are ranked every time.
+     *
+     * @return the ranked array
+     * @throws Throwable if the method cannot be called
+     */
+    @Benchmark
+    public int[][] rankScores()
+        throws Throwable
+    {
+        RANK_SCORES.invokeExact((Object)cleverBrain, rankedArray);
+        return rankedArray;
+    }
+    /**
+     * This benchmark finds the cave level under a three wide piece in the
+     * middle of the board.
+     *
+     * @return the cave level
+     * @throws Throwable if the method cannot be called
+     */
+    @Benchmark
+    public int getCaveLevel()
+        throws Throwable
+    {
+        return (int)GET_CAVE_LEVEL.invokeExact((Object)cleverBrain,
+            boards[nextBoard()], (width - 3) / 2, 3);
+    }
+    /**
+     * This benchmark counts the full rows of a board.
+     *
+     * @return the number of full rows
+     * @throws Throwable if the method cannot be called
+     */
+    @Benchmark
+    public int getRowKillCount()
+        throws Throwable
+    {
+        return (int)GET_ROW_KILL_COUNT.invokeExact((Object)cleverBrain,
+            boards[nextBoard()]);
+    }
+    /**
+     * This method moves on to the next board, so that the benchmarks do not
+     * measure one board over and over.  It is called from each benchmark
+     * rather than as a Level.Invocation setup, which JMH warns distorts
+     * calls that take well under a millisecond.
+     *
+     * @return the index of the board to use
+     */
+    private int nextBoard() {
+        next = (next + 1) & (BOARD_COUNT - 1);
+        return next;
+    }
+    /**
+     * This method makes a random board whose bottom rows are filled at the
+     * given density.  The filled part is a random height up to half of the
+     * board, and one cell of each row is always left empty.
+     *
+     * @param random is the source of random numbers
+     * @param width is the width of the board
+     * @param height is the height of the board
+     * @param density is the fraction of filled cells
+     * @return the new board
+     */
+    private static Board randomBoard(Random random, int width, int height,
+        double density) {
+        int filled = random.nextInt(height / 2 + 1);
+        String[] rows = new String[height];
+        for (int j = 0; j < height; j++) {
+            StringBuilder row = new StringBuilder();
+            //the rows are listed from the top of the board down
+            boolean inFill = j >= height - filled;
+            int gap = random.nextInt(width);
+            for (int i = 0; i < width; i++) {
+                boolean block = inFill && i != gap
+                    && random.nextDouble() < density;
+                row.append(block ? '#' : ' ');
+            }
+            rows[j] = row.toString();
+        }
+        return new Board(width, height, rows);
+    }
+    /**
+     * This method loads a class from the default package.
+     *
+     * @param name is the name of the class
+     * @return the class
+     */
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        }
+        catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    /**
+     * This method looks up a public CleverBrain method and adapts it to
+     * take the brain as an Object, so that it can be called with
+     * invokeExact.
+     *
+     * @param name is the name of the method
+     * @param returnType is the type the method returns
+     * @param parameterTypes are the types of the method's parameters
+     * @return the method handle
+     */
+    private static MethodHandle find(String name, Class<?> returnType,
+        Class<?>... parameterTypes) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findVirtual(
+                CLEVER_BRAIN, name,
+                MethodType.methodType(returnType, parameterTypes));
+            return handle.asType(handle.type().changeParameterType(0,
+                Object.class));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
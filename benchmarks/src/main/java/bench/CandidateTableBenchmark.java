@@ -0,0 +1,185 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// -------------------------------------------------------------------------
+/**
+ *  This class holds the JMH benchmarks for ranking and tallying the
+ *  features of every candidate move, the step of bestMove that comes after
+ *  the moves are tried.  It measures CandidateTable, which keeps one array
+ *  per feature and ranks by counting, next to the way CleverBrain used to do
+ *  it (as a baseline): one int[11] per move, ranked by sorting a key per
+ *  move for each feature.  The baseline is copied into this class, so that
+ *  it can still be measured now that CleverBrain no longer has it.
+ *
+ *  The features are made at random from a fixed seed, in the ranges real
+ *  moves have on a board of the given height, so every run measures the
+ *  same moves.
+ *
+ *  CandidateTable is in the default package, so it is loaded by name and
+ *  its methods are called through method handles looked up once when the
+ *  class loads.
+ *
+ *  @author stevr76
+ *  @version 2016.08.27
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CandidateTableBenchmark
+{
+    //Fields
+    private static final Class<?> CANDIDATE_TABLE = load("CandidateTable");
+    private static final MethodHandle ENSURE_CAPACITY = find(
+        "ensureCapacity", void.class, int.class);
+    private static final MethodHandle SET = find("set", void.class,
+        int.class, int.class, int.class, int.class, int.class, int.class);
+    private static final MethodHandle RANK = find("rank", void.class,
+        int.class);
+    private static final MethodHandle TALLY = find("tally", void.class,
+        int.class, double.class, double.class, double.class, double.class);
+    private static final MethodHandle GET_RANKED_SCORES = find(
+        "getRankedScores", double[].class);
+    //the default weights of CleverBrain
+    private static final double NEW_HOLES_WEIGHT = -1.8;
+    private static final double OLD_HOLES_WEIGHT = -1.0;
+    private static final double CAVE_WEIGHT = -2.2;
+    private static final double HEIGHT_WEIGHT = -1.7;
+    /**
+     * The number of candidate moves: four rotations of a 10, 24 and 48
+     * column board.
+     */
+    @Param({"40", "96", "192"})
+    public int moves;
+    /**
+     * The height of the board the features are drawn for.
+     */
+    @Param({"24"})
+    public int height;
+    private Object table;
+    private int[][] scoreArray;
+    private long[] keys;
+    private double[] scores;
+    /**
+     * This method fills the table and the baseline's arrays with the same
+     * features once for each set of parameters.
+     *
+     * @throws Throwable if the table cannot be made or called
+     */
+    @Setup(Level.Trial)
+    public void setUp()
+        throws Throwable
+    {
+        table = CANDIDATE_TABLE.getConstructor().newInstance();
+        ENSURE_CAPACITY.invokeExact(table, moves);
+        scoreArray = new int[moves][11];
+        keys = new long[moves];
+        scores = new double[moves];
+        Random random = new Random(5044);
+        for (int i = 0; i < moves; i++) {
+            int newHeight = random.nextInt(height);
+            int[] row = scoreArray[i];
+            row[1] = random.nextInt(4);
+            row[2] = random.nextInt(4);
+            row[3] = random.nextInt(height / 2);
+            row[4] = random.nextInt(5) - 4;
+            row[5] = newHeight;
+            SET.invokeExact(table, i, row[1], row[2], row[3], row[4],
+                row[5]);
+        }
+    }
+    /**
+     * This benchmark ranks and tallies the moves with CandidateTable.
+     *
+     * @return the ranked scores
+     * @throws Throwable if the table cannot be called
+     */
+    @Benchmark
+    public double[] candidateTable()
+        throws Throwable
+    {
+        RANK.invokeExact(table, moves);
+        TALLY.invokeExact(table, moves, NEW_HOLES_WEIGHT, OLD_HOLES_WEIGHT,
+            CAVE_WEIGHT, HEIGHT_WEIGHT);
+        return (double[])GET_RANKED_SCORES.invokeExact(table);
+    }
+    /**
+     * This benchmark ranks and tallies the moves the way CleverBrain used
+     * to, with a row per move and a sort per feature.
+     *
+     * @return the ranked scores
+     */
+    @Benchmark
+    public double[] sortedScoreArray() {
+        for (int i = 1; i < 5; i++) {
+            for (int j = 0; j < moves; j++) {
+                long value = (i != 4) ? scoreArray[j][i]
+                    : (-1L) * scoreArray[j][i];
+                keys[j] = (value << 32) | j;
+            }
+            Arrays.sort(keys, 0, moves);
+            int rank = 0;
+            for (int count = 0; count < moves; count++) {
+                if (count > 0
+                    && (keys[count] >> 32) != (keys[count - 1] >> 32)) {
+                    rank = count;
+                }
+                scoreArray[(int)keys[count]][i + 5] = rank;
+            }
+        }
+        for (int i = 0; i < moves; i++) {
+            int[] row = scoreArray[i];
+            scores[i] = NEW_HOLES_WEIGHT * (moves - row[6]) / moves
+                + OLD_HOLES_WEIGHT * (moves - row[7]) / moves
+                + CAVE_WEIGHT * (moves - row[8]) / moves
+                + HEIGHT_WEIGHT * (moves - row[9]) / moves;
+        }
+        return scores;
+    }
+    /**
+     * This method loads a class from the default package.
+     *
+     * @param name is the name of the class
+     * @return the class
+     */
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        }
+        catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    /**
+     * This method looks up a public CandidateTable method and adapts it to
+     * take the table as an Object, so that it can be called with
+     * invokeExact.
+     *
+     * @param name is the name of the method
+     * @param returnType is the type the method returns
+     * @param parameterTypes are the types of the method's parameters
+     * @return the method handle
+     */
+    private static MethodHandle find(String name, Class<?> returnType,
+        Class<?>... parameterTypes) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findVirtual(
+                CANDIDATE_TABLE, name,
+                MethodType.methodType(returnType, parameterTypes));
+            return handle.asType(handle.type().changeParameterType(0,
+                Object.class));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}